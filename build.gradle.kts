@@ -42,17 +42,21 @@ dependencies {
     implementation("com.github.fmjsjx:libcommon-json-jackson2")
     implementation("com.github.fmjsjx:libcommon-json-jsoniter")
     implementation("org.javassist:javassist:3.28.0-GA")
+    implementation("org.hdrhistogram:HdrHistogram:2.1.12")
     implementation("com.github.fmjsjx:libcommon-yaml")
     implementation("com.github.fmjsjx:libcommon-redis")
     implementation("com.github.fmjsjx:libnetty-transport")
     implementation("com.github.fmjsjx:libnetty-resp3")
     implementation("io.lettuce:lettuce-core")
+    implementation("io.netty:netty-codec-http")
     implementation(group = "io.netty", name = "netty-tcnative-boringssl-static", classifier = "linux-x86_64")
     implementation(group = "io.netty", name = "netty-transport-native-epoll", classifier = "linux-x86_64")
     implementation("com.fasterxml.jackson.dataformat:jackson-dataformat-xml")
     compileOnly("org.springframework.boot:spring-boot-configuration-processor")
 
     testImplementation("org.springframework.boot:spring-boot-starter-test")
+    testImplementation("org.openjdk.jmh:jmh-core:1.34")
+    testAnnotationProcessor("org.openjdk.jmh:jmh-generator-annprocess:1.34")
 }
 
 java {
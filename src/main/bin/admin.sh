@@ -7,7 +7,10 @@ echoHelp()
   echo "Commands:"
   echo "    help             Print HELP messages"
   echo "    status [name]    Show status of ConveyorSet(s)"
+  echo "    metrics [name]   Show metrics of conveyors"
   echo "    reread           Reload the configuration files"
+  echo "    replay [start [parallelism] [rows/s]|stop|status]"
+  echo "                     Replay records in failure logs to MySQL"
   echo "    update [name]    Reload config and start/stop as necessary"
   echo "    start [name]     Start ConveyorSet(s)"
   echo "    stop [name]      Stop ConveyorSet(s)"
@@ -0,0 +1,260 @@
+package com.github.fmjsjx.conveyor.admin;
+
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.ToDoubleFunction;
+import java.util.function.ToLongFunction;
+
+import org.HdrHistogram.Histogram;
+
+import com.github.fmjsjx.conveyor.config.PrometheusServerConfig;
+import com.github.fmjsjx.conveyor.core.Conveyor;
+import com.github.fmjsjx.conveyor.core.ConveyorMetrics;
+import com.github.fmjsjx.conveyor.service.ConveyorSetManager;
+import com.github.fmjsjx.conveyor.service.DataSourceManager;
+import com.github.fmjsjx.libnetty.transport.TransportLibrary;
+import com.zaxxer.hikari.HikariPoolMXBean;
+
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.handler.codec.http.DefaultFullHttpResponse;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpObjectAggregator;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpServerCodec;
+import io.netty.handler.codec.http.HttpUtil;
+import io.netty.handler.codec.http.QueryStringDecoder;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import io.netty.util.concurrent.Future;
+import lombok.extern.slf4j.Slf4j;
+
+@Slf4j
+public class PrometheusServer implements AdminServer {
+
+    private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    // latency buckets in seconds
+    private static final double[] BUCKETS = { 0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5,
+            10, 30 };
+
+    private record Sample(String labels, Conveyor conveyor, ConveyorMetrics metrics) {
+    }
+
+    private final ConveyorSetManager conveyorSetManager;
+    private final DataSourceManager dataSourceManager;
+    private final String path;
+    private final EventLoopGroup group;
+
+    public PrometheusServer(ConveyorSetManager conveyorSetManager, DataSourceManager dataSourceManager,
+            PrometheusServerConfig config) {
+        this.conveyorSetManager = conveyorSetManager;
+        this.dataSourceManager = dataSourceManager;
+        this.path = config.path();
+        var transportLibrary = TransportLibrary.getDefault();
+        this.group = transportLibrary.createGroup(1, new DefaultThreadFactory("prometheus"));
+        var bootstrap = new ServerBootstrap().group(group).channel(transportLibrary.serverChannelClass())
+                .childOption(ChannelOption.TCP_NODELAY, true).childHandler(new ChannelInitializer<Channel>() {
+                    @Override
+                    protected void initChannel(Channel ch) throws Exception {
+                        ch.pipeline().addLast(new HttpServerCodec()).addLast(new HttpObjectAggregator(8192))
+                                .addLast(new PrometheusServerHandler());
+                    }
+                });
+        try {
+            var address = config.address().map(hostname -> new InetSocketAddress(hostname, config.port()))
+                    .orElseGet(() -> new InetSocketAddress(config.port()));
+            bootstrap.bind(address).sync();
+            log.info("[admin:startup] Prometheus server started at {}{}", address, path);
+        } catch (Exception e) {
+            log.warn("[admin:startup] Prometheus server start up failed", e);
+            this.group.shutdownGracefully();
+        }
+    }
+
+    @Override
+    public Future<?> shutdown() {
+        var group = this.group;
+        if (group.isShuttingDown()) {
+            return group.terminationFuture();
+        }
+        log.info("[admin:shutdown] Shutdown prometheus server");
+        return group.shutdownGracefully();
+    }
+
+    String scrape() {
+        var samples = new ArrayList<Sample>();
+        var b = new StringBuilder(4096);
+        header(b, "conveyor_set_running", "gauge", "Whether the conveyor-set is running.");
+        for (var conveyorSet : conveyorSetManager.conveyorSets()) {
+            var setLabel = "conveyor_set=\"" + escape(conveyorSet.name()) + "\"";
+            b.append("conveyor_set_running{").append(setLabel).append("} ")
+                    .append(conveyorSet.isRunning() ? 1 : 0).append('\n');
+            for (var conveyor : conveyorSet.conveyors()) {
+                var labels = new StringBuilder(setLabel);
+                labels.append(",conveyor=\"").append(escape(conveyor.name())).append('"');
+                conveyor.labels().forEach((k, v) -> labels.append(',').append(k).append("=\"").append(escape(v))
+                        .append('"'));
+                samples.add(new Sample(labels.toString(), conveyor, conveyor.metrics()));
+            }
+        }
+        counter(b, samples, "conveyor_rows_total", "Rows pushed to output.", ConveyorMetrics::rows);
+        counter(b, samples, "conveyor_batches_total", "Batches pushed to output.", ConveyorMetrics::batches);
+        counter(b, samples, "conveyor_fetched_bytes_total", "Raw bytes fetched from input.",
+                ConveyorMetrics::bytes);
+        counter(b, samples, "conveyor_fetch_retries_total", "Failed fetches from input.",
+                ConveyorMetrics::fetchRetries);
+        counter(b, samples, "conveyor_push_retries_total", "Retried pushes to output.",
+                ConveyorMetrics::pushRetries);
+        counter(b, samples, "conveyor_failed_batches_total", "Batches dropped after all retries failed.",
+                ConveyorMetrics::failedBatches);
+        counter(b, samples, "conveyor_failed_rows_total", "Rows dropped after all retries failed.",
+                ConveyorMetrics::failedRows);
+        gauge(b, samples, "conveyor_rows_per_second", "Rows pushed per second recently.",
+                s -> s.metrics().rowsPerSecond());
+        gauge(b, samples, "conveyor_batch_size", "Current batch size of input.",
+                s -> s.conveyor().batchSize().orElse(-1));
+        known(b, samples, "conveyor_backlog", "Entries not consumed yet at the last sampling.",
+                ConveyorMetrics::backlog);
+        known(b, samples, "conveyor_pending", "Entries delivered but not acknowledged at the last sampling.",
+                ConveyorMetrics::pending);
+        header(b, "conveyor_lag_seconds", "gauge", "Age of the oldest entry not consumed at the last sampling.");
+        for (var sample : samples) {
+            var lag = sample.metrics().lag();
+            if (lag >= 0) {
+                b.append("conveyor_lag_seconds{").append(sample.labels()).append("} ").append(lag / 1000.0)
+                        .append('\n');
+            }
+        }
+        gauge(b, samples, "conveyor_lag_alert", "Whether backlog or lag exceeds the alert threshold.",
+                s -> s.metrics().lagAlert() ? 1 : 0);
+        gauge(b, samples, "conveyor_spilled_rows", "Rows spilled to local disk and not pushed yet.",
+                s -> s.metrics().spilledRows());
+        histogram(b, samples, "conveyor_fetch_latency_seconds", "Latency of fetching from input.",
+                ConveyorMetrics::fetchLatency);
+        histogram(b, samples, "conveyor_push_latency_seconds", "Latency of pushing to output.",
+                ConveyorMetrics::pushLatency);
+        histogram(b, samples, "conveyor_end_to_end_latency_seconds", "Latency from fetch start to push end.",
+                ConveyorMetrics::endToEndLatency);
+        var pools = dataSourceManager.pools();
+        pool(b, pools, "hikaricp_connections_active", "Active connections.", HikariPoolMXBean::getActiveConnections);
+        pool(b, pools, "hikaricp_connections_idle", "Idle connections.", HikariPoolMXBean::getIdleConnections);
+        pool(b, pools, "hikaricp_connections", "Total connections.", HikariPoolMXBean::getTotalConnections);
+        pool(b, pools, "hikaricp_connections_pending", "Threads awaiting connections.",
+                HikariPoolMXBean::getThreadsAwaitingConnection);
+        return b.toString();
+    }
+
+    private static final void header(StringBuilder b, String name, String type, String help) {
+        b.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        b.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private static final void counter(StringBuilder b, List<Sample> samples, String name, String help,
+            ToLongFunction<ConveyorMetrics> value) {
+        header(b, name, "counter", help);
+        for (var sample : samples) {
+            b.append(name).append('{').append(sample.labels()).append("} ").append(value.applyAsLong(sample.metrics()))
+                    .append('\n');
+        }
+    }
+
+    private static final void gauge(StringBuilder b, List<Sample> samples, String name, String help,
+            ToDoubleFunction<Sample> value) {
+        header(b, name, "gauge", help);
+        for (var sample : samples) {
+            b.append(name).append('{').append(sample.labels()).append("} ").append(value.applyAsDouble(sample))
+                    .append('\n');
+        }
+    }
+
+    // gauge without samples of unknown (negative) values
+    private static final void known(StringBuilder b, List<Sample> samples, String name, String help,
+            ToLongFunction<ConveyorMetrics> value) {
+        header(b, name, "gauge", help);
+        for (var sample : samples) {
+            var v = value.applyAsLong(sample.metrics());
+            if (v >= 0) {
+                b.append(name).append('{').append(sample.labels()).append("} ").append(v).append('\n');
+            }
+        }
+    }
+
+    // histograms are recorded in microseconds
+    private static final void histogram(StringBuilder b, List<Sample> samples, String name, String help,
+            Function<ConveyorMetrics, Histogram> value) {
+        header(b, name, "histogram", help);
+        for (var sample : samples) {
+            var histogram = value.apply(sample.metrics());
+            var labels = sample.labels();
+            var total = histogram.getTotalCount();
+            for (var bucket : BUCKETS) {
+                var count = total == 0 ? 0 : histogram.getCountBetweenValues(0, (long) (bucket * 1_000_000));
+                b.append(name).append("_bucket{").append(labels).append(",le=\"").append(bucket).append("\"} ")
+                        .append(count).append('\n');
+            }
+            b.append(name).append("_bucket{").append(labels).append(",le=\"+Inf\"} ").append(total).append('\n');
+            var sum = total == 0 ? 0 : histogram.getMean() * total / 1_000_000;
+            b.append(name).append("_sum{").append(labels).append("} ").append(sum).append('\n');
+            b.append(name).append("_count{").append(labels).append("} ").append(total).append('\n');
+        }
+    }
+
+    private static final void pool(StringBuilder b, Map<String, HikariPoolMXBean> pools, String name, String help,
+            ToDoubleFunction<HikariPoolMXBean> value) {
+        header(b, name, "gauge", help);
+        pools.forEach((poolName, pool) -> b.append(name).append("{pool=\"").append(escape(poolName)).append("\"} ")
+                .append(value.applyAsDouble(pool)).append('\n'));
+    }
+
+    private static final String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    class PrometheusServerHandler extends SimpleChannelInboundHandler<FullHttpRequest> {
+
+        @Override
+        public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) throws Exception {
+            ctx.close();
+        }
+
+        @Override
+        protected void channelRead0(ChannelHandlerContext ctx, FullHttpRequest msg) throws Exception {
+            var keepAlive = HttpUtil.isKeepAlive(msg);
+            DefaultFullHttpResponse response;
+            if (!path.equals(new QueryStringDecoder(msg.uri()).path())) {
+                response = new DefaultFullHttpResponse(msg.protocolVersion(), HttpResponseStatus.NOT_FOUND);
+            } else if (!HttpMethod.GET.equals(msg.method()) && !HttpMethod.HEAD.equals(msg.method())) {
+                response = new DefaultFullHttpResponse(msg.protocolVersion(), HttpResponseStatus.METHOD_NOT_ALLOWED);
+            } else {
+                // metrics are snapshots of adders and histogram recorders, never block conveyors
+                var content = Unpooled.wrappedBuffer(scrape().getBytes(StandardCharsets.UTF_8));
+                response = new DefaultFullHttpResponse(msg.protocolVersion(), HttpResponseStatus.OK, content);
+                response.headers().set(HttpHeaderNames.CONTENT_TYPE, CONTENT_TYPE);
+            }
+            HttpUtil.setContentLength(response, response.content().readableBytes());
+            if (HttpMethod.HEAD.equals(msg.method())) {
+                response.content().clear();
+            }
+            HttpUtil.setKeepAlive(response, keepAlive);
+            var future = ctx.writeAndFlush(response);
+            if (!keepAlive) {
+                future.addListener(ChannelFutureListener.CLOSE);
+            }
+        }
+
+    }
+
+}
@@ -1,11 +1,16 @@
 package com.github.fmjsjx.conveyor.admin;
 
 import java.net.InetSocketAddress;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.BiPredicate;
 import java.util.stream.Collectors;
 
+import org.HdrHistogram.Histogram;
+
 import com.github.fmjsjx.conveyor.config.Resp3ServerConfig;
+import com.github.fmjsjx.conveyor.core.Conveyor;
+import com.github.fmjsjx.conveyor.core.ConveyorSet;
 import com.github.fmjsjx.conveyor.service.ConveyorSetManager;
 import com.github.fmjsjx.libnetty.resp.CachedBulkStringMessage;
 import com.github.fmjsjx.libnetty.resp.CachedErrorMessage;
@@ -53,6 +58,26 @@ public class Resp3Server implements AdminServer {
     static final CachedBulkStringMessage ROLE_VALUE = CachedBulkStringMessage.createAscii("master");
     static final CachedBulkStringMessage MODULES_KEY = CachedBulkStringMessage.createAscii("modules");
 
+    static final CachedBulkStringMessage STATUS_KEY = CachedBulkStringMessage.createAscii("status");
+    static final CachedBulkStringMessage CONVEYORS_KEY = CachedBulkStringMessage.createAscii("conveyors");
+    static final CachedBulkStringMessage ROWS_KEY = CachedBulkStringMessage.createAscii("rows");
+    static final CachedBulkStringMessage ROWS_PER_SEC_KEY = CachedBulkStringMessage.createAscii("rows_per_sec");
+    static final CachedBulkStringMessage BATCHES_KEY = CachedBulkStringMessage.createAscii("batches");
+    static final CachedBulkStringMessage BATCH_SIZE_KEY = CachedBulkStringMessage.createAscii("batch_size");
+    static final CachedBulkStringMessage BYTES_KEY = CachedBulkStringMessage.createAscii("bytes");
+    static final CachedBulkStringMessage BACKLOG_KEY = CachedBulkStringMessage.createAscii("backlog");
+    static final CachedBulkStringMessage PENDING_KEY = CachedBulkStringMessage.createAscii("pending");
+    static final CachedBulkStringMessage LAG_KEY = CachedBulkStringMessage.createAscii("lag_ms");
+    static final CachedBulkStringMessage LAG_ALERT_KEY = CachedBulkStringMessage.createAscii("lag_alert");
+    static final CachedBulkStringMessage SPILLED_ROWS_KEY = CachedBulkStringMessage.createAscii("spilled_rows");
+    static final CachedBulkStringMessage FETCH_RETRIES_KEY = CachedBulkStringMessage.createAscii("fetch_retries");
+    static final CachedBulkStringMessage PUSH_RETRIES_KEY = CachedBulkStringMessage.createAscii("push_retries");
+    static final CachedBulkStringMessage FAILED_ROWS_KEY = CachedBulkStringMessage.createAscii("failed_rows");
+    static final CachedBulkStringMessage PUSH_P50_KEY = CachedBulkStringMessage.createAscii("push_p50_us");
+    static final CachedBulkStringMessage PUSH_P99_KEY = CachedBulkStringMessage.createAscii("push_p99_us");
+    static final CachedBulkStringMessage E2E_P99_KEY = CachedBulkStringMessage.createAscii("e2e_p99_us");
+    static final CachedBulkStringMessage LAST_ERROR_KEY = CachedBulkStringMessage.createAscii("last_error");
+
     private final ConveyorSetManager conveyorSetManager;
     private final EventLoopGroup group;
     final CachedBulkStringMessage versionValue;
@@ -92,6 +117,11 @@ public class Resp3Server implements AdminServer {
         return group.shutdownGracefully();
     }
 
+    // -1 if nothing recorded
+    private static final long percentile(Histogram histogram, double percentile) {
+        return histogram.getTotalCount() == 0 ? -1 : histogram.getValueAtPercentile(percentile);
+    }
+
     class Resp3ServerHandler extends SimpleChannelInboundHandler<RedisRequest> {
 
         boolean verified = true;
@@ -163,6 +193,18 @@ public class Resp3Server implements AdminServer {
                     ctx.writeAndFlush(RespMessages.noauth());
                 }
                 break;
+            case "info":
+            case "stats":
+                if (verified) {
+                    if (msg.size() > 2) {
+                        ctx.writeAndFlush(RespMessages.wrongNumberOfArgumentsForCommand(cmd));
+                    } else {
+                        info(ctx, msg);
+                    }
+                } else {
+                    ctx.writeAndFlush(RespMessages.noauth());
+                }
+                break;
             case "get":
                 if (verified) {
                     if (msg.size() > 1) {
@@ -241,6 +283,58 @@ public class Resp3Server implements AdminServer {
             }
         }
 
+        private void info(ChannelHandlerContext ctx, RedisRequest msg) {
+            List<ConveyorSet> conveyorSets;
+            if (msg.size() == 2) {
+                var name = msg.argument(1).textValue();
+                var conveyorSet = conveyorSetManager.conveyorSet(name);
+                if (conveyorSet.isEmpty()) {
+                    ctx.writeAndFlush(RespMessages.error("no such conveyor-set `" + name + "`"));
+                    return;
+                }
+                conveyorSets = List.of(conveyorSet.get());
+            } else {
+                conveyorSets = conveyorSetManager.conveyorSets();
+            }
+            // metrics are snapshots of adders and histogram recorders, never block conveyors
+            var map = new DefaultMapMessage<>();
+            for (var conveyorSet : conveyorSets) {
+                var conveyors = new DefaultMapMessage<>();
+                for (var conveyor : conveyorSet.conveyors()) {
+                    conveyors.put(RespMessages.bulkString(conveyor.name()), conveyorInfo(conveyor));
+                }
+                var setInfo = new DefaultMapMessage<>();
+                setInfo.put(STATUS_KEY, RespMessages.bulkString(conveyorSet.status()));
+                setInfo.put(CONVEYORS_KEY, conveyors);
+                map.put(RespMessages.bulkString(conveyorSet.name()), setInfo);
+            }
+            ctx.writeAndFlush(map);
+        }
+
+        private DefaultMapMessage<RespMessage, RespMessage> conveyorInfo(Conveyor conveyor) {
+            var metrics = conveyor.metrics();
+            var map = new DefaultMapMessage<>();
+            map.put(STATUS_KEY, RespMessages.bulkString(conveyor.status()));
+            map.put(ROWS_KEY, RespMessages.integer(metrics.rows()));
+            map.put(ROWS_PER_SEC_KEY, RespMessages.bulkString(String.format("%.1f", metrics.rowsPerSecond())));
+            map.put(BATCHES_KEY, RespMessages.integer(metrics.batches()));
+            map.put(BATCH_SIZE_KEY, RespMessages.integer(conveyor.batchSize().orElse(-1)));
+            map.put(BYTES_KEY, RespMessages.integer(metrics.bytes()));
+            map.put(BACKLOG_KEY, RespMessages.integer(metrics.backlog()));
+            map.put(PENDING_KEY, RespMessages.integer(metrics.pending()));
+            map.put(LAG_KEY, RespMessages.integer(metrics.lag()));
+            map.put(LAG_ALERT_KEY, RespMessages.integer(metrics.lagAlert() ? 1 : 0));
+            map.put(SPILLED_ROWS_KEY, RespMessages.integer(metrics.spilledRows()));
+            map.put(FETCH_RETRIES_KEY, RespMessages.integer(metrics.fetchRetries()));
+            map.put(PUSH_RETRIES_KEY, RespMessages.integer(metrics.pushRetries()));
+            map.put(FAILED_ROWS_KEY, RespMessages.integer(metrics.failedRows()));
+            map.put(PUSH_P50_KEY, RespMessages.integer(percentile(metrics.pushLatency(), 50)));
+            map.put(PUSH_P99_KEY, RespMessages.integer(percentile(metrics.pushLatency(), 99)));
+            map.put(E2E_P99_KEY, RespMessages.integer(percentile(metrics.endToEndLatency(), 99)));
+            metrics.lastError().ifPresent(error -> map.put(LAST_ERROR_KEY, RespMessages.bulkString(error)));
+            return map;
+        }
+
         private DefaultArrayMessage<RespMessage> version2HelloResult() {
             var array = new DefaultArrayMessage<>(SERVER_KEY, SERVER_VALUE, VERSION_KEY, versionValue, PROTO_KEY,
                     RespMessages.integer(2), ID_KEY, RespMessages.integer(id), MODE_KEY, MODE_VALUE, ROLE_KEY,
@@ -1,5 +1,6 @@
 package com.github.fmjsjx.conveyor.config;
 
+import java.util.Optional;
 import java.util.OptionalInt;
 
 import com.fasterxml.jackson.annotation.JsonCreator;
@@ -14,16 +15,34 @@ public class ConveyorConfig implements Comparable<ConveyorConfig> {
 
     final String name;
     final OptionalInt maxRetryCount;
+    final int pipelineWindow;
+    final int parallelism;
+    final Optional<LingerConfig> linger;
+    final Optional<SpillConfig> spill;
     final InputRedisConfig inputRedis;
     final OutputMysqlConfig outputMysql;
 
     @JsonCreator
     public ConveyorConfig(@JsonProperty(value = "name", required = true) String name,
             @JsonProperty(value = "max-retry-count", required = false) Integer maxRetryCount,
+            @JsonProperty(value = "pipeline-window", required = false) Integer pipelineWindow,
+            @JsonProperty(value = "parallelism", required = false) Integer parallelism,
+            @JsonProperty(value = "linger", required = false) LingerConfig linger,
+            @JsonProperty(value = "spill", required = false) SpillConfig spill,
             @JsonProperty(value = "input.redis", required = true) InputRedisConfig inputRedis,
             @JsonProperty(value = "output.mysql", required = true) OutputMysqlConfig outputMysql) {
         this.name = name;
         this.maxRetryCount = NumberUtil.optionalInt(maxRetryCount);
+        this.pipelineWindow = NumberUtil.intValue(pipelineWindow, 0);
+        if (this.pipelineWindow < 0) {
+            throw new IllegalArgumentException("`pipeline-window` must not be negative");
+        }
+        this.parallelism = NumberUtil.intValue(parallelism, 1);
+        if (this.parallelism <= 0) {
+            throw new IllegalArgumentException("`parallelism` must be positive");
+        }
+        this.linger = Optional.ofNullable(linger);
+        this.spill = Optional.ofNullable(spill);
         this.inputRedis = inputRedis;
         this.outputMysql = outputMysql;
     }
@@ -36,6 +55,22 @@ public class ConveyorConfig implements Comparable<ConveyorConfig> {
         return maxRetryCount;
     }
 
+    public int pipelineWindow() {
+        return pipelineWindow;
+    }
+
+    public int parallelism() {
+        return parallelism;
+    }
+
+    public Optional<LingerConfig> linger() {
+        return linger;
+    }
+
+    public Optional<SpillConfig> spill() {
+        return spill;
+    }
+
     public InputRedisConfig inputRedis() {
         return inputRedis;
     }
@@ -52,10 +87,16 @@ public class ConveyorConfig implements Comparable<ConveyorConfig> {
     @Override
     public boolean equals(Object obj) {
         if (obj instanceof ConveyorConfig o) {
-            if (StringUtil.isEquals(name, o.name) && maxRetryCount.equals(o.maxRetryCount)) {
-                if (inputRedis.equals(o.inputRedis)) {
-                    return outputMysql.equals(o.outputMysql);
-                }
+            return parallelism == o.parallelism && equalsIgnoreParallelism(o);
+        }
+        return false;
+    }
+
+    public boolean equalsIgnoreParallelism(ConveyorConfig o) {
+        if (StringUtil.isEquals(name, o.name) && maxRetryCount.equals(o.maxRetryCount)
+                && pipelineWindow == o.pipelineWindow && linger.equals(o.linger) && spill.equals(o.spill)) {
+            if (inputRedis.equals(o.inputRedis)) {
+                return outputMysql.equals(o.outputMysql);
             }
         }
         return false;
@@ -78,4 +78,19 @@ public class ConveyorSetConfig {
         return false;
     }
 
+    // returns true if only `parallelism` of conveyors changed, which can be applied without restarting
+    public boolean equalsIgnoreParallelism(ConveyorSetConfig o) {
+        if (name.equals(o.name) && autoStart == o.autoStart && maxRetryCount.equals(o.maxRetryCount)) {
+            if (CollectionUtil.isEqual(products, o.products) && conveyors.size() == o.conveyors.size()) {
+                for (var i = 0; i < conveyors.size(); i++) {
+                    if (!conveyors.get(i).equalsIgnoreParallelism(o.conveyors.get(i))) {
+                        return false;
+                    }
+                }
+                return true;
+            }
+        }
+        return false;
+    }
+
 }
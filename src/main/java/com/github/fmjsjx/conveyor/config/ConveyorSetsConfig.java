@@ -19,14 +19,23 @@ public class ConveyorSetsConfig {
 
     final Optional<UnixServerConfig> unixServer;
     final Optional<Resp3ServerConfig> resp3Server;
+    final Optional<PrometheusServerConfig> prometheusServer;
+    final ExecutorConfig executor;
+    final RetryConfig retry;
     final List<String> includes;
 
     @JsonCreator
     public ConveyorSetsConfig(@JsonProperty(value = "unix-server", required = false) UnixServerConfig unixServer,
             @JsonProperty(value = "resp3-server", required = false) Resp3ServerConfig resp3Server,
+            @JsonProperty(value = "prometheus-server", required = false) PrometheusServerConfig prometheusServer,
+            @JsonProperty(value = "executor", required = false) ExecutorConfig executor,
+            @JsonProperty(value = "retry", required = false) RetryConfig retry,
             @JsonProperty(value = "includes", required = true) List<String> includes) {
         this.unixServer = Optional.ofNullable(unixServer);
         this.resp3Server = Optional.ofNullable(resp3Server);
+        this.prometheusServer = Optional.ofNullable(prometheusServer);
+        this.executor = executor == null ? ExecutorConfig.DEFAULT : executor;
+        this.retry = retry == null ? RetryConfig.DEFAULT : retry;
         this.includes = includes.stream().map(String::strip).distinct().toList();
     }
 
@@ -38,6 +47,18 @@ public class ConveyorSetsConfig {
         return resp3Server;
     }
 
+    public Optional<PrometheusServerConfig> prometheusServer() {
+        return prometheusServer;
+    }
+
+    public ExecutorConfig executor() {
+        return executor;
+    }
+
+    public RetryConfig retry() {
+        return retry;
+    }
+
     public List<String> includes() {
         return includes;
     }
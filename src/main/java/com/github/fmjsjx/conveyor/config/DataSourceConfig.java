@@ -14,4 +14,12 @@ public interface DataSourceConfig {
 
     boolean useSSL();
 
+    default boolean allowLoadLocalInfile() {
+        return false;
+    }
+
+    default boolean rewriteBatchedStatements() {
+        return false;
+    }
+
 }
@@ -0,0 +1,50 @@
+package com.github.fmjsjx.conveyor.config;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.github.fmjsjx.libcommon.util.NumberUtil;
+import com.github.fmjsjx.libcommon.util.RuntimeUtil;
+
+import lombok.ToString;
+
+@ToString
+public class ExecutorConfig {
+
+    public static final ExecutorConfig DEFAULT = new ExecutorConfig(null, null, null);
+
+    public enum Mode {
+        THREAD, SHARED
+    }
+
+    final Mode mode;
+    final int threads;
+    final long idleDelay;
+
+    @JsonCreator
+    public ExecutorConfig(@JsonProperty(value = "mode", required = false) String mode,
+            @JsonProperty(value = "threads", required = false) Integer threads,
+            @JsonProperty(value = "idle-delay", required = false) Long idleDelay) {
+        this.mode = mode == null ? Mode.THREAD : Mode.valueOf(mode.toUpperCase());
+        this.threads = NumberUtil.intValue(threads, RuntimeUtil.availableProcessors() * 2);
+        if (this.threads <= 0) {
+            throw new IllegalArgumentException("`threads` must be positive");
+        }
+        this.idleDelay = idleDelay == null ? 100 : idleDelay.longValue();
+        if (this.idleDelay <= 0) {
+            throw new IllegalArgumentException("`idle-delay` must be positive");
+        }
+    }
+
+    public Mode mode() {
+        return mode;
+    }
+
+    public int threads() {
+        return threads;
+    }
+
+    public long idleDelay() {
+        return idleDelay;
+    }
+
+}
@@ -1,6 +1,7 @@
 package com.github.fmjsjx.conveyor.config;
 
 import java.util.Objects;
+import java.util.Optional;
 
 import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonProperty;
@@ -20,12 +21,24 @@ public class InputRedisConfig {
 
         final String group;
         final String consumer;
+        final long claimIdle;
+        final long claimInterval;
 
         @JsonCreator
         public StreamConfig(@JsonProperty(value = "group", required = true) String group,
-                @JsonProperty(value = "consumer", required = true) String consumer) {
+                @JsonProperty(value = "consumer", required = true) String consumer,
+                @JsonProperty(value = "claim-idle", required = false) Long claimIdle,
+                @JsonProperty(value = "claim-interval", required = false) Long claimInterval) {
             this.group = group;
             this.consumer = consumer;
+            this.claimIdle = claimIdle == null ? 0 : claimIdle.longValue();
+            if (this.claimIdle < 0) {
+                throw new IllegalArgumentException("`claim-idle` must not be negative");
+            }
+            this.claimInterval = claimInterval == null ? this.claimIdle : claimInterval.longValue();
+            if (this.claimInterval < 0) {
+                throw new IllegalArgumentException("`claim-interval` must not be negative");
+            }
         }
 
         public String group() {
@@ -36,10 +49,107 @@ public class InputRedisConfig {
             return consumer;
         }
 
+        public long claimIdle() {
+            return claimIdle;
+        }
+
+        public long claimInterval() {
+            return claimInterval;
+        }
+
         @Override
         public boolean equals(Object obj) {
             if (obj instanceof StreamConfig o) {
-                return group.equals(o.group) && consumer.equals(o.consumer);
+                return group.equals(o.group) && consumer.equals(o.consumer) && claimIdle == o.claimIdle
+                        && claimInterval == o.claimInterval;
+            }
+            return false;
+        }
+
+    }
+
+    @ToString
+    public static final class AdaptiveBatchConfig {
+
+        final int min;
+        final int max;
+        final long targetLatency;
+
+        @JsonCreator
+        public AdaptiveBatchConfig(@JsonProperty(value = "min", required = false) Integer min,
+                @JsonProperty(value = "max", required = false) Integer max,
+                @JsonProperty(value = "target-latency", required = false) Long targetLatency) {
+            this.min = NumberUtil.intValue(min, 10);
+            this.max = NumberUtil.intValue(max, 5000);
+            if (this.min <= 0 || this.max < this.min) {
+                throw new IllegalArgumentException("`min` must be positive and `max` must not be less than `min`");
+            }
+            this.targetLatency = targetLatency == null ? 200 : targetLatency.longValue();
+            if (this.targetLatency <= 0) {
+                throw new IllegalArgumentException("`target-latency` must be positive");
+            }
+        }
+
+        public int min() {
+            return min;
+        }
+
+        public int max() {
+            return max;
+        }
+
+        public long targetLatency() {
+            return targetLatency;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (obj instanceof AdaptiveBatchConfig o) {
+                return min == o.min && max == o.max && targetLatency == o.targetLatency;
+            }
+            return false;
+        }
+
+    }
+
+    @ToString
+    public static final class BacklogConfig {
+
+        public static final BacklogConfig DEFAULT = new BacklogConfig(null, null, null);
+
+        final long sampleInterval;
+        final long alertBacklog;
+        final long alertLag;
+
+        @JsonCreator
+        public BacklogConfig(@JsonProperty(value = "sample-interval", required = false) Long sampleInterval,
+                @JsonProperty(value = "alert-backlog", required = false) Long alertBacklog,
+                @JsonProperty(value = "alert-lag", required = false) Long alertLag) {
+            this.sampleInterval = sampleInterval == null ? 5000 : sampleInterval.longValue();
+            this.alertBacklog = alertBacklog == null ? 0 : alertBacklog.longValue();
+            this.alertLag = alertLag == null ? 0 : alertLag.longValue();
+            if (this.sampleInterval < 0 || this.alertBacklog < 0 || this.alertLag < 0) {
+                throw new IllegalArgumentException(
+                        "`sample-interval`, `alert-backlog` and `alert-lag` must not be negative");
+            }
+        }
+
+        public long sampleInterval() {
+            return sampleInterval;
+        }
+
+        public long alertBacklog() {
+            return alertBacklog;
+        }
+
+        public long alertLag() {
+            return alertLag;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (obj instanceof BacklogConfig o) {
+                return sampleInterval == o.sampleInterval && alertBacklog == o.alertBacklog && alertLag == o.alertLag;
             }
             return false;
         }
@@ -49,24 +159,42 @@ public class InputRedisConfig {
     final String uri;
     final String key;
     final int batch;
+    final Optional<AdaptiveBatchConfig> adaptiveBatch;
     final Type type;
     final StreamConfig stream;
+    final Optional<String> processingKey;
+    final boolean projection;
+    final boolean sharedConnection;
+    final boolean fanIn;
+    final BacklogConfig backlog;
 
     @JsonCreator
     public InputRedisConfig(@JsonProperty(value = "uri", required = true) String uri,
             @JsonProperty(value = "key", required = true) String key,
             @JsonProperty(value = "batch", required = false) Integer batch,
+            @JsonProperty(value = "adaptive-batch", required = false) AdaptiveBatchConfig adaptiveBatch,
             @JsonProperty(value = "type", required = true) String type,
-            @JsonProperty(value = "stream", required = false) StreamConfig stream) {
+            @JsonProperty(value = "stream", required = false) StreamConfig stream,
+            @JsonProperty(value = "processing-key", required = false) String processingKey,
+            @JsonProperty(value = "projection", required = false) Boolean projection,
+            @JsonProperty(value = "shared-connection", required = false) Boolean sharedConnection,
+            @JsonProperty(value = "fan-in", required = false) Boolean fanIn,
+            @JsonProperty(value = "backlog", required = false) BacklogConfig backlog) {
         this.uri = uri;
         this.key = key;
         this.batch = NumberUtil.intValue(batch, 200);
+        this.adaptiveBatch = Optional.ofNullable(adaptiveBatch);
         this.type = Type.valueOf(type.toUpperCase());
         if (this.type == Type.STREAM) {
             this.stream = Objects.requireNonNull(stream, "`stream` must not be null when `type` is STREAM");
         } else {
             this.stream = null;
         }
+        this.processingKey = Optional.ofNullable(processingKey);
+        this.projection = projection != null && projection.booleanValue();
+        this.sharedConnection = sharedConnection != null && sharedConnection.booleanValue();
+        this.fanIn = fanIn != null && fanIn.booleanValue();
+        this.backlog = backlog == null ? BacklogConfig.DEFAULT : backlog;
     }
 
     public String uri() {
@@ -81,6 +209,10 @@ public class InputRedisConfig {
         return batch;
     }
 
+    public Optional<AdaptiveBatchConfig> adaptiveBatch() {
+        return adaptiveBatch;
+    }
+
     public Type type() {
         return type;
     }
@@ -89,10 +221,33 @@ public class InputRedisConfig {
         return stream;
     }
 
+    public Optional<String> processingKey() {
+        return processingKey;
+    }
+
+    public boolean projection() {
+        return projection;
+    }
+
+    public boolean sharedConnection() {
+        return sharedConnection;
+    }
+
+    public boolean fanIn() {
+        return fanIn;
+    }
+
+    public BacklogConfig backlog() {
+        return backlog;
+    }
+
     @Override
     public boolean equals(Object obj) {
         if (obj instanceof InputRedisConfig o) {
-            if (uri.equals(o.uri) && key.equals(o.key) && batch == o.batch && type.equals(o.type)) {
+            if (uri.equals(o.uri) && key.equals(o.key) && batch == o.batch && type.equals(o.type)
+                    && adaptiveBatch.equals(o.adaptiveBatch) && processingKey.equals(o.processingKey)
+                    && projection == o.projection && sharedConnection == o.sharedConnection && fanIn == o.fanIn
+                    && backlog.equals(o.backlog)) {
                 if (type == Type.STREAM) {
                     return stream.equals(o.stream);
                 }
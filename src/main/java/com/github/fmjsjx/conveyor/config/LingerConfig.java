@@ -0,0 +1,44 @@
+package com.github.fmjsjx.conveyor.config;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.github.fmjsjx.libcommon.util.NumberUtil;
+
+import lombok.ToString;
+
+@ToString
+public class LingerConfig {
+
+    final int rows;
+    final long millis;
+
+    @JsonCreator
+    public LingerConfig(@JsonProperty(value = "rows", required = false) Integer rows,
+            @JsonProperty(value = "millis", required = false) Long millis) {
+        this.rows = NumberUtil.intValue(rows, 1000);
+        if (this.rows <= 0) {
+            throw new IllegalArgumentException("`rows` must be positive");
+        }
+        this.millis = millis == null ? 1000 : millis.longValue();
+        if (this.millis <= 0) {
+            throw new IllegalArgumentException("`millis` must be positive");
+        }
+    }
+
+    public int rows() {
+        return rows;
+    }
+
+    public long millis() {
+        return millis;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj instanceof LingerConfig o) {
+            return rows == o.rows && millis == o.millis;
+        }
+        return false;
+    }
+
+}
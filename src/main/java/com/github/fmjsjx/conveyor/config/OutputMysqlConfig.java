@@ -14,6 +14,7 @@ import java.util.function.Function;
 import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.github.fmjsjx.conveyor.util.CollectionUtil;
+import com.github.fmjsjx.conveyor.util.RowBinderUtil;
 import com.github.fmjsjx.libcommon.util.DateTimeUtil;
 import com.github.fmjsjx.libcommon.util.StringUtil;
 
@@ -219,8 +220,10 @@ public class OutputMysqlConfig implements DataSourceConfig {
     }
 
     private static final String toPoolName(String jdbcUrl, String username, String password, String serverTimezone,
-            boolean useSSL) {
-        return username + ":" + password + "@" + jdbcUrl + "?" + serverTimezone + (useSSL ? "&useSSL" : "");
+            boolean useSSL, boolean allowLoadLocalInfile, boolean rewriteBatchedStatements) {
+        return username + ":" + password + "@" + jdbcUrl + "?" + serverTimezone + (useSSL ? "&useSSL" : "")
+                + (allowLoadLocalInfile ? "&allowLoadLocalInfile" : "")
+                + (rewriteBatchedStatements ? "&rewriteBatchedStatements" : "");
     }
 
     public enum InsertMode {
@@ -238,6 +241,15 @@ public class OutputMysqlConfig implements DataSourceConfig {
 
     }
 
+    public enum WriteMode {
+        // one multi-row INSERT for each chunk
+        VALUES,
+        // single row INSERT with JDBC addBatch/executeBatch
+        BATCH,
+        // LOAD DATA LOCAL INFILE from an in-memory TSV stream
+        LOAD_DATA
+    }
+
     public enum FieldType {
         INT, LONG, STRING, UNIX_TIME("from_unixtime(?)"), DATETIME, DATE, JSON_OBJECT;
 
@@ -322,6 +334,13 @@ public class OutputMysqlConfig implements DataSourceConfig {
 
     }
 
+    public interface RowBinder {
+
+        // binds all fields of the row from the index, returns the next index
+        int bind(PreparedStatement statement, int index, Map<String, String> values) throws SQLException;
+
+    }
+
     final String poolName;
     final String jdbcUrl;
     final String username;
@@ -331,10 +350,13 @@ public class OutputMysqlConfig implements DataSourceConfig {
     final Optional<String> schema;
     final String table;
     final InsertMode mode;
+    final WriteMode writeMode;
     final boolean derivationEnabled;
     final String derivedField;
     final Map<String, String> derivedTables;
+    final int derivedParallelism;
     final List<FieldConfig> fields;
+    final RowBinder rowBinder;
 
     @JsonCreator
     public OutputMysqlConfig(@JsonProperty(value = "jdbc-url", required = true) String jdbcUrl,
@@ -345,31 +367,45 @@ public class OutputMysqlConfig implements DataSourceConfig {
             @JsonProperty(value = "schema", required = false) String schema,
             @JsonProperty(value = "table", required = true) String table,
             @JsonProperty(value = "mode", required = false) String mode,
+            @JsonProperty(value = "write-mode", required = false) String writeMode,
             @JsonProperty(value = "derivation-enabled", required = false) boolean derivationEnabled,
             @JsonProperty(value = "derived-field", required = false) String derivedField,
             @JsonProperty(value = "derived-tables", required = false) Map<String, String> derivedTables,
+            @JsonProperty(value = "derived-parallelism", required = false) Integer derivedParallelism,
             @JsonProperty(value = "fields", required = true) List<FieldConfig> fields) {
         this.jdbcUrl = jdbcUrl;
         this.username = username;
         this.password = password;
         this.serverTimezone = Optional.ofNullable(serverTimezone).orElse("Asia/Shanghai");
         this.useSSL = useSSL;
-        this.poolName = toPoolName(jdbcUrl, username, password, serverTimezone, useSSL);
         this.schema = Optional.ofNullable(schema);
         this.table = table;
         this.mode = InsertMode.valueOf(Optional.ofNullable(mode).orElse("ignore").toUpperCase());
+        this.writeMode = WriteMode
+                .valueOf(Optional.ofNullable(writeMode).orElse("values").toUpperCase().replace('-', '_'));
+        this.poolName = toPoolName(jdbcUrl, username, password, serverTimezone, useSSL, allowLoadLocalInfile(),
+                rewriteBatchedStatements());
         this.derivationEnabled = derivationEnabled;
+        if (derivationEnabled && this.writeMode == WriteMode.LOAD_DATA) {
+            throw new UnsupportedOperationException("`write-mode` load-data with derivation is unsupported yet");
+        }
         if (derivationEnabled) {
             this.derivedField = Objects.requireNonNull(derivedField, "derived-field");
             this.derivedTables = derivedTables == null ? Map.of() : Map.copyOf(derivedTables);
+            this.derivedParallelism = derivedParallelism == null ? 1 : derivedParallelism.intValue();
+            if (this.derivedParallelism <= 0) {
+                throw new IllegalArgumentException("`derived-parallelism` must be positive");
+            }
         } else {
             this.derivedField = null;
             this.derivedTables = null;
+            this.derivedParallelism = 1;
         }
         if (fields.isEmpty()) {
             throw new IllegalArgumentException("empty fields");
         }
         this.fields = List.copyOf(fields);
+        this.rowBinder = RowBinderUtil.generate(this.fields);
     }
 
     @Override
@@ -402,6 +438,16 @@ public class OutputMysqlConfig implements DataSourceConfig {
         return useSSL;
     }
 
+    @Override
+    public boolean allowLoadLocalInfile() {
+        return writeMode == WriteMode.LOAD_DATA;
+    }
+
+    @Override
+    public boolean rewriteBatchedStatements() {
+        return writeMode == WriteMode.BATCH;
+    }
+
     public Optional<String> schema() {
         return schema;
     }
@@ -425,6 +471,10 @@ public class OutputMysqlConfig implements DataSourceConfig {
         return mode;
     }
 
+    public WriteMode writeMode() {
+        return writeMode;
+    }
+
     public boolean derivationEnabled() {
         return derivationEnabled;
     }
@@ -437,10 +487,19 @@ public class OutputMysqlConfig implements DataSourceConfig {
         return derivedTables;
     }
 
+    // max number of derived tables written concurrently, each holds a pooled connection, 1 means one by one
+    public int derivedParallelism() {
+        return derivedParallelism;
+    }
+
     public List<FieldConfig> fields() {
         return fields;
     }
 
+    public RowBinder rowBinder() {
+        return rowBinder;
+    }
+
     @Override
     public boolean equals(Object obj) {
         if (obj == this) {
@@ -448,10 +507,11 @@ public class OutputMysqlConfig implements DataSourceConfig {
         }
         if (obj instanceof OutputMysqlConfig o) {
             if (poolName.equals(o.poolName) && schema.equals(o.schema) && table.equals(o.table) && mode == o.mode
-                    && derivationEnabled == o.derivationEnabled) {
+                    && writeMode == o.writeMode && derivationEnabled == o.derivationEnabled) {
                 if (CollectionUtil.isEqual(fields, o.fields)) {
                     if (derivationEnabled) {
-                        return derivedField.equals(o.derivedField) && derivedTables.equals(o.derivedTables);
+                        return derivedField.equals(o.derivedField) && derivedTables.equals(o.derivedTables)
+                                && derivedParallelism == o.derivedParallelism;
                     }
                     return true;
                 }
@@ -0,0 +1,40 @@
+package com.github.fmjsjx.conveyor.config;
+
+import java.util.Optional;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import lombok.ToString;
+
+@ToString
+public class PrometheusServerConfig {
+
+    static final String DEFAULT_PATH = "/metrics";
+
+    final Optional<String> address;
+    final int port;
+    final String path;
+
+    @JsonCreator
+    public PrometheusServerConfig(@JsonProperty(value = "address", required = false) String address,
+            @JsonProperty(value = "port", required = true) int port,
+            @JsonProperty(value = "path", required = false) String path) {
+        this.address = Optional.ofNullable(address);
+        this.port = port;
+        this.path = path == null ? DEFAULT_PATH : path;
+    }
+
+    public Optional<String> address() {
+        return address;
+    }
+
+    public int port() {
+        return port;
+    }
+
+    public String path() {
+        return path;
+    }
+
+}
@@ -0,0 +1,59 @@
+package com.github.fmjsjx.conveyor.config;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.github.fmjsjx.libcommon.util.NumberUtil;
+
+import lombok.ToString;
+
+@ToString
+public class RetryConfig {
+
+    public static final RetryConfig DEFAULT = new RetryConfig(null, null, null, null);
+
+    final long baseDelay;
+    final long maxDelay;
+    final int breakerThreshold;
+    final long breakerOpenTime;
+
+    @JsonCreator
+    public RetryConfig(@JsonProperty(value = "base-delay", required = false) Long baseDelay,
+            @JsonProperty(value = "max-delay", required = false) Long maxDelay,
+            @JsonProperty(value = "breaker-threshold", required = false) Integer breakerThreshold,
+            @JsonProperty(value = "breaker-open-time", required = false) Long breakerOpenTime) {
+        this.baseDelay = baseDelay == null ? 500 : baseDelay.longValue();
+        if (this.baseDelay <= 0) {
+            throw new IllegalArgumentException("`base-delay` must be positive");
+        }
+        this.maxDelay = maxDelay == null ? 30_000 : maxDelay.longValue();
+        if (this.maxDelay < this.baseDelay) {
+            throw new IllegalArgumentException("`max-delay` must not be less than `base-delay`");
+        }
+        this.breakerThreshold = NumberUtil.intValue(breakerThreshold, 5);
+        if (this.breakerThreshold < 0) {
+            throw new IllegalArgumentException("`breaker-threshold` must not be negative");
+        }
+        this.breakerOpenTime = breakerOpenTime == null ? 10_000 : breakerOpenTime.longValue();
+        if (this.breakerOpenTime <= 0) {
+            throw new IllegalArgumentException("`breaker-open-time` must be positive");
+        }
+    }
+
+    public long baseDelay() {
+        return baseDelay;
+    }
+
+    public long maxDelay() {
+        return maxDelay;
+    }
+
+    // 0 means the circuit breaker is disabled
+    public int breakerThreshold() {
+        return breakerThreshold;
+    }
+
+    public long breakerOpenTime() {
+        return breakerOpenTime;
+    }
+
+}
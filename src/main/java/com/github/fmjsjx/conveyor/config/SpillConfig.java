@@ -0,0 +1,44 @@
+package com.github.fmjsjx.conveyor.config;
+
+import java.util.Objects;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.github.fmjsjx.libcommon.util.NumberUtil;
+
+import lombok.ToString;
+
+@ToString
+public class SpillConfig {
+
+    final String path;
+    final int segmentSize;
+
+    @JsonCreator
+    public SpillConfig(@JsonProperty(value = "path", required = true) String path,
+            @JsonProperty(value = "segment-size", required = false) Integer segmentSize) {
+        this.path = Objects.requireNonNull(path, "`path` must not be null");
+        this.segmentSize = NumberUtil.intValue(segmentSize, 64);
+        if (this.segmentSize <= 0 || this.segmentSize > 1024) {
+            throw new IllegalArgumentException("`segment-size` must be in range [1, 1024]");
+        }
+    }
+
+    public String path() {
+        return path;
+    }
+
+    // in megabytes
+    public int segmentSize() {
+        return segmentSize;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj instanceof SpillConfig o) {
+            return path.equals(o.path) && segmentSize == o.segmentSize;
+        }
+        return false;
+    }
+
+}
@@ -1,6 +1,8 @@
 package com.github.fmjsjx.conveyor.core;
 
+import java.util.Map;
 import java.util.Optional;
+import java.util.OptionalInt;
 import java.util.concurrent.Executor;
 
 import io.netty.util.concurrent.Future;
@@ -25,4 +27,11 @@ public interface Conveyor {
 
     Optional<ThreadInfo> threadInfo();
 
+    OptionalInt batchSize();
+
+    ConveyorMetrics metrics();
+
+    // extra labels like product and table, for metrics exposition
+    Map<String, String> labels();
+
 }
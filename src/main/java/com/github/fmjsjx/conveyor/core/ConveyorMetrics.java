@@ -0,0 +1,53 @@
+package com.github.fmjsjx.conveyor.core;
+
+import java.util.Optional;
+
+import org.HdrHistogram.Histogram;
+
+// cumulative metrics since the conveyor was created, all latencies are in microseconds
+public interface ConveyorMetrics {
+
+    long rows();
+
+    long batches();
+
+    // rows pushed per second in the last few seconds
+    double rowsPerSecond();
+
+    // raw bytes fetched from input, 0 if input does not know
+    long bytes();
+
+    long fetchRetries();
+
+    long pushRetries();
+
+    long failedBatches();
+
+    long failedRows();
+
+    // length of the input queue at the last sampling, -1 if unknown
+    long backlog();
+
+    // entries delivered but not acknowledged yet, -1 if unknown
+    long pending();
+
+    // age in milliseconds of the oldest entry not consumed yet, -1 if unknown
+    long lag();
+
+    // whether backlog or lag exceeds the alert threshold
+    boolean lagAlert();
+
+    // rows spilled to local disk and not pushed yet
+    long spilledRows();
+
+    // the last error occurred on fetch or push
+    Optional<String> lastError();
+
+    // latency histograms are reused by the next snapshot of the same conveyor, read them before taking another one
+    Histogram fetchLatency();
+
+    Histogram pushLatency();
+
+    Histogram endToEndLatency();
+
+}
@@ -38,6 +38,8 @@ public interface ConveyorSet {
 
     Future<Void> shutdown();
 
+    Future<Void> rescale(ConveyorSetConfig config, List<Conveyor> added, List<Conveyor> removed, Executor executor);
+
     default boolean shutdown(long timeout, TimeUnit unit) throws InterruptedException {
         return shutdown().await(timeout, unit);
     }
@@ -1,14 +1,26 @@
 package com.github.fmjsjx.conveyor.core;
 
 import java.lang.Thread.State;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.OptionalInt;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
 import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 
 import com.github.fmjsjx.conveyor.core.input.Input;
+import com.github.fmjsjx.conveyor.core.output.CircuitBreaker;
+import com.github.fmjsjx.conveyor.core.output.CircuitBreaker.Permit;
 import com.github.fmjsjx.conveyor.core.output.Output;
 
 import io.netty.util.concurrent.DefaultPromise;
@@ -21,6 +33,16 @@ import lombok.extern.slf4j.Slf4j;
 public class DefaultConveyor implements Conveyor {
 
     private static final int defaultMaxRetryCount = 3;
+    private static final long defaultIdleDelay = 100;
+    // max delay before checking the circuit breaker again, keeps the conveyor responsive to shutdown
+    private static final long BREAKER_CHECK_DELAY = 1_000;
+    private static final long SPILL_PROBE_INTERVAL = TimeUnit.SECONDS.toNanos(5);
+    // returned by a transfer step in SHARED mode, the conveyor is resumed when the fetch completes
+    private static final long AWAIT_FETCH = -1;
+    // returned by a push step when the batch was pushed, spilled or given up
+    private static final long PUSH_DONE = -1;
+    // a unique instance, returned by a fetch in SHARED mode if it is not completed yet
+    private static final List<Map<String, String>> AWAITING = Collections.unmodifiableList(new ArrayList<>());
 
     private static final int NOT_STARTED = 0;
     private static final int STARTED = 1;
@@ -34,11 +56,70 @@ public class DefaultConveyor implements Conveyor {
     private final AtomicInteger stateCtl = new AtomicInteger(NOT_STARTED);
     private final Promise<Conveyor> runningFuture = new DefaultPromise<>(GlobalEventExecutor.INSTANCE);
     private int maxRetryCount = defaultMaxRetryCount;
+    private int pipelineWindow;
+    private long idleDelay = defaultIdleDelay;
+    private int lingerRows;
+    private long lingerNanos;
+    private final ArrayList<Map<String, String>> lingerBuffer = new ArrayList<>();
+    private long lingerStartTime;
+    private List<Map<String, String>> lingerLast;
+    private boolean pushFailed;
+    private final ArrayDeque<Prefetch> prefetches = new ArrayDeque<>();
+    // start time of the fetch which returned the last batch
+    private long fetchStartTime;
+    private long lingerFetchStartTime;
+    private final MetricsRecorder metrics = new MetricsRecorder();
+    private Map<String, String> labels = Map.of();
+    private Path spillDir;
+    private int spillSegmentSize;
+    // opened on startup, null if spilling is disabled
+    private volatile SpillStore spill;
+    private long nextSpillProbeTime;
+    private RetryPolicy retryPolicy = RetryPolicy.DEFAULT;
+    // shared with other conveyors on the same data source, null if disabled
+    private CircuitBreaker circuitBreaker;
+    // true if holding the probe of the half-open circuit breaker
+    private boolean probing;
+    private int fetchFailures;
+    // SHARED mode only, null if the conveyor runs on its own thread
+    private ScheduledExecutorService scheduler;
+    // SHARED mode only, the batch waiting to be pushed again, nothing is fetched until it is done
+    private PendingPush pendingPush;
+    // SHARED mode only, the fetch to resume on
+    private CompletableFuture<List<Map<String, String>>> awaitingFetch;
 
     private volatile Promise<Void> terminatedFuture = new DefaultPromise<Void>(GlobalEventExecutor.INSTANCE)
             .setSuccess(null);
 
-    private final AtomicReference<ThreadInfo> threadInfoRef = new AtomicReference<>();
+    private final AtomicReference<ThreadInfoImpl> threadInfoRef = new AtomicReference<>();
+
+    private record Prefetch(CompletionStage<List<Map<String, String>>> future, long startTime, boolean blocking) {
+    }
+
+    // rows not pushed because of other errors, and the number of bad rows sent to the failure log
+    private record Isolation(List<Map<String, String>> unpushed, int badRows) {
+    }
+
+    private static final class PendingPush {
+
+        private final int size;
+        private final List<Map<String, String>> ackBatch;
+        private final long fetchStartTime;
+        private final long startTime = System.nanoTime();
+        // rows not pushed yet
+        private List<Map<String, String>> rows;
+        // rows sent to the failure log by isolation
+        private int badRows;
+        private int retryCount;
+
+        private PendingPush(List<Map<String, String>> rows, List<Map<String, String>> ackBatch, long fetchStartTime) {
+            this.size = rows.size();
+            this.ackBatch = ackBatch;
+            this.fetchStartTime = fetchStartTime;
+            this.rows = rows;
+        }
+
+    }
 
     public DefaultConveyor(String name, Input input, Output output, Executor executor) {
         this(name, input, output);
@@ -120,15 +201,56 @@ public class DefaultConveyor implements Conveyor {
         return Optional.ofNullable(threadInfoRef.get());
     }
 
+    @Override
+    public OptionalInt batchSize() {
+        return input.batchSize();
+    }
+
+    @Override
+    public ConveyorMetrics metrics() {
+        var spill = this.spill;
+        return metrics.snapshot(input, spill == null ? 0 : spill.rows());
+    }
+
     @Override
     public synchronized Future<Conveyor> startup(Executor executor) {
         if (stateCtl.compareAndSet(NOT_STARTED, STARTED)) {
             terminatedFuture = new DefaultPromise<>(GlobalEventExecutor.INSTANCE);
-            executor.execute(this::start);
+            if (executor instanceof ScheduledExecutorService scheduler) {
+                // run as lightweight tasks on the shared scheduler
+                this.scheduler = scheduler;
+                scheduler.execute(this::startScheduled);
+            } else {
+                executor.execute(this::start);
+            }
         }
         return runningFuture;
     }
 
+    @Override
+    public Map<String, String> labels() {
+        return labels;
+    }
+
+    public DefaultConveyor labels(Map<String, String> labels) {
+        this.labels = Map.copyOf(labels);
+        return this;
+    }
+
+    public Input input() {
+        return input;
+    }
+
+    public Optional<Path> spillDir() {
+        return Optional.ofNullable(spillDir);
+    }
+
+    public DefaultConveyor spill(Path dir, int segmentSize) {
+        this.spillDir = dir;
+        this.spillSegmentSize = segmentSize;
+        return this;
+    }
+
     public int maxRetryCount() {
         return maxRetryCount;
     }
@@ -138,15 +260,147 @@ public class DefaultConveyor implements Conveyor {
         return this;
     }
 
+    public RetryPolicy retryPolicy() {
+        return retryPolicy;
+    }
+
+    public DefaultConveyor retryPolicy(RetryPolicy retryPolicy) {
+        this.retryPolicy = retryPolicy;
+        return this;
+    }
+
+    public Optional<CircuitBreaker> circuitBreaker() {
+        return Optional.ofNullable(circuitBreaker);
+    }
+
+    public DefaultConveyor circuitBreaker(CircuitBreaker circuitBreaker) {
+        this.circuitBreaker = circuitBreaker;
+        return this;
+    }
+
+    public int pipelineWindow() {
+        return pipelineWindow;
+    }
+
+    public DefaultConveyor pipelineWindow(int pipelineWindow) {
+        this.pipelineWindow = pipelineWindow;
+        return this;
+    }
+
+    public long idleDelay() {
+        return idleDelay;
+    }
+
+    public DefaultConveyor idleDelay(long idleDelay) {
+        this.idleDelay = idleDelay;
+        return this;
+    }
+
+    public int lingerRows() {
+        return lingerRows;
+    }
+
+    public long lingerMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(lingerNanos);
+    }
+
+    public DefaultConveyor linger(int rows, long millis) {
+        this.lingerRows = rows;
+        this.lingerNanos = TimeUnit.MILLISECONDS.toNanos(millis);
+        return this;
+    }
+
+    private void openSpill() {
+        var dir = spillDir;
+        if (dir != null) {
+            try {
+                spill = SpillStore.open(dir, spillSegmentSize);
+            } catch (Exception e) {
+                log.error("[conveyor:spill] Open spill store at {} failed, {} runs without spilling", dir, this, e);
+            }
+        }
+    }
+
     private void start() {
         threadInfoRef.set(new ThreadInfoImpl());
+        openSpill();
         stateCtl.set(RUNNING);
         log.info("[conveyor:startup] Start up {}", this);
         runningFuture.setSuccess(this);
         for (; isRunning();) {
-            safeTransfer();
+            var delay = safeTransfer(true);
+            if (delay > 0) {
+                sleep(delay);
+            }
+        }
+        terminate();
+    }
+
+    private void startScheduled() {
+        threadInfoRef.set(new ThreadInfoImpl());
+        openSpill();
+        stateCtl.set(RUNNING);
+        log.info("[conveyor:startup] Start up {} on shared scheduler", this);
+        runningFuture.setSuccess(this);
+        runScheduled();
+    }
+
+    // one step of the transfer, never sleeps or waits on input, so the scheduler threads are never blocked
+    private void runScheduled() {
+        var threadInfo = threadInfoRef.get();
+        if (threadInfo == null || threadInfo.thread != Thread.currentThread()) {
+            threadInfoRef.set(new ThreadInfoImpl());
+        }
+        if (!isRunning()) {
+            terminate();
+            return;
+        }
+        var delay = 0L;
+        try {
+            var push = pendingPush;
+            if (push == null) {
+                delay = safeTransfer(true);
+            } else if ((delay = pushStep(push)) == PUSH_DONE) {
+                pendingPush = null;
+                delay = 0;
+            }
+        } catch (Exception e) {
+            log.error("[conveyor:transfer] Unexpected error occurs on {}", this, e);
+        }
+        if (delay == AWAIT_FETCH) {
+            var future = awaitingFetch;
+            awaitingFetch = null;
+            // must be the last action, the callback may run the next step on another thread at once
+            future.whenComplete((batch, e) -> reschedule(0));
+        } else {
+            reschedule(delay);
         }
+    }
+
+    private void reschedule(long delay) {
+        var scheduler = this.scheduler;
+        try {
+            if (delay > 0) {
+                scheduler.schedule(this::runScheduled, delay, TimeUnit.MILLISECONDS);
+            } else {
+                scheduler.execute(this::runScheduled);
+            }
+        } catch (RejectedExecutionException e) {
+            log.warn("[conveyor:shutdown] Shared scheduler of {} is already shutdown", this);
+            stateCtl.compareAndSet(RUNNING, SHUTING_DOWN);
+            terminate();
+        }
+    }
+
+    private void terminate() {
         log.info("[conveyor:shutdown] Shutdown {}", this);
+        var push = pendingPush;
+        if (push != null) {
+            pendingPush = null;
+            finishPush(push);
+        }
+        flushLingerBuffer();
+        drainPrefetches();
         var input = this.input;
         log.info("[conveyor:shutdown] Close {}", input);
         try {
@@ -154,6 +408,11 @@ public class DefaultConveyor implements Conveyor {
         } catch (Exception e) {
             log.warn("[conveyor:shutdown] Unexpected error occurs when close {}", input, e);
         }
+        var spill = this.spill;
+        if (spill != null) {
+            log.info("[conveyor:shutdown] Close {}", spill);
+            spill.close();
+        }
         var output = this.output;
         log.info("[conveyor:shutdown] Close {}", output);
         try {
@@ -172,32 +431,436 @@ public class DefaultConveyor implements Conveyor {
         }
     }
 
-    private void safeTransfer() {
-        var batch = safeInputFetch();
+    // returns the delay in milliseconds before the next transfer
+    private long safeTransfer(boolean wait) {
+        try {
+            return transfer(wait);
+        } finally {
+            // nothing was pushed with the probe
+            releasePermit();
+        }
+    }
+
+    private long transfer(boolean wait) {
+        var spill = this.spill;
+        if (spill != null && !spill.isEmpty() && drainSpill(spill)) {
+            // output recovered, drain spilled data at full speed before fetching any more
+            return 0;
+        }
+        // pause fetching while the breaker is open, unless data can be spilled
+        // the permit is acquired just before pushing, so an idle fetch never holds the probe
+        var circuitBreaker = this.circuitBreaker;
+        if (spill == null && circuitBreaker != null && circuitBreaker.remainingMillis() > 0) {
+            return breakerDelay();
+        }
+        if (lingerRows > 0) {
+            return safeLingerTransfer(wait);
+        }
+        var batch = safeFetch(wait);
+        if (batch == AWAITING) {
+            return AWAIT_FETCH;
+        }
+        if (batch == null) {
+            // fetch failed without waiting
+            return fetchFailureDelay();
+        }
         if (batch.isEmpty()) {
+            // all batches before were pushed, so it is safe to acknowledge
+            safeAck(batch);
             // just returns when batch is empty
-            return;
+            return wait ? 0 : idleDelay;
         }
         if (log.isDebugEnabled()) {
             log.debug("[conveyor:input] Fetched data(size={}) from {}: {}", batch.size(), input, batch);
         }
-        safeOutputPush(batch);
+        return push(batch);
+    }
+
+    private long safeLingerTransfer(boolean wait) {
+        var buffer = lingerBuffer;
+        // never wait on input when there are records in buffer
+        var batch = safeFetch(wait && buffer.isEmpty());
+        if (batch == AWAITING) {
+            return AWAIT_FETCH;
+        }
+        var fetched = batch != null && !batch.isEmpty();
+        if (batch != null && batch.isEmpty() && buffer.isEmpty()) {
+            safeAck(batch);
+        }
+        if (fetched) {
+            if (log.isDebugEnabled()) {
+                log.debug("[conveyor:input] Fetched data(size={}) from {}: {}", batch.size(), input, batch);
+            }
+            if (buffer.isEmpty()) {
+                if (batch.size() >= lingerRows) {
+                    // big enough, just push it
+                    return push(batch);
+                }
+                lingerStartTime = System.nanoTime();
+                lingerFetchStartTime = fetchStartTime;
+            }
+            buffer.addAll(batch);
+            lingerLast = batch;
+        }
+        if (buffer.isEmpty()) {
+            if (batch == null) {
+                return fetchFailureDelay();
+            }
+            return wait ? 0 : idleDelay;
+        }
+        var remaining = lingerNanos - (System.nanoTime() - lingerStartTime);
+        if (buffer.size() >= lingerRows || remaining <= 0) {
+            return flushLingerBuffer();
+        }
+        if (fetched) {
+            // data is still flowing, fetch again immediately
+            return 0;
+        }
+        return Math.max(1, Math.min(TimeUnit.NANOSECONDS.toMillis(remaining), idleDelay));
+    }
+
+    private long flushLingerBuffer() {
+        var buffer = lingerBuffer;
+        if (buffer.isEmpty()) {
+            return 0;
+        }
+        // acknowledging the last batch also acknowledges the batches before it
+        var delay = push(new ArrayList<>(buffer), lingerLast, lingerFetchStartTime);
+        buffer.clear();
+        lingerLast = null;
+        return delay;
+    }
+
+    private long push(List<Map<String, String>> batch) {
+        return push(batch, batch, fetchStartTime);
+    }
+
+    // returns the delay before retrying the push in SHARED mode, or 0 if the batch is done
+    private long push(List<Map<String, String>> batch, List<Map<String, String>> ackBatch, long fetchStartTime) {
+        var spill = this.spill;
+        if (spill != null && !spill.isEmpty() && safeSpill(spill, batch, ackBatch)) {
+            // keep the order, nothing is pushed before spilled data drained
+            return 0;
+        }
+        var push = new PendingPush(batch, ackBatch, fetchStartTime);
+        var delay = pushStep(push);
+        if (delay == PUSH_DONE) {
+            return 0;
+        }
+        if (scheduler != null && isRunning()) {
+            // retry on the next step, never sleep on the shared scheduler
+            pendingPush = push;
+            return delay;
+        }
+        sleep(delay);
+        finishPush(push);
+        return 0;
+    }
+
+    private void finishPush(PendingPush push) {
+        for (var delay = pushStep(push); delay != PUSH_DONE; delay = pushStep(push)) {
+            sleep(delay);
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            // skip
+        }
+    }
+
+    // tries to push the rows once, returns the delay before the next try, or PUSH_DONE if the batch is done
+    private long pushStep(PendingPush push) {
+        var spill = this.spill;
+        if (!acquirePermit()) {
+            if (spill != null || !isRunning()) {
+                return givenUp(push);
+            }
+            return breakerDelay();
+        }
+        var output = this.output;
+        try {
+            output.push(push.rows);
+            pushSucceeded();
+            return pushed(push);
+        } catch (Exception e) {
+            if (output.isDataError(e)) {
+                // the data source is fine
+                pushSucceeded();
+                log.warn("[conveyor:output] Data error occurs when push data to {}, isolate bad rows: {}", output,
+                        e.toString());
+                // only rows not pushed yet are retried
+                var isolation = isolate(output, push.rows);
+                push.rows = isolation.unpushed();
+                push.badRows += isolation.badRows();
+                if (push.rows.isEmpty()) {
+                    return pushed(push);
+                }
+            } else {
+                log.error("[conveyor:output] Unexpected error occurs when push data to {}", output, e);
+                metrics.pushRetried(e);
+                pushRetried();
+            }
+        }
+        // always retry when running, unless data can be spilled
+        if (push.retryCount >= maxRetryCount && (spill != null || !isRunning())) {
+            return givenUp(push);
+        }
+        return retryPolicy.delay(push.retryCount++);
+    }
+
+    private long pushed(PendingPush push) {
+        var endTime = System.nanoTime();
+        input.onPushed(push.size, endTime - push.startTime);
+        // only rows committed by the output, bad rows are counted as failed
+        var committed = push.size - push.badRows;
+        if (committed > 0) {
+            metrics.pushed(committed, endTime - push.startTime, endTime - push.fetchStartTime);
+        }
+        safeAck(push.ackBatch);
+        return PUSH_DONE;
+    }
+
+    private long givenUp(PendingPush push) {
+        var endTime = System.nanoTime();
+        input.onPushed(push.size, endTime - push.startTime);
+        var committed = push.size - push.badRows - push.rows.size();
+        if (committed > 0) {
+            // rows pushed while isolating bad rows
+            metrics.pushed(committed, endTime - push.startTime, endTime - push.fetchStartTime);
+        }
+        var spill = this.spill;
+        if (spill != null && safeSpill(spill, push.rows, push.ackBatch)) {
+            log.warn("[conveyor:spill] Output {} is unavailable, start spilling to {}", output, spill);
+            nextSpillProbeTime = endTime + SPILL_PROBE_INTERVAL;
+        } else {
+            // push failed but never running
+            metrics.pushFailed(push.rows.size());
+            output.failed(push.rows);
+            // acknowledgements are cumulative, never acknowledge any more after a failure
+            pushFailed = true;
+        }
+        return PUSH_DONE;
+    }
+
+    private boolean safeSpill(SpillStore spill, List<Map<String, String>> batch, List<Map<String, String>> ackBatch) {
+        try {
+            spill.append(batch);
+        } catch (Exception e) {
+            log.error("[conveyor:spill] Unexpected error occurs when spill data to {}", spill, e);
+            return false;
+        }
+        // spilled data is safe on disk, so it can be acknowledged
+        safeAck(ackBatch);
+        return true;
+    }
+
+    // returns true if one spilled batch was pushed
+    private boolean drainSpill(SpillStore spill) {
+        var startTime = System.nanoTime();
+        if (startTime - nextSpillProbeTime < 0 || !acquirePermit()) {
+            return false;
+        }
+        try {
+            var batch = spill.peek();
+            var badRows = 0;
+            try {
+                output.push(batch);
+            } catch (Exception e) {
+                if (!output.isDataError(e)) {
+                    throw e;
+                }
+                var isolation = isolate(output, batch);
+                badRows = isolation.badRows();
+                var unpushed = isolation.unpushed();
+                if (!unpushed.isEmpty()) {
+                    // unpushed rows are always the tail, the rows before were pushed or sent to the failure log
+                    var done = batch.size() - unpushed.size();
+                    spillPushed(done - badRows, startTime);
+                    spill.skip(done);
+                    nextSpillProbeTime = startTime + SPILL_PROBE_INTERVAL;
+                    return false;
+                }
+            }
+            pushSucceeded();
+            spillPushed(batch.size() - badRows, startTime);
+            spill.remove();
+        } catch (Exception e) {
+            log.warn("[conveyor:spill] Output {} is still unavailable, keep spilling to {}", output, spill, e);
+            metrics.pushRetried(e);
+            pushRetried();
+            nextSpillProbeTime = startTime + SPILL_PROBE_INTERVAL;
+            return false;
+        }
+        if (spill.isEmpty()) {
+            log.info("[conveyor:spill] All spilled data drained from {}", spill);
+        }
+        return true;
+    }
+
+    private void spillPushed(int rows, long startTime) {
+        if (rows > 0) {
+            var endTime = System.nanoTime();
+            metrics.pushed(rows, endTime - startTime, endTime - startTime);
+        }
+    }
+
+    private void safeAck(List<Map<String, String>> batch) {
+        if (pushFailed) {
+            return;
+        }
+        try {
+            input.ack(batch);
+        } catch (Exception e) {
+            log.error("[conveyor:input] Unexpected error occurs when ack data to {}", input, e);
+        }
+    }
+
+    private List<Map<String, String>> safeFetch(boolean wait) {
+        if (scheduler != null) {
+            return scheduledFetch(wait);
+        }
+        return pipelineWindow > 0 ? safePipelinedFetch(wait) : safeInputFetch(wait);
     }
 
-    private List<Map<String, String>> safeInputFetch() {
+    private List<Map<String, String>> safePipelinedFetch(boolean wait) {
+        var prefetches = this.prefetches;
+        if (!wait && isBlocking(prefetches.peek())) {
+            return List.of();
+        }
+        List<Map<String, String>> batch;
+        do {
+            var prefetch = prefetches.poll();
+            if (prefetch == null) {
+                prefetch = safeFetchAsync(wait);
+            }
+            fetchStartTime = prefetch.startTime;
+            batch = safeAwait(prefetch.future);
+            // queued fetches hold newer records, take them in order before fetching again
+        } while (batch == null && !prefetches.isEmpty());
+        if (batch == null) {
+            // nothing queued, fall back to the synchronous fetch with retries
+            return safeInputFetch(wait);
+        }
+        if (!batch.isEmpty()) {
+            // issue the next fetches before pushing, so that they overlap with the push
+            // they never wait on input, so an idle conveyor only waits on the head fetch
+            for (var window = pipelineWindow; prefetches.size() < window && isRunning();) {
+                prefetches.add(safeFetchAsync(false));
+            }
+        }
+        return batch;
+    }
+
+    // SHARED mode: returns AWAITING if the fetch is not completed yet, the conveyor is resumed on its completion
+    private List<Map<String, String>> scheduledFetch(boolean wait) {
+        var prefetches = this.prefetches;
+        var prefetch = prefetches.peek();
+        if (prefetch == null) {
+            prefetch = safeFetchAsync(wait);
+            prefetches.add(prefetch);
+        } else if (!wait && isBlocking(prefetch)) {
+            return List.of();
+        }
+        var future = prefetch.future.toCompletableFuture();
+        if (!future.isDone()) {
+            awaitingFetch = future;
+            return AWAITING;
+        }
+        prefetches.poll();
+        fetchStartTime = prefetch.startTime;
+        var batch = safeAwait(future);
+        if (batch == null) {
+            // queued fetches hold newer records, they are taken in order after the delay
+            return null;
+        }
+        fetchFailures = 0;
+        if (!batch.isEmpty()) {
+            for (var window = pipelineWindow; prefetches.size() < window && isRunning();) {
+                prefetches.add(safeFetchAsync(false));
+            }
+        }
+        return batch;
+    }
+
+    // the linger time is bounded, so a blocking fetch is never awaited while lingering, it stays queued
+    private static boolean isBlocking(Prefetch prefetch) {
+        return prefetch != null && prefetch.blocking && !prefetch.future.toCompletableFuture().isDone();
+    }
+
+    private Prefetch safeFetchAsync(boolean wait) {
+        var startTime = System.nanoTime();
+        CompletionStage<List<Map<String, String>>> future;
+        try {
+            future = wait ? input.fetchAsync() : input.pollAsync();
+        } catch (Exception e) {
+            future = CompletableFuture.failedFuture(e);
+        }
+        return new Prefetch(future.whenComplete((batch, e) -> {
+            if (batch != null && !batch.isEmpty()) {
+                metrics.fetched(System.nanoTime() - startTime);
+            }
+        }), startTime, wait);
+    }
+
+    // returns null if the fetch failed
+    private List<Map<String, String>> safeAwait(CompletionStage<List<Map<String, String>>> future) {
+        try {
+            return future.toCompletableFuture().join();
+        } catch (Exception e) {
+            log.error("[conveyor:input] Unexpected error occurs when fetch data from {}", input, e);
+            metrics.fetchRetried(e);
+            return null;
+        }
+    }
+
+    private void drainPrefetches() {
+        // records of the in-flight fetches were already taken from input, push them before close
+        // queued fetches are polls, so this never waits on an idle input
+        var prefetches = this.prefetches;
+        for (var prefetch = prefetches.poll(); prefetch != null; prefetch = prefetches.poll()) {
+            try {
+                var batch = prefetch.future.toCompletableFuture().join();
+                if (!batch.isEmpty()) {
+                    push(batch, batch, prefetch.startTime);
+                }
+            } catch (Exception e) {
+                log.error("[conveyor:input] Unexpected error occurs when fetch data from {}", input, e);
+            }
+        }
+    }
+
+    private List<Map<String, String>> safeInputFetch(boolean wait) {
         var input = this.input;
         for (int retryCount = 0; retryCount <= maxRetryCount; retryCount++) {
+            var startTime = System.nanoTime();
             try {
-                return input.fetch();
+                var batch = wait ? input.fetch() : input.poll();
+                if (!batch.isEmpty()) {
+                    metrics.fetched(System.nanoTime() - startTime);
+                }
+                fetchStartTime = startTime;
+                fetchFailures = 0;
+                return batch;
             } catch (Exception e) {
                 log.error("[conveyor:input] Unexpected error occurs when fetch data from {}", input, e);
+                metrics.fetchRetried(e);
             }
         }
+        if (!wait) {
+            // never sleep on the shared scheduler, let the caller delay the next run
+            return null;
+        }
         if (isRunning()) {
-            // sleep 5 seconds then retry last once
+            // back off then retry last once
             try {
-                Thread.sleep(5 * 1000);
-                return input.fetch();
+                Thread.sleep(fetchFailureDelay());
+                fetchStartTime = System.nanoTime();
+                var batch = input.fetch();
+                fetchFailures = 0;
+                return batch;
             } catch (Exception e) {
                 log.error("[conveyor:input] Unexpected error occurs when fetch data from {}", input, e);
             }
@@ -206,28 +869,89 @@ public class DefaultConveyor implements Conveyor {
         return List.of();
     }
 
-    private void safeOutputPush(List<Map<String, String>> batch) {
-        var output = this.output;
-        for (var retryCount = 0; isRunning() || retryCount <= maxRetryCount; retryCount++) {
-            // always retry when running
+    private long fetchFailureDelay() {
+        return Math.max(1, retryPolicy.delay(fetchFailures++));
+    }
+
+    private boolean acquirePermit() {
+        var circuitBreaker = this.circuitBreaker;
+        if (circuitBreaker == null || probing) {
+            return true;
+        }
+        var permit = circuitBreaker.tryAcquire();
+        probing = permit == Permit.PROBE;
+        return permit != Permit.DENIED;
+    }
+
+    private void releasePermit() {
+        if (probing) {
+            probing = false;
+            circuitBreaker.release();
+        }
+    }
+
+    private long breakerDelay() {
+        var remaining = circuitBreaker.remainingMillis();
+        // half-open and another conveyor is probing
+        return remaining > 0 ? Math.min(remaining, BREAKER_CHECK_DELAY) : idleDelay;
+    }
+
+    private void pushSucceeded() {
+        var circuitBreaker = this.circuitBreaker;
+        if (circuitBreaker != null) {
+            probing = false;
+            circuitBreaker.onSuccess();
+        }
+    }
+
+    private void pushRetried() {
+        var circuitBreaker = this.circuitBreaker;
+        if (circuitBreaker != null) {
+            probing = false;
+            circuitBreaker.onFailure();
+        }
+    }
+
+    // pushes the batch half by half to find out bad rows, that costs O(log n) statements for each bad row
+    // bad rows are sent to the failure log, rows not pushed because of other errors are returned
+    private Isolation isolate(Output output, List<Map<String, String>> batch) {
+        var parts = new ArrayDeque<List<Map<String, String>>>();
+        // the batch itself is already known to be bad
+        var badRows = failedPart(output, batch, parts);
+        while (!parts.isEmpty()) {
+            var part = parts.poll();
             try {
-                output.push(batch);
-                return;
+                output.push(part);
             } catch (Exception e) {
-                log.error("[conveyor:output] Unexpected error occurs when push data to {}", output, e);
-                if (retryCount > 3) {
-                    // sleep 30 seconds max
-                    var sleepMillis = retryCount > 9 ? 30_000 : (retryCount - 3) * 5_000;
-                    try {
-                        Thread.sleep(sleepMillis);
-                    } catch (Exception ex) {
-                        // skip
-                    }
+                if (!output.isDataError(e)) {
+                    log.error("[conveyor:output] Unexpected error occurs when isolate bad rows on {}", output, e);
+                    metrics.pushRetried(e);
+                    pushRetried();
+                    var unpushed = new ArrayList<Map<String, String>>(part);
+                    parts.forEach(unpushed::addAll);
+                    return new Isolation(unpushed, badRows);
                 }
+                log.debug("[conveyor:output] Data error occurs when push {} rows to {}", part.size(), output, e);
+                badRows += failedPart(output, part, parts);
             }
         }
-        // push failed but never running
-        output.failed(batch);
+        return new Isolation(List.of(), badRows);
+    }
+
+    // splits the part into halves, the first half is always pushed before the second one to keep the order
+    // returns the number of rows sent to the failure log
+    private int failedPart(Output output, List<Map<String, String>> part,
+            ArrayDeque<List<Map<String, String>>> parts) {
+        if (part.size() == 1) {
+            log.error("[conveyor:output] Bad row found on {}, send it to the failure log", output);
+            metrics.rowsFailed(1);
+            output.failed(part);
+            return 1;
+        }
+        var half = part.size() / 2;
+        parts.addFirst(part.subList(half, part.size()));
+        parts.addFirst(part.subList(0, half));
+        return 0;
     }
 
     private static final class ThreadInfoImpl implements ThreadInfo {
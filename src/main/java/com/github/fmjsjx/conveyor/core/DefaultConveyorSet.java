@@ -2,6 +2,8 @@ package com.github.fmjsjx.conveyor.core;
 
 import java.time.Duration;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Optional;
 import java.util.concurrent.Executor;
@@ -25,8 +27,8 @@ public class DefaultConveyorSet implements ConveyorSet {
     private static final int SHUTING_DOWN = 3;
     private static final int TERMINATED = 4;
 
-    private final ConveyorSetConfig config;
-    private final List<Conveyor> conveyors;
+    private volatile ConveyorSetConfig config;
+    private volatile List<Conveyor> conveyors;
     private final AtomicInteger stateCtl = new AtomicInteger(NOT_STARTED);
     private final AtomicReference<LocalDateTime> startTimeRef = new AtomicReference<>();
 
@@ -134,6 +136,37 @@ public class DefaultConveyorSet implements ConveyorSet {
         }
     }
 
+    @Override
+    public synchronized Future<Void> rescale(ConveyorSetConfig config, List<Conveyor> added, List<Conveyor> removed,
+            Executor executor) {
+        this.config = config;
+        var conveyors = new ArrayList<>(this.conveyors);
+        conveyors.removeAll(removed);
+        conveyors.addAll(added);
+        conveyors.sort(Comparator.comparing(Conveyor::name));
+        this.conveyors = List.copyOf(conveyors);
+        if (isStarted() && !isShuttingDown()) {
+            for (var conveyor : added) {
+                log.info("[conveyor-set:rescale] Start up {} on {}", conveyor, this);
+                conveyor.startup(executor);
+            }
+        }
+        var future = new DefaultPromise<Void>(GlobalEventExecutor.INSTANCE);
+        if (removed.isEmpty()) {
+            return future.setSuccess(null);
+        }
+        var remaining = new AtomicInteger(removed.size());
+        for (var conveyor : removed) {
+            log.info("[conveyor-set:rescale] Shutdown {} on {}", conveyor, this);
+            conveyor.shutdown().addListener(f -> {
+                if (remaining.decrementAndGet() == 0) {
+                    future.trySuccess(null);
+                }
+            });
+        }
+        return future;
+    }
+
     public synchronized Future<Void> shutdown() {
         if (stateCtl.compareAndSet(RUNNING, SHUTING_DOWN)) {
             // shutdown if is running
@@ -0,0 +1,117 @@
+package com.github.fmjsjx.conveyor.core;
+
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import com.github.fmjsjx.conveyor.core.input.Input;
+
+// recording is allocation-free and lock-free, snapshots are taken by other threads
+final class MetricsRecorder {
+
+    // about 3K buckets for each histogram, enough for percentiles of hundreds of conveyors
+    private static final int SIGNIFICANT_DIGITS = 2;
+    // fixed range, an auto-resizing histogram would allocate on recording, longer latencies are clamped
+    private static final long MAX_LATENCY_MICROS = TimeUnit.MINUTES.toMicros(10);
+    private static final long RATE_WINDOW = TimeUnit.SECONDS.toNanos(5);
+
+    private record Snapshot(long rows, long batches, double rowsPerSecond, long bytes, long fetchRetries,
+            long pushRetries, long failedBatches, long failedRows, long backlog, long pending, long lag,
+            boolean lagAlert, long spilledRows, Optional<String> lastError, Histogram fetchLatency,
+            Histogram pushLatency, Histogram endToEndLatency) implements ConveyorMetrics {
+    }
+
+    private static final class Latency {
+
+        private final Recorder recorder = new Recorder(MAX_LATENCY_MICROS, SIGNIFICANT_DIGITS);
+        private final Histogram accumulated = new Histogram(MAX_LATENCY_MICROS, SIGNIFICANT_DIGITS);
+        // reused by every snapshot, so that scrapes never allocate histograms
+        private final Histogram copy = new Histogram(MAX_LATENCY_MICROS, SIGNIFICANT_DIGITS);
+        private Histogram interval;
+
+        private void record(long nanos) {
+            recorder.recordValue(Math.min(MAX_LATENCY_MICROS, Math.max(0, TimeUnit.NANOSECONDS.toMicros(nanos))));
+        }
+
+        // must be called with lock held
+        private Histogram snapshot() {
+            interval = recorder.getIntervalHistogram(interval);
+            accumulated.add(interval);
+            accumulated.copyInto(copy);
+            return copy;
+        }
+
+    }
+
+    private final LongAdder rows = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder fetchRetries = new LongAdder();
+    private final LongAdder pushRetries = new LongAdder();
+    private final LongAdder failedBatches = new LongAdder();
+    private final LongAdder failedRows = new LongAdder();
+    private final Latency fetchLatency = new Latency();
+    private final Latency pushLatency = new Latency();
+    private final Latency endToEndLatency = new Latency();
+    // only updated by the transfer loop
+    private long rateWindowStart = System.nanoTime();
+    private long rateWindowRows;
+    private volatile double rowsPerSecond;
+    private volatile long rateTime = rateWindowStart;
+    private volatile String lastError;
+
+    void fetched(long latencyNanos) {
+        fetchLatency.record(latencyNanos);
+    }
+
+    void fetchRetried(Throwable cause) {
+        fetchRetries.increment();
+        lastError = "fetch: " + cause;
+    }
+
+    void pushed(int size, long latencyNanos, long endToEndNanos) {
+        rows.add(size);
+        batches.increment();
+        pushLatency.record(latencyNanos);
+        endToEndLatency.record(endToEndNanos);
+        var now = System.nanoTime();
+        var windowRows = rateWindowRows += size;
+        var elapsed = now - rateWindowStart;
+        if (elapsed >= RATE_WINDOW) {
+            rowsPerSecond = windowRows * 1_000_000_000.0 / elapsed;
+            rateTime = now;
+            rateWindowStart = now;
+            rateWindowRows = 0;
+        }
+    }
+
+    void pushRetried(Throwable cause) {
+        pushRetries.increment();
+        lastError = "push: " + cause;
+    }
+
+    void pushFailed(int size) {
+        failedBatches.increment();
+        failedRows.add(size);
+    }
+
+    // bad rows isolated from a batch
+    void rowsFailed(int size) {
+        failedRows.add(size);
+    }
+
+    private double rowsPerSecond() {
+        // nothing pushed in the last windows
+        return System.nanoTime() - rateTime > RATE_WINDOW * 2 ? 0 : rowsPerSecond;
+    }
+
+    synchronized ConveyorMetrics snapshot(Input input, long spilledRows) {
+        return new Snapshot(rows.sum(), batches.sum(), rowsPerSecond(), input.fetchedBytes(), fetchRetries.sum(),
+                pushRetries.sum(), failedBatches.sum(), failedRows.sum(), input.backlog(), input.pending(),
+                input.lag(), input.lagAlert(), spilledRows, Optional.ofNullable(lastError),
+                fetchLatency.snapshot(), pushLatency.snapshot(), endToEndLatency.snapshot());
+    }
+
+}
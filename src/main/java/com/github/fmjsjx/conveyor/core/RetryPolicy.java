@@ -0,0 +1,36 @@
+package com.github.fmjsjx.conveyor.core;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+import com.github.fmjsjx.conveyor.config.RetryConfig;
+
+// exponential backoff with full jitter, so that conveyors failed at the same time never retry in lockstep
+public class RetryPolicy {
+
+    public static final RetryPolicy DEFAULT = fromConfig(RetryConfig.DEFAULT);
+
+    public static final RetryPolicy fromConfig(RetryConfig config) {
+        return new RetryPolicy(config.baseDelay(), config.maxDelay());
+    }
+
+    private final long baseDelay;
+    private final long maxDelay;
+
+    public RetryPolicy(long baseDelay, long maxDelay) {
+        this.baseDelay = baseDelay;
+        this.maxDelay = maxDelay;
+    }
+
+    // returns the delay in milliseconds before the next attempt, retryCount starts from 0
+    public long delay(int retryCount) {
+        // avoid overflow, 2^20 times of base delay is large enough
+        var ceiling = Math.min(maxDelay, baseDelay << Math.min(retryCount, 20));
+        return ThreadLocalRandom.current().nextLong(ceiling + 1);
+    }
+
+    @Override
+    public String toString() {
+        return "RetryPolicy(baseDelay=" + baseDelay + ", maxDelay=" + maxDelay + ")";
+    }
+
+}
@@ -0,0 +1,341 @@
+package com.github.fmjsjx.conveyor.core;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import lombok.extern.slf4j.Slf4j;
+
+// write-ahead store of batches on local disk, in memory-mapped segment files
+// each record is {length, rows, crc32, payload}, the read position is kept in the checkpoint file,
+// with the number of rows already done in the record at the read position
+// not thread-safe, only accessed by the conveyor thread
+@Slf4j
+public class SpillStore implements AutoCloseable {
+
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final String CHECKPOINT_FILE = "checkpoint";
+    private static final int HEADER_SIZE = 12;
+
+    public static final SpillStore open(Path dir, int segmentSize) throws IOException {
+        Files.createDirectories(dir);
+        var channel = FileChannel.open(dir.resolve(CHECKPOINT_FILE), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            FileLock lock;
+            try {
+                lock = channel.tryLock();
+            } catch (OverlappingFileLockException e) {
+                lock = null;
+            }
+            if (lock == null) {
+                throw new IOException("spill directory " + dir + " is already in use");
+            }
+            var store = new SpillStore(dir, segmentSize, channel, lock);
+            store.recover();
+            return store;
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private static final Path segmentPath(Path dir, long id) {
+        return dir.resolve(String.format("%020d", id) + SEGMENT_SUFFIX);
+    }
+
+    private static final MappedByteBuffer map(Path path, long size) throws IOException {
+        try (var channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            return channel.map(MapMode.READ_WRITE, 0, Math.max(size, channel.size()));
+        }
+    }
+
+    private static final byte[] encode(List<Map<String, String>> batch) {
+        var out = new ByteArrayOutputStream(batch.size() * 256);
+        try (var data = new DataOutputStream(out)) {
+            data.writeInt(batch.size());
+            for (var row : batch) {
+                data.writeInt(row.size());
+                for (var entry : row.entrySet()) {
+                    writeString(data, entry.getKey());
+                    writeString(data, entry.getValue());
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+
+    private static final void writeString(DataOutputStream data, String value) throws IOException {
+        if (value == null) {
+            data.writeInt(-1);
+        } else {
+            var bytes = value.getBytes(StandardCharsets.UTF_8);
+            data.writeInt(bytes.length);
+            data.write(bytes);
+        }
+    }
+
+    private static final List<Map<String, String>> decode(ByteBuffer buffer) {
+        var size = buffer.getInt();
+        var batch = new ArrayList<Map<String, String>>(size);
+        for (var i = 0; i < size; i++) {
+            var fields = buffer.getInt();
+            var row = new LinkedHashMap<String, String>(Math.max(16, fields * 4 / 3 + 1));
+            for (var j = 0; j < fields; j++) {
+                row.put(readString(buffer), readString(buffer));
+            }
+            batch.add(row);
+        }
+        return batch;
+    }
+
+    private static final String readString(ByteBuffer buffer) {
+        var length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        var bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static final int crc(ByteBuffer buffer, int offset, int length) {
+        var crc = new CRC32();
+        crc.update(buffer.slice(offset, length));
+        return (int) crc.getValue();
+    }
+
+    private final Path dir;
+    private final int segmentSize;
+    private final FileChannel checkpointChannel;
+    private final FileLock lock;
+    private MappedByteBuffer checkpoint;
+
+    private long readId;
+    private int readOffset;
+    // leading rows of the record at the read position, which are already done
+    private int readRows;
+    private MappedByteBuffer readBuffer;
+    private long writeId;
+    private int writeOffset;
+    private MappedByteBuffer writeBuffer;
+    // cached record at the read position
+    private List<Map<String, String>> head;
+    private int headLength;
+
+    private volatile long size;
+    private volatile long rows;
+
+    private SpillStore(Path dir, int segmentSize, FileChannel checkpointChannel, FileLock lock) {
+        this.dir = dir;
+        this.segmentSize = segmentSize;
+        this.checkpointChannel = checkpointChannel;
+        this.lock = lock;
+    }
+
+    private void recover() throws IOException {
+        // checkpoints of 12 bytes written before are extended with zero rows done
+        checkpoint = checkpointChannel.map(MapMode.READ_WRITE, 0, 16);
+        readId = checkpoint.getLong(0);
+        readOffset = checkpoint.getInt(8);
+        readRows = checkpoint.getInt(12);
+        var ids = new ArrayList<Long>();
+        try (var files = Files.list(dir)) {
+            files.map(p -> p.getFileName().toString()).filter(n -> n.endsWith(SEGMENT_SUFFIX))
+                    .map(n -> Long.valueOf(n.substring(0, n.length() - SEGMENT_SUFFIX.length()))).sorted()
+                    .forEach(ids::add);
+        }
+        for (var it = ids.iterator(); it.hasNext();) {
+            var id = it.next();
+            if (id < readId) {
+                // already read but not deleted
+                Files.deleteIfExists(segmentPath(dir, id));
+                it.remove();
+            }
+        }
+        if (ids.isEmpty() || ids.get(0) != readId) {
+            if (!ids.isEmpty()) {
+                log.warn("[conveyor:spill] Checkpoint of {} is lost, read from the first segment", this);
+                readId = ids.get(0);
+            } else {
+                ids.add(readId);
+            }
+            readOffset = 0;
+            readRows = 0;
+            saveCheckpoint();
+        }
+        // scan all records not read yet
+        for (var id : ids) {
+            var buffer = map(segmentPath(dir, id), segmentSize);
+            var offset = id == readId ? readOffset : 0;
+            for (;;) {
+                var length = offset + HEADER_SIZE <= buffer.capacity() ? buffer.getInt(offset) : 0;
+                if (length <= 0 || offset + HEADER_SIZE + length > buffer.capacity()) {
+                    break;
+                }
+                if (buffer.getInt(offset + 8) != crc(buffer, offset + HEADER_SIZE, length)) {
+                    log.warn("[conveyor:spill] Broken record found at {}:{} of {}, truncate it", id, offset, this);
+                    buffer.putInt(offset, 0);
+                    break;
+                }
+                size++;
+                rows += buffer.getInt(offset + 4) - (id == readId && offset == readOffset ? readRows : 0);
+                offset += HEADER_SIZE + length;
+            }
+            if (id == readId) {
+                readBuffer = buffer;
+            }
+            writeId = id;
+            writeOffset = offset;
+            writeBuffer = buffer;
+        }
+        if (size > 0) {
+            log.info("[conveyor:spill] {} recovered with {} batches ({} rows)", this, size, rows);
+        }
+    }
+
+    private void saveCheckpoint() {
+        checkpoint.putLong(0, readId);
+        checkpoint.putInt(8, readOffset);
+        checkpoint.putInt(12, readRows);
+        checkpoint.force();
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    // number of batches
+    public long size() {
+        return size;
+    }
+
+    public long rows() {
+        return rows;
+    }
+
+    public void append(List<Map<String, String>> batch) throws IOException {
+        var payload = encode(batch);
+        var recordSize = HEADER_SIZE + payload.length;
+        var buffer = writeBuffer;
+        var offset = writeOffset;
+        if (offset + recordSize > buffer.capacity()) {
+            // roll to the next segment, the zeros left mark the end of the current one
+            writeId++;
+            buffer = writeBuffer = map(segmentPath(dir, writeId), Math.max(segmentSize, recordSize));
+            offset = writeOffset = 0;
+        }
+        buffer.put(offset + HEADER_SIZE, payload);
+        buffer.putInt(offset + 4, batch.size());
+        buffer.putInt(offset + 8, crc(buffer, offset + HEADER_SIZE, payload.length));
+        // length is written at last, so that a record is never visible before completed
+        buffer.putInt(offset, payload.length);
+        buffer.force(offset, recordSize);
+        writeOffset = offset + recordSize;
+        size++;
+        rows += batch.size();
+    }
+
+    // returns the oldest batch without removing it
+    public List<Map<String, String>> peek() throws IOException {
+        if (head != null) {
+            return head;
+        }
+        if (size == 0) {
+            return null;
+        }
+        for (;;) {
+            var buffer = readBuffer;
+            var offset = readOffset;
+            var length = offset + HEADER_SIZE <= buffer.capacity() ? buffer.getInt(offset) : 0;
+            if (length > 0) {
+                headLength = length;
+                var batch = decode(buffer.slice(offset + HEADER_SIZE, length));
+                head = readRows == 0 ? batch : batch.subList(readRows, batch.size());
+                return head;
+            }
+            if (readId >= writeId) {
+                throw new IOException("no more record in " + this + ", but size is " + size);
+            }
+            // end of the segment, move to the next one
+            var oldId = readId;
+            readId++;
+            readOffset = 0;
+            readRows = 0;
+            readBuffer = readId == writeId ? writeBuffer : map(segmentPath(dir, readId), segmentSize);
+            saveCheckpoint();
+            Files.deleteIfExists(segmentPath(dir, oldId));
+        }
+    }
+
+    // removes the batch returned by peek
+    public void remove() {
+        var head = this.head;
+        if (head == null) {
+            throw new IllegalStateException("peek before remove");
+        }
+        readOffset += HEADER_SIZE + headLength;
+        readRows = 0;
+        saveCheckpoint();
+        this.head = null;
+        size--;
+        rows -= head.size();
+    }
+
+    // removes the leading rows of the batch returned by peek, the rest is returned by the next peek
+    public void skip(int rows) {
+        var head = this.head;
+        if (head == null) {
+            throw new IllegalStateException("peek before skip");
+        }
+        if (rows >= head.size()) {
+            remove();
+            return;
+        }
+        if (rows <= 0) {
+            return;
+        }
+        readRows += rows;
+        saveCheckpoint();
+        this.head = head.subList(rows, head.size());
+        this.rows -= rows;
+    }
+
+    @Override
+    public void close() {
+        try {
+            if (writeBuffer != null) {
+                writeBuffer.force();
+            }
+            lock.release();
+            checkpointChannel.close();
+        } catch (IOException e) {
+            log.warn("[conveyor:spill] Unexpected error occurs when close {}", this, e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "SpillStore(dir=" + dir + ", size=" + size + ", rows=" + rows + ")";
+    }
+
+}
@@ -1,60 +1,258 @@
 package com.github.fmjsjx.conveyor.core.input;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.OptionalInt;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Supplier;
 
 import com.github.fmjsjx.conveyor.config.InputRedisConfig;
+import com.github.fmjsjx.conveyor.config.InputRedisConfig.BacklogConfig;
+import com.github.fmjsjx.conveyor.core.input.BacklogMonitor.Sample;
 import com.github.fmjsjx.conveyor.util.ConfigUtil;
 
 import io.lettuce.core.RedisClient;
 import io.lettuce.core.RedisURI;
+import io.lettuce.core.ScriptOutputType;
 import io.lettuce.core.api.StatefulRedisConnection;
 import io.lettuce.core.api.async.RedisAsyncCommands;
 import io.lettuce.core.api.sync.RedisCommands;
+import io.lettuce.core.codec.RedisCodec;
+import lombok.extern.slf4j.Slf4j;
 
-public abstract class AbstractRedisInput implements Input {
+@Slf4j
+public abstract class AbstractRedisInput<V> implements Input {
 
-    protected static final Supplier<StatefulRedisConnection<String, String>> toConnectionFactory(RedisClient client,
-            String uri) {
-        return () -> client.connect(RedisURI.create(uri));
+    protected static final <V> Supplier<StatefulRedisConnection<String, V>> toConnectionFactory(RedisClient client,
+            String uri, RedisCodec<String, V> codec) {
+        return () -> client.connect(codec, RedisURI.create(uri));
+    }
+
+    private static final <V> Supplier<StatefulRedisConnection<String, V>> toConnectionFactory(RedisClient client,
+            SharedRedisConnections sharedConnections, String uri, RedisCodec<String, V> codec) {
+        if (sharedConnections == null) {
+            return toConnectionFactory(client, uri, codec);
+        }
+        return () -> sharedConnections.connection(uri, codec);
+    }
+
+    protected static final String scriptDigest(String script) {
+        try {
+            var digest = MessageDigest.getInstance("SHA-1").digest(script.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    protected static final <T> T await(CompletionStage<T> stage) {
+        try {
+            return stage.toCompletableFuture().join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    protected static final Throwable unwrap(Throwable e) {
+        return e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
     }
 
     protected final String name;
-    protected final Supplier<StatefulRedisConnection<String, String>> redisConnectionFactory;
+    protected final Supplier<StatefulRedisConnection<String, V>> redisConnectionFactory;
     protected final String key;
-    protected volatile StatefulRedisConnection<String, String> redisConnection;
+    // keys of all products when fan-in, the first one is same with key
+    protected final String[] keys;
+    protected final Executor decodeExecutor;
+    protected final BatchSizeController batchSizeController;
+    // shared connections must not be closed by input
+    protected final SharedRedisConnections sharedConnections;
+    protected final BacklogMonitor backlogMonitor;
+    // backlog is not sampled if null
+    private final ScheduledExecutorService sampleScheduler;
+    private final AtomicBoolean sampling = new AtomicBoolean();
+    private ScheduledFuture<?> sampleFuture;
+    protected volatile StatefulRedisConnection<String, V> redisConnection;
 
-    protected AbstractRedisInput(String name, Supplier<StatefulRedisConnection<String, String>> redisConnectionFactory,
-            String key) {
+    protected AbstractRedisInput(String name, Supplier<StatefulRedisConnection<String, V>> redisConnectionFactory,
+            String[] keys, Executor decodeExecutor, BatchSizeController batchSizeController,
+            SharedRedisConnections sharedConnections, BacklogMonitor backlogMonitor,
+            ScheduledExecutorService sampleScheduler) {
         this.name = name;
         this.redisConnectionFactory = redisConnectionFactory;
-        this.key = key;
+        this.key = keys[0];
+        this.keys = keys;
+        this.decodeExecutor = decodeExecutor;
+        this.batchSizeController = batchSizeController;
+        this.sharedConnections = sharedConnections;
+        this.backlogMonitor = backlogMonitor;
+        this.sampleScheduler = sampleScheduler;
+    }
+
+    protected AbstractRedisInput(String name, Supplier<StatefulRedisConnection<String, V>> redisConnectionFactory,
+            String[] keys, Executor decodeExecutor, BatchSizeController batchSizeController,
+            SharedRedisConnections sharedConnections) {
+        this(name, redisConnectionFactory, keys, decodeExecutor, batchSizeController, sharedConnections,
+                new BacklogMonitor(name, BacklogConfig.DEFAULT), null);
     }
 
-    protected AbstractRedisInput(String name, RedisClient client, String productId, InputRedisConfig config) {
-        this(name, toConnectionFactory(client, config.uri()), ConfigUtil.fixValue(config.key(), productId));
+    protected AbstractRedisInput(String name, Supplier<StatefulRedisConnection<String, V>> redisConnectionFactory,
+            String key, Executor decodeExecutor, BatchSizeController batchSizeController) {
+        this(name, redisConnectionFactory, new String[] { key }, decodeExecutor, batchSizeController, null);
     }
 
-    public StatefulRedisConnection<String, String> redisConnection() {
+    protected AbstractRedisInput(String name, RedisClient client, SharedRedisConnections sharedConnections,
+            List<String> productIds, InputRedisConfig config, RedisCodec<String, V> codec) {
+        // decode and sample backlog on the computation pool of lettuce, so that no more threads are needed
+        this(name, toConnectionFactory(client, sharedConnections, config.uri(), codec),
+                productIds.stream().map(productId -> ConfigUtil.fixValue(config.key(), productId))
+                        .toArray(String[]::new),
+                client.getResources().eventExecutorGroup(), BatchSizeController.fromConfig(config), sharedConnections,
+                new BacklogMonitor(name, config.backlog()), client.getResources().eventExecutorGroup());
+    }
+
+    protected AbstractRedisInput(String name, RedisClient client, String productId, InputRedisConfig config,
+            RedisCodec<String, V> codec) {
+        this(name, client, null, List.of(productId), config, codec);
+    }
+
+    public StatefulRedisConnection<String, V> redisConnection() {
         var conn = redisConnection;
         if (conn == null) {
             synchronized (this) {
                 conn = redisConnection;
                 if (conn == null) {
-                    redisConnection = conn = redisConnectionFactory.get();
+                    conn = redisConnectionFactory.get();
+                    connected(conn);
+                    redisConnection = conn;
+                    scheduleSampling();
                 }
             }
         }
         return conn;
     }
 
-    protected RedisCommands<String, String> redisSync() {
+    protected void connected(StatefulRedisConnection<String, V> connection) {
+        // default do nothing
+    }
+
+    private void scheduleSampling() {
+        var interval = backlogMonitor.sampleInterval();
+        if (sampleScheduler != null && interval > 0) {
+            sampleFuture = sampleScheduler.scheduleWithFixedDelay(this::sample, interval, interval,
+                    TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void sample() {
+        // skip if the last sampling is still in flight
+        if (!sampling.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            sampleBacklog().whenComplete((sample, e) -> {
+                sampling.set(false);
+                if (e != null) {
+                    log.debug("[input:redis] Sample backlog failed on {}", this, e);
+                } else {
+                    backlogMonitor.onSample(sample);
+                    batchSizeController.onBacklog(sample.backlog());
+                }
+            });
+        } catch (Exception e) {
+            sampling.set(false);
+            log.debug("[input:redis] Sample backlog failed on {}", this, e);
+        }
+    }
+
+    // commands of all keys are sent before waiting for any reply, so they are pipelined on the connection
+    protected abstract CompletionStage<Sample> sampleBacklog();
+
+    // returns version number like 60205 for 6.2.5, or 0 if unknown
+    protected int redisVersion(StatefulRedisConnection<String, V> connection) {
+        try {
+            var info = connection.sync().info("server");
+            for (var line : info.split("\r?\n")) {
+                if (line.startsWith("redis_version:")) {
+                    var parts = line.substring("redis_version:".length()).strip().split("\\.");
+                    var version = 0;
+                    for (var i = 0; i < 3; i++) {
+                        version = version * 100 + (i < parts.length ? Integer.parseInt(parts[i]) : 0);
+                    }
+                    return version;
+                }
+            }
+        } catch (Exception e) {
+            log.warn("[input:redis] Detect REDIS server version failed on {}", this, e);
+        }
+        return 0;
+    }
+
+    protected RedisCommands<String, V> redisSync() {
         return redisConnection().sync();
     }
 
-    protected RedisAsyncCommands<String, String> redisAsync() {
+    protected RedisAsyncCommands<String, V> redisAsync() {
         return redisConnection().async();
     }
 
+    @SafeVarargs
+    protected final <T> CompletionStage<T> evalAsync(String script, String digest, ScriptOutputType type,
+            String[] keys, V... args) {
+        var async = redisAsync();
+        return async.<T>evalsha(digest, type, keys, args).exceptionallyCompose(e -> {
+            var cause = unwrap(e);
+            if (cause.getMessage() != null && cause.getMessage().startsWith("NOSCRIPT")) {
+                // script not cached yet, just EVAL it
+                return async.<T>eval(script, type, keys, args);
+            }
+            return CompletableFuture.failedFuture(cause);
+        });
+    }
+
+    @Override
+    public OptionalInt batchSize() {
+        return OptionalInt.of(batchSizeController.current());
+    }
+
+    @Override
+    public long backlog() {
+        var backlog = backlogMonitor.backlog();
+        return backlog >= 0 ? backlog : batchSizeController.backlog();
+    }
+
+    @Override
+    public long pending() {
+        return backlogMonitor.pending();
+    }
+
+    @Override
+    public long lag() {
+        return backlogMonitor.lag();
+    }
+
+    @Override
+    public boolean lagAlert() {
+        return backlogMonitor.alerting();
+    }
+
+    @Override
+    public void onPushed(int size, long latencyNanos) {
+        batchSizeController.onPushed(size, latencyNanos);
+    }
+
     @Override
     public String toString() {
         return getClass().getSimpleName() + "(" + name + ")";
@@ -62,8 +260,12 @@ public abstract class AbstractRedisInput implements Input {
 
     @Override
     public synchronized void close() {
+        var sampleFuture = this.sampleFuture;
+        if (sampleFuture != null) {
+            sampleFuture.cancel(false);
+        }
         var redisConnection = this.redisConnection;
-        if (redisConnection != null) {
+        if (redisConnection != null && sharedConnections == null) {
             redisConnection.close();
         }
     }
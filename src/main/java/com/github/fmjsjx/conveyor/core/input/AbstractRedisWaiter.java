@@ -0,0 +1,204 @@
+package com.github.fmjsjx.conveyor.core.input;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import io.lettuce.core.UnblockType;
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.api.async.RedisAsyncCommands;
+import lombok.extern.slf4j.Slf4j;
+
+// collapses blocking waits on many keys into one blocking command on a dedicated connection
+@Slf4j
+abstract class AbstractRedisWaiter<V, R> implements AutoCloseable {
+
+    protected static final long TIMEOUT_SECONDS = 5;
+    private static final long TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(TIMEOUT_SECONDS);
+
+    private record Waiter<R>(CompletableFuture<R> future, int count, long deadline) {
+    }
+
+    private final String name;
+    private final Supplier<StatefulRedisConnection<String, V>> connectionFactory;
+    private final Supplier<StatefulRedisConnection<String, String>> controlConnectionFactory;
+    private final Map<String, ArrayDeque<Waiter<R>>> waiters = new HashMap<>();
+    private StatefulRedisConnection<String, V> connection;
+    // CLIENT ID of the connection, null if it must be fetched again
+    private CompletionStage<Long> clientId;
+    // keys of the blocking command, or null if not blocking
+    private Set<String> blockingKeys;
+    private boolean unblocking;
+    private boolean closed;
+
+    protected AbstractRedisWaiter(String name, Supplier<StatefulRedisConnection<String, V>> connectionFactory,
+            Supplier<StatefulRedisConnection<String, String>> controlConnectionFactory) {
+        this.name = name;
+        this.connectionFactory = connectionFactory;
+        this.controlConnectionFactory = controlConnectionFactory;
+    }
+
+    // completes with null if nothing arrived in the timeout
+    CompletionStage<R> await(String key, int count) {
+        var waiter = new Waiter<R>(new CompletableFuture<>(), count, System.nanoTime() + TIMEOUT_NANOS);
+        var completions = new ArrayList<Runnable>();
+        synchronized (this) {
+            if (closed) {
+                return CompletableFuture.failedFuture(new IllegalStateException(this + " already closed"));
+            }
+            waiters.computeIfAbsent(key, k -> new ArrayDeque<>()).add(waiter);
+            if (blockingKeys == null) {
+                block(completions);
+            } else if (!blockingKeys.contains(key) && !unblocking) {
+                // wake up the blocking command, so that it can be issued again with the new key
+                unblock();
+            }
+        }
+        completions.forEach(Runnable::run);
+        return waiter.future;
+    }
+
+    protected abstract CompletionStage<Map<String, R>> block(RedisAsyncCommands<String, V> async, String[] keys,
+            int count);
+
+    // called with the results returned after closed, no input takes them any more
+    protected abstract CompletionStage<?> giveBack(RedisAsyncCommands<String, V> async, Map<String, R> results);
+
+    // must be called with lock held, futures are completed out of the lock
+    private void block(List<Runnable> completions) {
+        try {
+            if (connection == null) {
+                connection = connectionFactory.get();
+                clientId = null;
+            }
+        } catch (Exception e) {
+            log.error("[input:redis] Connect REDIS failed on {}", this, e);
+            failAll(e, completions);
+            return;
+        }
+        var keys = waiters.keySet().toArray(String[]::new);
+        var count = Integer.MAX_VALUE;
+        for (var queue : waiters.values()) {
+            for (var waiter : queue) {
+                count = Math.min(count, waiter.count);
+            }
+        }
+        var async = connection.async();
+        if (clientId == null) {
+            // pipelined before the blocking command
+            clientId = async.clientId();
+        }
+        blockingKeys = Set.of(keys);
+        block(async, keys, count).whenComplete(this::onBlocked);
+    }
+
+    private void unblock() {
+        unblocking = true;
+        try {
+            var control = controlConnectionFactory.get().async();
+            // the ID may be not replied yet, the blocking command is pipelined after it, so just wait for it
+            clientId.thenCompose(id -> control.clientUnblock(id, UnblockType.TIMEOUT)).whenComplete((r, e) -> {
+                if (e != null) {
+                    // new keys will be included after the current command timed out
+                    log.warn("[input:redis] CLIENT UNBLOCK failed on {}", this, e);
+                }
+            });
+        } catch (Exception e) {
+            log.warn("[input:redis] CLIENT UNBLOCK failed on {}", this, e);
+        }
+    }
+
+    private void onBlocked(Map<String, R> results, Throwable e) {
+        var completions = new ArrayList<Runnable>();
+        synchronized (this) {
+            blockingKeys = null;
+            unblocking = false;
+            if (closed) {
+                // the last input is closed, values popped already are given back before the connection is closed
+                failAll(new IllegalStateException(this + " already closed"), completions);
+                if (e == null && !results.isEmpty()) {
+                    log.warn("[input:redis] Give back {} results returned after closed on {}", results.size(), this);
+                    giveBack(connection.async(), results).whenComplete((r, x) -> {
+                        if (x != null) {
+                            log.error("[input:redis] Give back results of {} failed on {}", results.keySet(), this, x);
+                        }
+                        closeConnection();
+                    });
+                } else {
+                    closeConnection();
+                }
+            } else if (e != null) {
+                // client ID changes after reconnected
+                clientId = null;
+                failAll(e instanceof CompletionException && e.getCause() != null ? e.getCause() : e, completions);
+            } else {
+                results.forEach((key, result) -> {
+                    // a key is removed only here, so there is always a waiter for each result
+                    var queue = waiters.get(key);
+                    var waiter = queue.poll();
+                    if (queue.isEmpty()) {
+                        waiters.remove(key);
+                    }
+                    completions.add(() -> waiter.future.complete(result));
+                });
+                var now = System.nanoTime();
+                for (var it = waiters.values().iterator(); it.hasNext();) {
+                    var queue = it.next();
+                    while (!queue.isEmpty() && now - queue.peek().deadline >= 0) {
+                        var waiter = queue.poll();
+                        completions.add(() -> waiter.future.complete(null));
+                    }
+                    if (queue.isEmpty()) {
+                        it.remove();
+                    }
+                }
+                if (!waiters.isEmpty()) {
+                    block(completions);
+                }
+            }
+        }
+        completions.forEach(Runnable::run);
+    }
+
+    private void failAll(Throwable cause, List<Runnable> completions) {
+        for (var queue : waiters.values()) {
+            for (var waiter : queue) {
+                completions.add(() -> waiter.future.completeExceptionally(cause));
+            }
+        }
+        waiters.clear();
+    }
+
+    @Override
+    public synchronized void close() {
+        closed = true;
+        if (blockingKeys == null) {
+            closeConnection();
+        } else if (!unblocking) {
+            // closed after the blocking command returned, or values popped by it would be lost
+            unblock();
+        }
+    }
+
+    private synchronized void closeConnection() {
+        var connection = this.connection;
+        if (connection != null) {
+            this.connection = null;
+            connection.close();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "(" + name + ")";
+    }
+
+}
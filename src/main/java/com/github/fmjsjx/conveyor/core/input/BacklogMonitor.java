@@ -0,0 +1,90 @@
+package com.github.fmjsjx.conveyor.core.input;
+
+import com.github.fmjsjx.conveyor.config.InputRedisConfig.BacklogConfig;
+
+import lombok.extern.slf4j.Slf4j;
+
+@Slf4j
+public class BacklogMonitor {
+
+    // oldestTime is the timestamp in milliseconds of the oldest entry not consumed yet, 0 if nothing left and -1 if
+    // unknown
+    record Sample(long backlog, long pending, long oldestTime) {
+
+        static final Sample merge(Sample a, Sample b) {
+            var oldestTime = a.oldestTime < 0 || b.oldestTime < 0 ? -1
+                    : a.oldestTime == 0 ? b.oldestTime
+                            : b.oldestTime == 0 ? a.oldestTime : Math.min(a.oldestTime, b.oldestTime);
+            return new Sample(a.backlog + b.backlog, sum(a.pending, b.pending), oldestTime);
+        }
+
+        private static final long sum(long a, long b) {
+            return a < 0 || b < 0 ? -1 : a + b;
+        }
+
+    }
+
+    private final String name;
+    private final long sampleInterval;
+    private final long alertBacklog;
+    private final long alertLag;
+
+    private volatile long backlog = -1;
+    private volatile long pending = -1;
+    private volatile long lag = -1;
+    private volatile boolean alerting;
+
+    public BacklogMonitor(String name, BacklogConfig config) {
+        this.name = name;
+        this.sampleInterval = config.sampleInterval();
+        this.alertBacklog = config.alertBacklog();
+        this.alertLag = config.alertLag();
+    }
+
+    public long sampleInterval() {
+        return sampleInterval;
+    }
+
+    public long backlog() {
+        return backlog;
+    }
+
+    public long pending() {
+        return pending;
+    }
+
+    public long lag() {
+        return lag;
+    }
+
+    public boolean alerting() {
+        return alerting;
+    }
+
+    void onSample(Sample sample) {
+        var backlog = sample.backlog();
+        var lag = sample.oldestTime() <= 0 ? sample.oldestTime()
+                : Math.max(0, System.currentTimeMillis() - sample.oldestTime());
+        this.backlog = backlog;
+        this.pending = sample.pending();
+        this.lag = lag;
+        var alert = (alertBacklog > 0 && backlog >= alertBacklog) || (alertLag > 0 && lag >= alertLag);
+        if (alert != alerting) {
+            alerting = alert;
+            if (alert) {
+                log.warn("[input:redis] Backlog alert on {}: backlog {}, pending {}, lag {}ms", name, backlog,
+                        sample.pending(), lag);
+            } else {
+                log.info("[input:redis] Backlog recovered on {}: backlog {}, pending {}, lag {}ms", name, backlog,
+                        sample.pending(), lag);
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "BacklogMonitor(name=" + name + ", backlog=" + backlog + ", pending=" + pending + ", lag=" + lag
+                + ", alerting=" + alerting + ")";
+    }
+
+}
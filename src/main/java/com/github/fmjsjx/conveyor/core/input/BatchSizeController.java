@@ -0,0 +1,108 @@
+package com.github.fmjsjx.conveyor.core.input;
+
+import java.util.concurrent.TimeUnit;
+
+import com.github.fmjsjx.conveyor.config.InputRedisConfig;
+import com.github.fmjsjx.conveyor.config.InputRedisConfig.AdaptiveBatchConfig;
+
+public class BatchSizeController {
+
+    private static final long BACKLOG_SAMPLE_INTERVAL = TimeUnit.SECONDS.toNanos(1);
+
+    public static final BatchSizeController fromConfig(InputRedisConfig config) {
+        return config.adaptiveBatch().map(adaptive -> new BatchSizeController(config.batch(), adaptive))
+                .orElseGet(() -> new BatchSizeController(config.batch()));
+    }
+
+    private final boolean adaptive;
+    private final int min;
+    private final int max;
+    private final long targetLatencyNanos;
+
+    private volatile int current;
+    private volatile boolean full;
+    private volatile long backlog = -1;
+    private volatile long lastBacklogSampleTime;
+    private double rowNanos;
+
+    public BatchSizeController(int batch) {
+        this.adaptive = false;
+        this.min = batch;
+        this.max = batch;
+        this.current = batch;
+        this.targetLatencyNanos = 0;
+    }
+
+    public BatchSizeController(int initial, AdaptiveBatchConfig config) {
+        this.adaptive = true;
+        this.min = config.min();
+        this.max = config.max();
+        this.current = Math.max(min, Math.min(max, initial));
+        this.targetLatencyNanos = TimeUnit.MILLISECONDS.toNanos(config.targetLatency());
+        this.lastBacklogSampleTime = System.nanoTime() - BACKLOG_SAMPLE_INTERVAL;
+    }
+
+    public boolean adaptive() {
+        return adaptive;
+    }
+
+    public int current() {
+        return current;
+    }
+
+    public long backlog() {
+        return backlog;
+    }
+
+    public void onFetched(int fetched, int requested) {
+        full = fetched >= requested;
+    }
+
+    public boolean shouldSampleBacklog() {
+        if (adaptive && full) {
+            var now = System.nanoTime();
+            if (now - lastBacklogSampleTime >= BACKLOG_SAMPLE_INTERVAL) {
+                lastBacklogSampleTime = now;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public void onBacklog(long backlog) {
+        this.backlog = backlog;
+    }
+
+    public void onPushed(int size, long latencyNanos) {
+        if (!adaptive || size <= 0) {
+            return;
+        }
+        var current = this.current;
+        if (size >= current / 2) {
+            // only batches that are big enough tell the real cost per row
+            var sample = (double) latencyNanos / size;
+            rowNanos = rowNanos == 0 ? sample : rowNanos * 0.8 + sample * 0.2;
+        }
+        if (rowNanos == 0) {
+            return;
+        }
+        var desired = (int) Math.min(Integer.MAX_VALUE, targetLatencyNanos / rowNanos);
+        var next = current;
+        if (latencyNanos > targetLatencyNanos) {
+            // too slow, shrink towards the target latency
+            next = Math.min(desired, current - current / 4);
+        } else if (full || backlog > current) {
+            // data is piling up and there is still headroom, grow at most 2 times each step
+            next = Math.min(desired, current * 2);
+            next = Math.max(next, current);
+        }
+        this.current = Math.max(min, Math.min(max, next));
+    }
+
+    @Override
+    public String toString() {
+        return "BatchSizeController(adaptive=" + adaptive + ", current=" + current + ", min=" + min + ", max="
+                + max + ", backlog=" + backlog + ")";
+    }
+
+}
@@ -0,0 +1,33 @@
+package com.github.fmjsjx.conveyor.core.input;
+
+import java.util.AbstractList;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+
+public final class FetchedBatch extends AbstractList<Map<String, String>> implements RandomAccess {
+
+    private final List<Map<String, String>> data;
+    private final long sequence;
+
+    public FetchedBatch(List<Map<String, String>> data, long sequence) {
+        this.data = data;
+        this.sequence = sequence;
+    }
+
+    // acknowledging this batch also acknowledges all batches fetched before it
+    public long sequence() {
+        return sequence;
+    }
+
+    @Override
+    public Map<String, String> get(int index) {
+        return data.get(index);
+    }
+
+    @Override
+    public int size() {
+        return data.size();
+    }
+
+}
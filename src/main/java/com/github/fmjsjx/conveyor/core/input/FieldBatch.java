@@ -0,0 +1,148 @@
+package com.github.fmjsjx.conveyor.core.input;
+
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractList;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.RandomAccess;
+import java.util.Set;
+
+import com.jsoniter.JsonIterator;
+
+import lombok.extern.slf4j.Slf4j;
+
+// rows of only the fields in schema, all values are stored in one flat array
+@Slf4j
+public final class FieldBatch extends AbstractList<Map<String, String>> implements RandomAccess {
+
+    public static final FieldBatch parse(RecordSchema schema, List<byte[]> values) {
+        var width = schema.size();
+        var cells = new String[values.size() * width];
+        var size = 0;
+        // reuse one iterator for the whole batch
+        var iter = new JsonIterator();
+        for (var value : values) {
+            var offset = size * width;
+            try {
+                iter.reset(value);
+                schema.parse(iter, cells, offset);
+                size++;
+            } catch (Exception e) {
+                log.warn("[input:redis] parse data failed: {}", new String(value, StandardCharsets.UTF_8), e);
+                Arrays.fill(cells, offset, offset + width, null);
+            }
+        }
+        return new FieldBatch(schema, cells, size);
+    }
+
+    private final RecordSchema schema;
+    private final String[] cells;
+    private final int size;
+
+    FieldBatch(RecordSchema schema, String[] cells, int size) {
+        this.schema = schema;
+        this.cells = cells;
+        this.size = size;
+    }
+
+    public RecordSchema schema() {
+        return schema;
+    }
+
+    @Override
+    public Map<String, String> get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException(index);
+        }
+        return new FieldRecord(schema, cells, index * schema.size());
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    private static final class FieldRecord extends AbstractMap<String, String> {
+
+        private final RecordSchema schema;
+        private final String[] cells;
+        private final int offset;
+
+        private FieldRecord(RecordSchema schema, String[] cells, int offset) {
+            this.schema = schema;
+            this.cells = cells;
+            this.offset = offset;
+        }
+
+        @Override
+        public String get(Object key) {
+            var index = schema.indexOf(key);
+            return index < 0 ? null : cells[offset + index];
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return get(key) != null;
+        }
+
+        @Override
+        public Set<Entry<String, String>> entrySet() {
+            return new AbstractSet<>() {
+
+                @Override
+                public Iterator<Entry<String, String>> iterator() {
+                    return new Iterator<>() {
+
+                        private int index = nextIndex(0);
+
+                        private int nextIndex(int from) {
+                            // missing fields are absent, same as the map parsed from JSON
+                            var width = schema.size();
+                            for (var i = from; i < width; i++) {
+                                if (cells[offset + i] != null) {
+                                    return i;
+                                }
+                            }
+                            return width;
+                        }
+
+                        @Override
+                        public boolean hasNext() {
+                            return index < schema.size();
+                        }
+
+                        @Override
+                        public Entry<String, String> next() {
+                            if (!hasNext()) {
+                                throw new NoSuchElementException();
+                            }
+                            var entry = new SimpleImmutableEntry<>(schema.name(index), cells[offset + index]);
+                            index = nextIndex(index + 1);
+                            return entry;
+                        }
+
+                    };
+                }
+
+                @Override
+                public int size() {
+                    var count = 0;
+                    for (var i = 0; i < schema.size(); i++) {
+                        if (cells[offset + i] != null) {
+                            count++;
+                        }
+                    }
+                    return count;
+                }
+
+            };
+        }
+
+    }
+
+}
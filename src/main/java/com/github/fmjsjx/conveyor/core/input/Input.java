@@ -2,11 +2,67 @@ package com.github.fmjsjx.conveyor.core.input;
 
 import java.util.List;
 import java.util.Map;
+import java.util.OptionalInt;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
 
 public interface Input extends AutoCloseable {
 
     List<Map<String, String>> fetch();
 
+    default CompletionStage<List<Map<String, String>>> fetchAsync() {
+        try {
+            return CompletableFuture.completedFuture(fetch());
+        } catch (Exception e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    default List<Map<String, String>> poll() {
+        return fetch();
+    }
+
+    default CompletionStage<List<Map<String, String>>> pollAsync() {
+        return fetchAsync();
+    }
+
+    default OptionalInt batchSize() {
+        return OptionalInt.empty();
+    }
+
+    // total raw bytes fetched, or 0 if unknown
+    default long fetchedBytes() {
+        return 0;
+    }
+
+    // length of the queue at the last sampling, or -1 if unknown
+    default long backlog() {
+        return -1;
+    }
+
+    // entries delivered but not acknowledged yet, or -1 if unknown
+    default long pending() {
+        return -1;
+    }
+
+    // age in milliseconds of the oldest entry not consumed yet, or -1 if unknown
+    default long lag() {
+        return -1;
+    }
+
+    default boolean lagAlert() {
+        return false;
+    }
+
+    default void onPushed(int size, long latencyNanos) {
+        // default do nothing
+    }
+
+    // called after the batch was pushed to output successfully, in the same order as fetched
+    default void ack(List<Map<String, String>> batch) {
+        // default do nothing
+    }
+
     @Override
     void close();
 
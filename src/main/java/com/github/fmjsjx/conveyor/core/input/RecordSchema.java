@@ -0,0 +1,102 @@
+package com.github.fmjsjx.conveyor.core.input;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+
+import com.jsoniter.CodegenAccess;
+import com.jsoniter.JsonIterator;
+import com.jsoniter.ValueType;
+import com.jsoniter.spi.Slice;
+
+public final class RecordSchema {
+
+    public static final RecordSchema of(Collection<String> names) {
+        return new RecordSchema(new LinkedHashSet<>(names).toArray(String[]::new));
+    }
+
+    private final String[] names;
+    private final byte[][] nameBytes;
+    private final Map<String, Integer> indexes;
+
+    private RecordSchema(String[] names) {
+        this.names = names;
+        this.nameBytes = new byte[names.length][];
+        this.indexes = new HashMap<>(names.length * 2);
+        for (var i = 0; i < names.length; i++) {
+            nameBytes[i] = names[i].getBytes(StandardCharsets.UTF_8);
+            indexes.put(names[i], i);
+        }
+    }
+
+    public int size() {
+        return names.length;
+    }
+
+    public String name(int index) {
+        return names[index];
+    }
+
+    public int indexOf(Object name) {
+        var index = indexes.get(name);
+        return index == null ? -1 : index.intValue();
+    }
+
+    private int indexOf(Slice field) {
+        var data = field.data();
+        var head = field.head();
+        var length = field.tail() - head;
+        // linear scan is faster than hashing for a few fields
+        var nameBytes = this.nameBytes;
+        for (var i = 0; i < nameBytes.length; i++) {
+            var name = nameBytes[i];
+            if (name.length == length && Arrays.equals(name, 0, length, data, head, head + length)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // parses one JSON object, only fields in this schema are read and the others are just skipped
+    void parse(JsonIterator iter, String[] cells, int offset) throws IOException {
+        if (iter.whatIsNext() != ValueType.OBJECT) {
+            throw new IOException("JSON object expected");
+        }
+        if (!CodegenAccess.readObjectStart(iter)) {
+            return;
+        }
+        do {
+            var index = indexOf(CodegenAccess.readObjectFieldAsSlice(iter));
+            if (index < 0) {
+                iter.skip();
+            } else {
+                cells[offset + index] = readValue(iter);
+            }
+        } while (CodegenAccess.nextToken(iter) == ',');
+    }
+
+    static final String readValue(JsonIterator iter) throws IOException {
+        switch (iter.whatIsNext()) {
+        case STRING:
+            return iter.readString();
+        case NULL:
+            iter.readNull();
+            return null;
+        case BOOLEAN:
+            return String.valueOf(iter.readBoolean());
+        default:
+            // numbers, objects and arrays are kept as raw JSON text
+            return iter.readAny().toString();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "RecordSchema(" + String.join(",", names) + ")";
+    }
+
+}
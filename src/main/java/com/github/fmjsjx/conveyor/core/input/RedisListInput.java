@@ -1,23 +1,47 @@
 package com.github.fmjsjx.conveyor.core.input;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Objects;
-import java.util.stream.Collectors;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
 
 import com.github.fmjsjx.conveyor.config.InputRedisConfig;
-import com.github.fmjsjx.libcommon.json.JsoniterLibrary;
-import com.github.fmjsjx.libcommon.redis.LuaScript;
-import com.github.fmjsjx.libcommon.redis.RedisUtil;
-import com.jsoniter.spi.TypeLiteral;
+import com.github.fmjsjx.conveyor.core.input.BacklogMonitor.Sample;
+import com.github.fmjsjx.conveyor.util.ConfigUtil;
+import com.jsoniter.JsonIterator;
+import com.jsoniter.ValueType;
 
+import io.lettuce.core.LMoveArgs;
 import io.lettuce.core.RedisClient;
+import io.lettuce.core.RedisFuture;
+import io.lettuce.core.ScriptOutputType;
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.api.async.RedisAsyncCommands;
+import io.lettuce.core.codec.ByteArrayCodec;
+import io.lettuce.core.codec.RedisCodec;
+import io.lettuce.core.codec.StringCodec;
+import io.lettuce.core.output.NestedMultiOutput;
+import io.lettuce.core.protocol.CommandArgs;
+import io.lettuce.core.protocol.ProtocolKeyword;
 import lombok.extern.slf4j.Slf4j;
 
 @Slf4j
-public class RedisListInput extends AbstractRedisInput {
+public class RedisListInput extends AbstractRedisInput<byte[]> {
 
-    private static final LuaScript<List<String>> RPOP_N = LuaScript.forList("""
+    // values are kept as raw bytes and parsed as JSON directly, no need to decode them into strings first
+    static final RedisCodec<String, byte[]> CODEC = RedisCodec.of(StringCodec.UTF8, ByteArrayCodec.INSTANCE);
+
+    private static final String RPOP_N = """
             local key = KEYS[1]
             local limit = tonumber(ARGV[1])
             local arr = {}
@@ -29,71 +53,520 @@ public class RedisListInput extends AbstractRedisInput {
               table.insert(arr, v)
             end
             return arr
-            """);
+            """;
+
+    private static final String RPOP_N_DIGEST = scriptDigest(RPOP_N);
 
-    private static final TypeLiteral<Map<String, String>> MAP_TYPE_LITERAL = new TypeLiteral<>() {};
+    private static final LMoveArgs RIGHT_LEFT = LMoveArgs.Builder.rightLeft();
 
-    private static final Map<String, String> toData(String value) {
+    private static final Map<String, String> toData(JsonIterator iter, byte[] value) {
         try {
-            return JsoniterLibrary.getInstance().loads(value, MAP_TYPE_LITERAL);
+            iter.reset(value);
+            if (iter.whatIsNext() != ValueType.OBJECT) {
+                throw new IOException("JSON object expected");
+            }
+            var data = new HashMap<String, String>();
+            for (var field = iter.readObject(); field != null; field = iter.readObject()) {
+                data.put(field, RecordSchema.readValue(iter));
+            }
+            return data;
         } catch (Exception e) {
-            log.warn("[input:redis] parse data failed: {}", value, e);
+            log.warn("[input:redis] parse data failed: {}", new String(value, StandardCharsets.UTF_8), e);
             return null;
         }
     }
 
-    private final int batch;
-    private final String[] keys;
-    private final String batchArg;
+    private static final List<Map<String, String>> toDataList(List<byte[]> values) {
+        if (values.isEmpty()) {
+            return List.of();
+        }
+        // reuse one iterator for the whole batch
+        var iter = new JsonIterator();
+        var dataList = new ArrayList<Map<String, String>>(values.size());
+        for (var value : values) {
+            var data = toData(iter, value);
+            if (data != null) {
+                dataList.add(data);
+            }
+        }
+        return dataList;
+    }
+
+    private record Moved(List<byte[]> values, long sequence) {
+    }
+
+    private enum PopMode {
+        // EVAL RPOP_N and BRPOP
+        LUA,
+        // RPOP key count and BRPOP + RPOP key count
+        RPOP_COUNT,
+        // RPOP key count and BLMPOP
+        LMPOP
+    }
+
+    private enum LmpopCommand implements ProtocolKeyword {
+        BLMPOP;
+
+        private final byte[] bytes = name().getBytes(StandardCharsets.US_ASCII);
+
+        @Override
+        public byte[] getBytes() {
+            return bytes;
+        }
+
+    }
+
+    // KEYS for RPOP_N of each key
+    private final String[][] scriptKeys;
+    // fan-in: keys are popped in turn, blocks on all keys only after every key is drained
+    private int cursor;
+    private int misses;
+    private int batch;
+    private byte[] batchArg;
+    private volatile PopMode popMode = PopMode.LUA;
+
+    private volatile boolean blocking;
 
-    private boolean blocking;
+    // reliable mode: records are moved into the processing list, the oldest one is at the right end
+    private final String processingKey;
+    // total number of records moved into the processing list and returned, updated on the I/O thread
+    private final AtomicLong moved = new AtomicLong();
+    // total number of records trimmed from the processing list
+    private volatile long trimmed;
+    private long replayed;
+    private long replayEnd;
+    private volatile boolean resync;
+    // nothing is moved or trimmed until it is done
+    private CompletableFuture<Void> resyncing;
+    private volatile CompletionStage<String> lastTrim;
+    // rows of the failed trims, trimmed again on resync
+    private final AtomicLong failedTrims = new AtomicLong();
+    // only accessed on the I/O thread, where the moves complete in the order of the commands
+    private boolean moveFailed;
+    private boolean movedAfterFailure;
+
+    // only fields in schema will be parsed, or null to parse all fields
+    private final RecordSchema schema;
+    private final String uri;
+    private final RedisListWaiter waiter;
+    private boolean waiterReleased;
+    private final LongAdder fetchedBytes = new LongAdder();
 
     public RedisListInput(String name, RedisClient client, String productId, InputRedisConfig config) {
-        super(name, client, productId, config);
-        this.batch = config.batch();
-        this.keys = new String[] { key };
-        this.batchArg = String.valueOf(batch);
+        this(name, client, productId, config, null);
+    }
+
+    public RedisListInput(String name, RedisClient client, String productId, InputRedisConfig config,
+            RecordSchema schema) {
+        this(name, client, null, productId, config, schema);
+    }
+
+    public RedisListInput(String name, RedisClient client, SharedRedisConnections sharedConnections,
+            String productId, InputRedisConfig config, RecordSchema schema) {
+        this(name, client, sharedConnections, List.of(productId), config, schema);
+    }
+
+    public RedisListInput(String name, RedisClient client, SharedRedisConnections sharedConnections,
+            List<String> productIds, InputRedisConfig config, RecordSchema schema) {
+        super(name, client, sharedConnections, productIds, config, CODEC);
+        this.schema = schema;
+        // blocking commands would monopolize the shared connection
+        this.uri = config.uri();
+        this.waiter = sharedConnections == null ? null : sharedConnections.listWaiter(uri);
+        this.scriptKeys = new String[keys.length][];
+        for (var i = 0; i < keys.length; i++) {
+            scriptKeys[i] = new String[] { keys[i] };
+        }
+        this.batch = batchSizeController.current();
+        this.batchArg = toArg(batch);
+        // fan-in is not supported in reliable mode, so there is only one product
+        this.processingKey = config.processingKey().map(k -> ConfigUtil.fixValue(k, productIds.get(0)))
+                .orElse(null);
+    }
+
+    // one key on its own connection, for testing
+    RedisListInput(String name, Supplier<StatefulRedisConnection<String, byte[]>> connectionFactory, String key,
+            String processingKey, Executor decodeExecutor, BatchSizeController batchSizeController) {
+        super(name, connectionFactory, key, decodeExecutor, batchSizeController);
+        this.schema = null;
+        this.uri = null;
+        this.waiter = null;
+        this.scriptKeys = new String[][] { keys };
+        this.batch = batchSizeController.current();
+        this.batchArg = toArg(batch);
+        this.processingKey = processingKey;
+    }
+
+    @Override
+    protected void connected(StatefulRedisConnection<String, byte[]> connection) {
+        var version = redisVersion(connection);
+        if (version >= 70000) {
+            popMode = PopMode.LMPOP;
+        } else if (version >= 60200) {
+            popMode = PopMode.RPOP_COUNT;
+        } else {
+            popMode = PopMode.LUA;
+        }
+        log.info("[input:redis] {} connected to REDIS server version {}, using pop mode {}", this, version, popMode);
+        if (processingKey != null) {
+            // records left in the processing list were not pushed yet, replay them first
+            var length = connection.sync().llen(processingKey);
+            replayed = trimmed;
+            replayEnd = trimmed + length;
+            moved.set(replayEnd);
+            if (length > 0) {
+                log.info("[input:redis] {} replay {} records left in {}", this, length, processingKey);
+            }
+        }
+    }
+
+    private List<Map<String, String>> decode(List<byte[]> values) {
+        var bytes = 0L;
+        for (var value : values) {
+            bytes += value.length;
+        }
+        fetchedBytes.add(bytes);
+        return schema == null ? toDataList(values) : FieldBatch.parse(schema, values);
+    }
+
+    private List<Map<String, String>> toBatch(Moved moved) {
+        return new FetchedBatch(decode(moved.values), moved.sequence);
+    }
+
+    @Override
+    public long fetchedBytes() {
+        return fetchedBytes.sum();
     }
 
     @Override
     public List<Map<String, String>> fetch() {
-        if (blocking) {
-            var kv = redisSync().brpop(5, key);
-            if (kv == null) {
-                return List.of();
+        if (processingKey != null) {
+            return toBatch(await(moveValues(true)));
+        }
+        return decode(await(fetchValues(true)));
+    }
+
+    @Override
+    public CompletionStage<List<Map<String, String>>> fetchAsync() {
+        // parse JSON out of the I/O threads
+        if (processingKey != null) {
+            return moveValues(true).thenApplyAsync(this::toBatch, decodeExecutor);
+        }
+        return fetchValues(true).thenApplyAsync(this::decode, decodeExecutor);
+    }
+
+    @Override
+    public List<Map<String, String>> poll() {
+        if (processingKey != null) {
+            return toBatch(await(moveValues(false)));
+        }
+        return decode(await(fetchValues(false)));
+    }
+
+    @Override
+    public CompletionStage<List<Map<String, String>>> pollAsync() {
+        if (processingKey != null) {
+            return moveValues(false).thenApplyAsync(this::toBatch, decodeExecutor);
+        }
+        return fetchValues(false).thenApplyAsync(this::decode, decodeExecutor);
+    }
+
+    @Override
+    public void ack(List<Map<String, String>> batch) {
+        if (processingKey != null && batch instanceof FetchedBatch fetched) {
+            var resyncing = this.resyncing;
+            if (resyncing != null && !resyncing.isDone()) {
+                // trimmed by the next acknowledgement
+                return;
+            }
+            var sequence = fetched.sequence();
+            var count = sequence - trimmed;
+            if (count > 0) {
+                trimmed = sequence;
+                // remove the oldest records from the right end
+                var trim = redisAsync().ltrim(processingKey, 0, -(count + 1));
+                trim.whenComplete((r, e) -> {
+                    if (e != null) {
+                        log.error("[input:redis] Trim processing list {} failed on {}", processingKey, this, e);
+                        failedTrims.addAndGet(count);
+                        resync = true;
+                    }
+                });
+                lastTrim = trim;
             }
-            blocking = false;
-            var data = toData(kv.getValue());
-            return data == null ? List.of() : List.of(data);
         }
-        var values = RedisUtil.eval(redisSync(), RPOP_N, keys, batchArg);
-        if (values.size() < batch) {
-            blocking = true;
+    }
+
+    private int currentBatch() {
+        var current = batchSizeController.current();
+        if (current != batch) {
+            batch = current;
+            batchArg = toArg(current);
         }
-        switch (values.size()) {
-        case 0:
-            return List.of();
-        case 1: {
-            var data = toData(values.get(0));
-            return data == null ? List.of() : List.of(data);
-        }
-        case 2: {
-            var data0 = toData(values.get(0));
-            var data1 = toData(values.get(1));
-            if (data0 != null) {
-                if (data1 != null) {
-                    return List.of(data0, data1);
+        return current;
+    }
+
+    private static final byte[] toArg(int value) {
+        return String.valueOf(value).getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private void onFetched(int fetched, int requested, String sampleKey) {
+        var controller = batchSizeController;
+        controller.onFetched(fetched, requested);
+        if (controller.shouldSampleBacklog()) {
+            redisAsync().llen(sampleKey).thenAccept(controller::onBacklog);
+        }
+    }
+
+    @Override
+    protected CompletionStage<Sample> sampleBacklog() {
+        var async = redisAsync();
+        @SuppressWarnings("unchecked")
+        var lengths = (CompletableFuture<Long>[]) new CompletableFuture<?>[keys.length];
+        for (var i = 0; i < keys.length; i++) {
+            lengths[i] = async.llen(keys[i]).toCompletableFuture();
+        }
+        // records in the processing list are fetched but not pushed yet
+        var pending = processingKey == null ? CompletableFuture.completedFuture(-1L)
+                : async.llen(processingKey).toCompletableFuture();
+        return CompletableFuture.allOf(lengths).thenCombine(pending, (v, pendingLength) -> {
+            var backlog = 0L;
+            for (var length : lengths) {
+                backlog += length.join();
+            }
+            // values carry no timestamp, so the lag is unknown
+            return new Sample(backlog, pendingLength, -1);
+        });
+    }
+
+    private CompletionStage<List<byte[]>> fetchValues(boolean wait) {
+        var async = redisAsync();
+        var batch = currentBatch();
+        var popMode = this.popMode;
+        if (wait && blocking) {
+            var blocked = waiter != null ? awaitValues(async, popMode, batch)
+                    : popMode == PopMode.LMPOP ? blmpop(async, batch) : brpop(async, popMode, batch);
+            return blocked.thenApply(values -> {
+                if (!values.isEmpty()) {
+                    blocking = false;
+                    misses = 0;
+                    onFetched(values.size(), batch, key);
                 }
-                return List.of(data0);
+                return values;
+            });
+        }
+        var index = cursor;
+        // next key in turn, so that each product gets the same chance
+        cursor = index + 1 == keys.length ? 0 : index + 1;
+        var popKey = keys[index];
+        var popped = popMode == PopMode.LUA
+                ? this.<List<byte[]>>evalAsync(RPOP_N, RPOP_N_DIGEST, ScriptOutputType.MULTI, scriptKeys[index],
+                        batchArg)
+                : async.rpop(popKey, batch).thenApply(values -> values == null ? List.<byte[]>of() : values);
+        return popped.thenApply(values -> {
+            if (values.size() < batch) {
+                if (++misses >= keys.length) {
+                    blocking = true;
+                }
+            } else {
+                misses = 0;
             }
-            if (data1 != null) {
-                return List.of(data1);
+            onFetched(values.size(), batch, popKey);
+            return values;
+        });
+    }
+
+    private CompletionStage<Moved> moveValues(boolean wait) {
+        // connect before anything else, records left in the processing list are counted when connected
+        var async = redisAsync();
+        var resyncing = this.resyncing;
+        if (resyncing == null && resync) {
+            resync = false;
+            resyncing = this.resyncing = resync();
+        }
+        if (resyncing != null) {
+            if (!resyncing.isDone()) {
+                // nothing is moved until the processing list is resynchronized
+                return resyncing.thenApply(v -> new Moved(List.of(), 0));
+            }
+            this.resyncing = null;
+        }
+        var batch = currentBatch();
+        if (replayed < replayEnd) {
+            return replayValues(batch);
+        }
+        var legacy = popMode == PopMode.LUA;
+        if (wait && blocking) {
+            // only one record each blocking move, so that records are always moved in the order of the commands
+            var blocked = legacy ? async.brpoplpush(5, key, processingKey)
+                    : async.blmove(key, processingKey, RIGHT_LEFT, 5);
+            return watchMove(blocked).thenApply(value -> {
+                if (value == null) {
+                    return new Moved(List.of(), 0);
+                }
+                blocking = false;
+                onFetched(1, batch, key);
+                return new Moved(List.of(value), moved.incrementAndGet());
+            });
+        }
+        // pipelined moves, one record each, an empty list is probed with only one move
+        var count = blocking ? 1 : batch;
+        @SuppressWarnings("unchecked")
+        var moves = (CompletableFuture<byte[]>[]) new CompletableFuture<?>[count];
+        for (var i = 0; i < count; i++) {
+            moves[i] = watchMove(legacy ? async.rpoplpush(key, processingKey)
+                    : async.lmove(key, processingKey, RIGHT_LEFT));
+        }
+        return CompletableFuture.allOf(moves).thenApply(v -> {
+            var values = new ArrayList<byte[]>(count);
+            for (var move : moves) {
+                var value = move.join();
+                if (value != null) {
+                    values.add(value);
+                }
+            }
+            blocking = values.size() < count;
+            onFetched(values.size(), batch, key);
+            return new Moved(values, moved.addAndGet(values.size()));
+        });
+    }
+
+    private CompletableFuture<byte[]> watchMove(RedisFuture<byte[]> move) {
+        return move.toCompletableFuture().whenComplete((value, e) -> {
+            if (e != null) {
+                // the record may be moved even if the command failed
+                moveFailed = true;
+                resync = true;
+            } else if (value != null && moveFailed) {
+                movedAfterFailure = true;
+            }
+        });
+    }
+
+    private CompletionStage<Moved> replayValues(int batch) {
+        var offset = replayed - trimmed;
+        var count = (int) Math.min(batch, replayEnd - replayed);
+        var sequence = replayed += count;
+        return redisAsync().lrange(processingKey, -(offset + count), -(offset + 1)).thenApply(values -> {
+            var list = new ArrayList<>(values);
+            // the oldest record is at the right end
+            Collections.reverse(list);
+            return new Moved(list, sequence);
+        });
+    }
+
+    private CompletableFuture<Void> resync() {
+        // commands on the connection are executed and completed in order, so the length is taken after all moves
+        // and trims issued before, and their callbacks are done when it completes
+        return redisAsync().llen(processingKey).toCompletableFuture().<Void>handle((length, e) -> {
+            if (e != null) {
+                log.error("[input:redis] Resync processing list {} failed on {}", processingKey, this, e);
+                resync = true;
+            } else {
+                resynced(length);
+            }
+            return null;
+        });
+    }
+
+    // runs on the I/O thread, moves and trims are paused
+    private void resynced(long length) {
+        var failedTrims = this.failedTrims.getAndSet(0);
+        var moved = this.moved.get();
+        // records moved by failed commands and never returned, or trims failed but may be applied
+        var extra = length - (moved - trimmed);
+        if (extra == 0) {
+            log.info("[input:redis] {} resync processing list {}, nothing lost", this, processingKey);
+        } else if (!moveFailed && extra > 0 && extra <= failedTrims) {
+            // trims remove the oldest records by count, so trimming the rest later is still right
+            lastTrim = redisAsync().ltrim(processingKey, 0, -(extra + 1));
+            log.warn("[input:redis] {} resync processing list {}, trim {} records again", this, processingKey,
+                    extra);
+        } else if (failedTrims == 0 && extra > 0 && !movedAfterFailure) {
+            // they are the newest records at the left end, replay only them
+            replayed = moved;
+            replayEnd = moved + extra;
+            this.moved.set(replayEnd);
+            log.warn("[input:redis] {} resync processing list {}, replay {} records", this, processingKey, extra);
+        } else {
+            // positions of the records are unknown, replay the whole list, duplicates are better than losses
+            // records returned before are never trimmed by their sequences any more
+            trimmed = moved;
+            replayed = moved;
+            replayEnd = moved + length;
+            this.moved.set(replayEnd);
+            log.warn("[input:redis] {} resync processing list {}, replay all {} records", this, processingKey,
+                    length);
+        }
+        moveFailed = false;
+        movedAfterFailure = false;
+    }
+
+    private CompletionStage<List<byte[]>> brpop(RedisAsyncCommands<String, byte[]> async, PopMode popMode,
+            int batch) {
+        return async.brpop(5, keys).thenCompose(
+                kv -> kv == null ? fillUp(async, popMode, batch, key, null)
+                        : fillUp(async, popMode, batch, kv.getKey(), kv.getValue()));
+    }
+
+    private CompletionStage<List<byte[]>> awaitValues(RedisAsyncCommands<String, byte[]> async, PopMode popMode,
+            int batch) {
+        // LMPOP is not used here, the waiter BRPOPs on all waiting keys together
+        var rpopMode = popMode == PopMode.LMPOP ? PopMode.RPOP_COUNT : popMode;
+        return waiter.await(key, batch).thenCompose(value -> fillUp(async, rpopMode, batch, key, value));
+    }
+
+    private CompletionStage<List<byte[]>> fillUp(RedisAsyncCommands<String, byte[]> async, PopMode popMode,
+            int batch, String key, byte[] first) {
+        if (first == null) {
+            return CompletableFuture.completedFuture(List.of());
+        }
+        if (popMode == PopMode.LUA || batch == 1) {
+            return CompletableFuture.completedFuture(List.of(first));
+        }
+        // fill up the batch with the rest records
+        return async.rpop(key, batch - 1).<List<byte[]>>thenApply(rest -> {
+            if (rest == null || rest.isEmpty()) {
+                return List.of(first);
+            }
+            var values = new ArrayList<byte[]>(rest.size() + 1);
+            values.add(first);
+            values.addAll(rest);
+            return values;
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private CompletionStage<List<byte[]>> blmpop(RedisAsyncCommands<String, byte[]> async, int batch) {
+        var args = new CommandArgs<>(CODEC).add(5).add(keys.length).addKeys(keys).add("RIGHT").add("COUNT")
+                .add(batch);
+        return async.dispatch(LmpopCommand.BLMPOP, new NestedMultiOutput<>(CODEC), args)
+                .<List<byte[]>>thenApply(result -> {
+                    // nil or [key, [element, ...]]
+                    if (result == null || result.size() < 2 || result.get(1) == null) {
+                        return List.of();
+                    }
+                    return (List<byte[]>) result.get(1);
+                });
+    }
+
+    @Override
+    public synchronized void close() {
+        var lastTrim = this.lastTrim;
+        if (lastTrim != null) {
+            // wait for the last trim, or the pushed records would be replayed on next startup
+            try {
+                lastTrim.toCompletableFuture().get(5, TimeUnit.SECONDS);
+            } catch (Exception e) {
+                log.warn("[input:redis] Wait for trimming processing list {} failed on {}", processingKey, this, e);
             }
-            return List.of();
         }
-        default:
-            return values.stream().map(RedisListInput::toData).filter(Objects::nonNull).collect(Collectors.toList());
+        if (waiter != null && !waiterReleased) {
+            // release only once, the waiter may be still used by other inputs
+            waiterReleased = true;
+            sharedConnections.releaseListWaiter(uri, waiter);
         }
+        super.close();
     }
 
 }
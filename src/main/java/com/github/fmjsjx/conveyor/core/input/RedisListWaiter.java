@@ -0,0 +1,34 @@
+package com.github.fmjsjx.conveyor.core.input;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.function.Supplier;
+
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.api.async.RedisAsyncCommands;
+
+// one BRPOP on all waiting list keys, wakes up the input which key has data
+final class RedisListWaiter extends AbstractRedisWaiter<byte[], byte[]> {
+
+    RedisListWaiter(String name, Supplier<StatefulRedisConnection<String, byte[]>> connectionFactory,
+            Supplier<StatefulRedisConnection<String, String>> controlConnectionFactory) {
+        super(name, connectionFactory, controlConnectionFactory);
+    }
+
+    @Override
+    protected CompletionStage<Map<String, byte[]>> block(RedisAsyncCommands<String, byte[]> async, String[] keys,
+            int count) {
+        return async.brpop(TIMEOUT_SECONDS, keys)
+                .<Map<String, byte[]>>thenApply(kv -> kv == null ? Map.of() : Map.of(kv.getKey(), kv.getValue()));
+    }
+
+    @Override
+    protected CompletionStage<?> giveBack(RedisAsyncCommands<String, byte[]> async, Map<String, byte[]> results) {
+        // BRPOP pops from the right end, so the values are pushed back to where they were
+        var pushes = results.entrySet().stream().map(e -> async.rpush(e.getKey(), e.getValue()).toCompletableFuture())
+                .toArray(CompletableFuture<?>[]::new);
+        return CompletableFuture.allOf(pushes);
+    }
+
+}
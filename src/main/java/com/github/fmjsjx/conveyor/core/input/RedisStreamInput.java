@@ -1,25 +1,41 @@
 package com.github.fmjsjx.conveyor.core.input;
 
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
 
 import com.github.fmjsjx.conveyor.config.InputRedisConfig;
-import com.github.fmjsjx.libcommon.redis.LuaScript;
-import com.github.fmjsjx.libcommon.redis.RedisUtil;
+import com.github.fmjsjx.conveyor.core.input.BacklogMonitor.Sample;
 
 import io.lettuce.core.Consumer;
+import io.lettuce.core.Limit;
+import io.lettuce.core.Range;
+import io.lettuce.core.Range.Boundary;
 import io.lettuce.core.RedisClient;
 import io.lettuce.core.RedisCommandExecutionException;
+import io.lettuce.core.ScriptOutputType;
 import io.lettuce.core.StreamMessage;
+import io.lettuce.core.XAutoClaimArgs;
 import io.lettuce.core.XReadArgs;
 import io.lettuce.core.XReadArgs.StreamOffset;
+import io.lettuce.core.codec.StringCodec;
+import io.lettuce.core.models.stream.PendingMessage;
 import lombok.extern.slf4j.Slf4j;
 
 @Slf4j
-public class RedisStreamInput extends AbstractRedisInput {
+public class RedisStreamInput extends AbstractRedisInput<String> {
 
-    private static final LuaScript<Long> INIT_STREAM_GROUP = LuaScript.forNumber("""
+    private static final String INIT_STREAM_GROUP = """
             local key = KEYS[1]
             local stream_group = ARGV[1]
             local need_create = 1
@@ -45,85 +61,480 @@ public class RedisStreamInput extends AbstractRedisInput {
               redis.call('xgroup', 'create', key, stream_group, '0', 'mkstream')
             end
             return need_create
-            """);
+            """;
+
+    private static final String INIT_STREAM_GROUP_DIGEST = scriptDigest(INIT_STREAM_GROUP);
+
+    private static final List<Map<String, String>> toDataList(List<StreamMessage<String, String>> messages) {
+        switch (messages.size()) {
+        case 0:
+            return List.of();
+        case 1:
+            return List.of(messages.get(0).getBody());
+        case 2:
+            return List.of(messages.get(0).getBody(), messages.get(1).getBody());
+        default:
+            return messages.stream().map(StreamMessage::getBody).toList();
+        }
+    }
+
+    private static final List<StreamMessage<String, String>> filterDeleted(
+            List<StreamMessage<String, String>> messages) {
+        for (var message : messages) {
+            if (message.getBody() == null || message.getBody().isEmpty()) {
+                return messages.stream().filter(m -> m.getBody() != null && !m.getBody().isEmpty()).toList();
+            }
+        }
+        return messages;
+    }
+
+    // streams[i] is the stream of ids[i]
+    private record Pending(String[] streams, String[] ids) {
+    }
+
+    // lag is null if not reported by the server (before REDIS 7.0)
+    private record GroupInfo(String lastDeliveredId, Long lag) {
+
+        static final GroupInfo find(List<Object> groups, String group) {
+            for (var info : groups) {
+                if (info instanceof List<?> fields) {
+                    var matched = false;
+                    String lastDeliveredId = null;
+                    Long lag = null;
+                    for (var i = 0; i + 1 < fields.size(); i += 2) {
+                        var field = String.valueOf(fields.get(i));
+                        var value = fields.get(i + 1);
+                        if ("name".equals(field)) {
+                            matched = group.equals(String.valueOf(value));
+                        } else if ("last-delivered-id".equals(field)) {
+                            lastDeliveredId = String.valueOf(value);
+                        } else if ("lag".equals(field) && value instanceof Long l) {
+                            lag = l;
+                        }
+                    }
+                    if (matched) {
+                        return new GroupInfo(lastDeliveredId, lag);
+                    }
+                }
+            }
+            return null;
+        }
+
+    }
 
-    private final int batch;
     private final Consumer<String> consumer;
-    private final XReadArgs blockingArgs;
-    private final XReadArgs batchArgs;
     private final StreamOffset<String>[] streams;
+    private int batch;
+    private XReadArgs blockingArgs;
+    private XReadArgs batchArgs;
+    private final Duration claimIdle;
+    private final long claimIntervalNanos;
+    private final String uri;
+    private final RedisStreamWaiter waiter;
+    private boolean waiterReleased;
 
     private boolean initialized;
-    private boolean blocking;
+    private volatile boolean blocking;
+
+    // fetched but not acknowledged messages by sequence, reads on other connections may complete out of order
+    private final ConcurrentSkipListMap<Long, Pending> pendings = new ConcurrentSkipListMap<>();
+    // only assigned on the caller thread when a read is issued
+    private long sequence;
+    // offsets of each stream for reading own pending entries, null after all drained
+    private volatile String[] pendingOffsets;
+    // the last read of own pending entries, null after all drained, only used on the caller thread
+    private CompletionStage<?> pendingRead;
+    private volatile int claimIndex;
+    private volatile String claimCursor = "0-0";
+    private volatile long nextClaimTime;
+    private volatile CompletionStage<Long> lastAck;
+    // consumers whose pending entries are taken over by this one, e.g. removed on scaling down
+    private final ConcurrentLinkedQueue<String> adoptions = new ConcurrentLinkedQueue<>();
+    private volatile int adoptIndex;
+    private volatile boolean adopting;
 
-    @SuppressWarnings("unchecked")
     public RedisStreamInput(String name, RedisClient client, String productId, InputRedisConfig config) {
-        super(name, client, productId, config);
-        batch = config.batch();
-        consumer = Consumer.from(config.stream().group(), config.stream().consumer());
-        blockingArgs = new XReadArgs().count(batch).block(Duration.ofSeconds(5));
-        batchArgs = new XReadArgs().count(batch);
-        streams = new StreamOffset[] { StreamOffset.lastConsumed(key) };
+        this(name, client, productId, config, config.stream().consumer());
+    }
+
+    public RedisStreamInput(String name, RedisClient client, String productId, InputRedisConfig config,
+            String consumerName) {
+        this(name, client, null, productId, config, consumerName);
+    }
+
+    public RedisStreamInput(String name, RedisClient client, SharedRedisConnections sharedConnections,
+            String productId, InputRedisConfig config, String consumerName) {
+        this(name, client, sharedConnections, List.of(productId), config, consumerName);
+    }
+
+    @SuppressWarnings("unchecked")
+    public RedisStreamInput(String name, RedisClient client, SharedRedisConnections sharedConnections,
+            List<String> productIds, InputRedisConfig config, String consumerName) {
+        super(name, client, sharedConnections, productIds, config, StringCodec.UTF8);
+        consumer = Consumer.from(config.stream().group(), consumerName);
+        uri = config.uri();
+        // blocking commands would monopolize the shared connection
+        waiter = sharedConnections == null ? null : sharedConnections.streamWaiter(uri, consumer);
+        updateBatch(batchSizeController.current());
+        streams = new StreamOffset[keys.length];
+        pendingOffsets = new String[keys.length];
+        for (var i = 0; i < keys.length; i++) {
+            streams[i] = StreamOffset.lastConsumed(keys[i]);
+            pendingOffsets[i] = "0";
+        }
+        claimIdle = Duration.ofMillis(config.stream().claimIdle());
+        claimIntervalNanos = TimeUnit.MILLISECONDS.toNanos(config.stream().claimInterval());
+        nextClaimTime = System.nanoTime() + claimIntervalNanos;
     }
 
     @Override
     public List<Map<String, String>> fetch() {
+        return await(fetchAsync());
+    }
+
+    @Override
+    public CompletionStage<List<Map<String, String>>> fetchAsync() {
+        return read(true);
+    }
+
+    @Override
+    public List<Map<String, String>> poll() {
+        return await(pollAsync());
+    }
+
+    @Override
+    public CompletionStage<List<Map<String, String>>> pollAsync() {
+        return read(false);
+    }
+
+    @Override
+    public void ack(List<Map<String, String>> batch) {
+        if (batch instanceof FetchedBatch fetched) {
+            var ids = new LinkedHashMap<String, List<String>>();
+            for (var entry = pendings.firstEntry(); entry != null
+                    && entry.getKey() <= fetched.sequence(); entry = pendings.firstEntry()) {
+                pendings.remove(entry.getKey());
+                var pending = entry.getValue();
+                for (var i = 0; i < pending.ids.length; i++) {
+                    ids.computeIfAbsent(pending.streams[i], k -> new ArrayList<>()).add(pending.ids[i]);
+                }
+            }
+            ids.forEach((stream, streamIds) -> {
+                var acking = redisAsync().xack(stream, consumer.getGroup(), streamIds.toArray(String[]::new));
+                acking.whenComplete((r, e) -> {
+                    if (e != null) {
+                        // they will be read again from PEL on next startup
+                        log.error("[input:redis] XACK {} messages of {} failed on {}", streamIds.size(), stream, this,
+                                e);
+                    }
+                });
+                lastAck = acking;
+            });
+        }
+    }
+
+    private CompletionStage<List<Map<String, String>>> read(boolean wait) {
         if (!initialized) {
-            init();
+            // never wait here, the caller may be a scheduler thread in SHARED mode
             initialized = true;
+            pendingRead = init();
         }
-        if (blocking) {
-            var messages = xreadgroup(blockingArgs);
-            if (messages.isEmpty()) {
-                return List.of();
-            }
-            blocking = true;
-            switch (messages.size()) {
-            case 1:
-                return List.of(messages.get(0).getBody());
-            case 2:
-                return List.of(messages.get(0).getBody(), messages.get(1).getBody());
-            default:
-                return messages.stream().map(StreamMessage::getBody).toList();
+        var current = batchSizeController.current();
+        if (current != batch) {
+            updateBatch(current);
+        }
+        var sequence = ++this.sequence;
+        var pendingRead = this.pendingRead;
+        if (pendingRead != null) {
+            if (pendingOffsets != null || !pendingRead.toCompletableFuture().isDone()) {
+                // next offset depends on the last result, so reads on startup are chained one by one
+                var args = batchArgs;
+                var reading = pendingRead.thenCompose(v -> readPending(args, current, sequence));
+                this.pendingRead = reading.handle((r, e) -> null);
+                return reading;
             }
+            this.pendingRead = null;
         }
-        var messages = xreadgroup(batchArgs);
-        if (messages.size() < batch) {
-            blocking = true;
+        if (!adopting && !adoptions.isEmpty()) {
+            return adopt(adoptions.peek(), current, sequence);
         }
-        switch (messages.size()) {
-        case 0:
+        if (!claimIdle.isZero() && System.nanoTime() - nextClaimTime >= 0) {
+            return claim(current, sequence);
+        }
+        if (wait && blocking) {
+            var blocked = waiter == null ? xreadgroup(blockingArgs, streams) : awaitMessages(current);
+            return blocked.thenApply(messages -> {
+                if (messages.isEmpty()) {
+                    return List.of();
+                }
+                blocking = true;
+                batchSizeController.onFetched(messages.size(), current);
+                return toBatch(messages, false, sequence);
+            });
+        }
+        return readNew(batchArgs, current, sequence);
+    }
+
+    private CompletionStage<List<Map<String, String>>> readNew(XReadArgs args, int current, long sequence) {
+        return xreadgroup(args, streams).thenApply(messages -> {
+            if (messages.size() < current) {
+                blocking = true;
+            }
+            batchSizeController.onFetched(messages.size(), current);
+            return toBatch(messages, false, sequence);
+        });
+    }
+
+    private List<Map<String, String>> toBatch(List<StreamMessage<String, String>> messages, boolean pending,
+            long sequence) {
+        if (messages.isEmpty()) {
             return List.of();
-        case 1:
-            return List.of(messages.get(0).getBody());
-        case 2:
-            return List.of(messages.get(0).getBody(), messages.get(1).getBody());
-        default:
-            return messages.stream().map(StreamMessage::getBody).toList();
         }
+        var streams = new String[messages.size()];
+        var ids = new String[messages.size()];
+        for (var i = 0; i < ids.length; i++) {
+            var message = messages.get(i);
+            streams[i] = message.getStream();
+            ids[i] = message.getId();
+        }
+        pendings.put(sequence, new Pending(streams, ids));
+        // entries in PEL may be deleted already
+        return new FetchedBatch(toDataList(pending ? filterDeleted(messages) : messages), sequence);
+    }
 
+    @SuppressWarnings("unchecked")
+    private CompletionStage<List<Map<String, String>>> readPending(XReadArgs args, int current, long sequence) {
+        var pendingOffsets = this.pendingOffsets;
+        if (pendingOffsets == null) {
+            // drained by the previous read
+            return readNew(args, current, sequence);
+        }
+        var offsets = new ArrayList<StreamOffset<String>>(keys.length);
+        for (var i = 0; i < keys.length; i++) {
+            if (pendingOffsets[i] != null) {
+                offsets.add(StreamOffset.from(keys[i], pendingOffsets[i]));
+            }
+        }
+        if (offsets.size() == keys.length && "0".equals(pendingOffsets[0])) {
+            log.info("[input:redis] Drain pending entries of {} from 0", this);
+        }
+        // cast, or the call would be unchecked and its result type erased
+        var streams = (StreamOffset<String>[]) offsets.toArray(StreamOffset[]::new);
+        return xreadgroup(args, streams).thenApply(messages -> {
+            // streams without any message are drained
+            var lastIds = new HashMap<String, String>();
+            for (var message : messages) {
+                lastIds.put(message.getStream(), message.getId());
+            }
+            var drained = true;
+            for (var i = 0; i < keys.length; i++) {
+                pendingOffsets[i] = lastIds.get(keys[i]);
+                drained &= pendingOffsets[i] == null;
+            }
+            if (drained) {
+                log.info("[input:redis] All pending entries of {} drained", this);
+                this.pendingOffsets = null;
+            }
+            return toBatch(messages, true, sequence);
+        });
     }
 
-    private List<StreamMessage<String, String>> xreadgroup(XReadArgs xreadArgs) {
-        try {
-            return redisSync().xreadgroup(consumer, xreadArgs, streams);
-        } catch (RedisCommandExecutionException e) {
-            if (e.getMessage().startsWith("NOGROUP")) {
-                log.warn("[redis:input] {}", e.getMessage(), e);
-                init();
-                return xreadgroup(xreadArgs);
+    private CompletionStage<List<Map<String, String>>> claim(int batch, long sequence) {
+        nextClaimTime = System.nanoTime() + claimIntervalNanos;
+        var args = XAutoClaimArgs.Builder.xautoclaim(consumer, claimIdle, claimCursor).count(batch);
+        var index = claimIndex;
+        var key = keys[index];
+        // idle entries of this consumer are claimed too, skip those still held in a prefetch, linger or retry
+        // acknowledged ones are never returned, XACK is always sent before on the same connection
+        var held = heldIds(key);
+        return redisAsync().xautoclaim(key, args).thenApply(claimed -> {
+            var cursor = claimed.getId();
+            claimCursor = cursor;
+            if (!"0-0".equals(cursor)) {
+                // not finished yet, continue on next read
+                nextClaimTime = System.nanoTime();
+            } else if (index + 1 < keys.length) {
+                // continue with the next stream on next read
+                claimIndex = index + 1;
+                nextClaimTime = System.nanoTime();
             } else {
-                throw e;
+                claimIndex = 0;
+            }
+            var messages = claimed.getMessages();
+            if (!held.isEmpty()) {
+                messages = messages.stream().filter(m -> !held.contains(m.getId())).toList();
+            }
+            if (!messages.isEmpty()) {
+                log.info("[input:redis] Claimed {} idle messages on {}", messages.size(), this);
+            }
+            return toBatch(messages, true, sequence);
+        });
+    }
+
+    // ids of the stream fetched by this input but not acknowledged yet
+    private Set<String> heldIds(String stream) {
+        var ids = new HashSet<String>();
+        for (var pending : pendings.values()) {
+            for (var i = 0; i < pending.ids.length; i++) {
+                if (stream.equals(pending.streams[i])) {
+                    ids.add(pending.ids[i]);
+                }
             }
         }
+        return ids;
+    }
+
+    // takes over pending entries of the consumer, which must be stopped
+    public void adopt(String consumerName) {
+        log.info("[input:redis] {} takes over pending entries of consumer {}", this, consumerName);
+        adoptions.add(consumerName);
+    }
+
+    private CompletionStage<List<Map<String, String>>> adopt(String owner, int batch, long sequence) {
+        // only one at a time, or the same entries may be claimed twice
+        adopting = true;
+        var index = adoptIndex;
+        var key = keys[index];
+        var async = redisAsync();
+        return async.xpending(key, Consumer.from(consumer.getGroup(), owner), Range.unbounded(), Limit.from(batch))
+                .thenCompose(pendingMessages -> {
+                    if (pendingMessages.isEmpty()) {
+                        if (index + 1 < keys.length) {
+                            adoptIndex = index + 1;
+                        } else {
+                            adoptIndex = 0;
+                            adoptions.poll();
+                            log.info("[input:redis] {} took over all pending entries of consumer {}", this, owner);
+                        }
+                        return CompletableFuture.completedFuture(List.<StreamMessage<String, String>>of());
+                    }
+                    var ids = pendingMessages.stream().map(PendingMessage::getId).toArray(String[]::new);
+                    // claimed entries are owned by this consumer, so they are never listed again
+                    return async.xclaim(key, consumer, 0, ids);
+                }).thenApply(messages -> toBatch(messages, true, sequence)).whenComplete((r, e) -> adopting = false);
+    }
+
+    private CompletionStage<List<StreamMessage<String, String>>> awaitMessages(int batch) {
+        return waiter.await(key, batch)
+                .thenApply(messages -> messages == null ? List.<StreamMessage<String, String>>of() : messages)
+                .exceptionallyComposeAsync(e -> {
+                    var cause = unwrap(e);
+                    if (cause instanceof RedisCommandExecutionException && cause.getMessage().startsWith("NOGROUP")) {
+                        // all waiting streams are read together, one missing group fails all of them
+                        log.warn("[redis:input] {}", cause.getMessage(), cause);
+                        return init().thenApply(v -> List.of());
+                    }
+                    return CompletableFuture.failedFuture(cause);
+                }, decodeExecutor);
+    }
+
+    private void updateBatch(int batch) {
+        this.batch = batch;
+        // COUNT is for each stream
+        var count = (batch + keys.length - 1) / keys.length;
+        blockingArgs = new XReadArgs().count(count).block(Duration.ofSeconds(5));
+        batchArgs = new XReadArgs().count(count);
     }
 
-    private void init() {
-        var keys = new String[] { streams[0].getName() };
+    private CompletionStage<List<StreamMessage<String, String>>> xreadgroup(XReadArgs xreadArgs,
+            StreamOffset<String>[] offsets) {
+        return redisAsync().xreadgroup(consumer, xreadArgs, offsets).exceptionallyComposeAsync(e -> {
+            var cause = unwrap(e);
+            if (cause instanceof RedisCommandExecutionException && cause.getMessage().startsWith("NOGROUP")) {
+                log.warn("[redis:input] {}", cause.getMessage(), cause);
+                return init().thenCompose(v -> xreadgroup(xreadArgs, offsets));
+            }
+            return CompletableFuture.failedFuture(cause);
+        }, decodeExecutor);
+    }
+
+    // timestamp part of the stream entry ID
+    private static final long idTime(String id) {
+        var index = id.indexOf('-');
+        return Long.parseLong(index < 0 ? id : id.substring(0, index));
+    }
+
+    @Override
+    protected CompletionStage<Sample> sampleBacklog() {
+        var async = redisAsync();
+        var group = consumer.getGroup();
+        @SuppressWarnings("unchecked")
+        var samples = (CompletableFuture<Sample>[]) new CompletableFuture<?>[keys.length];
+        for (var i = 0; i < keys.length; i++) {
+            var key = keys[i];
+            var length = async.xlen(key).toCompletableFuture();
+            var pending = async.xpending(key, group).toCompletableFuture();
+            var groups = async.xinfoGroups(key).toCompletableFuture();
+            samples[i] = groups.thenCompose(infos -> {
+                var info = GroupInfo.find(infos, group);
+                if (info == null) {
+                    // group not created yet
+                    return length.thenApply(len -> new Sample(len, 0, -1));
+                }
+                var lastDeliveredId = info.lastDeliveredId();
+                // the first entry after the last delivered one is the oldest not consumed yet
+                var range = Range.from(Boundary.including(lastDeliveredId), Boundary.<String>unbounded());
+                var next = async.xrange(key, range, Limit.create(0, 2)).toCompletableFuture();
+                return length.thenCombine(pending, (len, pendingMessages) -> {
+                    var pendingCount = pendingMessages.getCount();
+                    var oldestTime = 0L;
+                    if (pendingCount > 0) {
+                        oldestTime = idTime(pendingMessages.getMessageIds().getLower().getValue());
+                    }
+                    // lag of the group is only reported since REDIS 7.0, falls back to the stream length
+                    var backlog = info.lag() != null ? info.lag().longValue() : len.longValue();
+                    return new Sample(backlog, pendingCount, oldestTime);
+                }).thenCombine(next, (sample, messages) -> {
+                    for (var message : messages) {
+                        if (!message.getId().equals(lastDeliveredId)) {
+                            var time = idTime(message.getId());
+                            var oldestTime = sample.oldestTime() == 0 ? time : Math.min(sample.oldestTime(), time);
+                            return new Sample(sample.backlog(), sample.pending(), oldestTime);
+                        }
+                    }
+                    return sample;
+                });
+            });
+        }
+        return CompletableFuture.allOf(samples).thenApply(v -> {
+            var sample = samples[0].join();
+            for (var i = 1; i < samples.length; i++) {
+                sample = Sample.merge(sample, samples[i].join());
+            }
+            return sample;
+        });
+    }
+
+    private CompletionStage<Void> init() {
         var value = consumer.getGroup();
-        log.info("[input:redis] Initialize XSTREAM group {} {}", keys[0], value);
-        log.debug("[input:redis] EVAL {} 1 {} {}", INIT_STREAM_GROUP, keys, value);
-        RedisUtil.eval(redisSync(), INIT_STREAM_GROUP, keys, value);
+        var inits = new CompletableFuture<?>[keys.length];
+        for (var i = 0; i < keys.length; i++) {
+            var scriptKeys = new String[] { keys[i] };
+            log.info("[input:redis] Initialize XSTREAM group {} {}", scriptKeys[0], value);
+            log.debug("[input:redis] EVAL {} 1 {} {}", INIT_STREAM_GROUP, scriptKeys, value);
+            inits[i] = this.<Long>evalAsync(INIT_STREAM_GROUP, INIT_STREAM_GROUP_DIGEST, ScriptOutputType.INTEGER,
+                    scriptKeys, value).toCompletableFuture();
+        }
+        return CompletableFuture.allOf(inits);
+    }
+
+    @Override
+    public synchronized void close() {
+        var lastAck = this.lastAck;
+        if (lastAck != null) {
+            // wait for the last XACK, or the pushed messages would be read again on next startup
+            try {
+                lastAck.toCompletableFuture().get(5, TimeUnit.SECONDS);
+            } catch (Exception e) {
+                log.warn("[input:redis] Wait for XACK failed on {}", this, e);
+            }
+        }
+        if (waiter != null && !waiterReleased) {
+            // release only once, the waiter may be still used by other inputs
+            waiterReleased = true;
+            sharedConnections.releaseStreamWaiter(uri, consumer, waiter);
+        }
+        super.close();
     }
 
 }
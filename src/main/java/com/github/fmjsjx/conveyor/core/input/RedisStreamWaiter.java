@@ -0,0 +1,59 @@
+package com.github.fmjsjx.conveyor.core.input;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.function.Supplier;
+
+import io.lettuce.core.Consumer;
+import io.lettuce.core.StreamMessage;
+import io.lettuce.core.XReadArgs;
+import io.lettuce.core.XReadArgs.StreamOffset;
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.api.async.RedisAsyncCommands;
+
+// one XREADGROUP BLOCK on all waiting streams of the same consumer
+final class RedisStreamWaiter extends AbstractRedisWaiter<String, List<StreamMessage<String, String>>> {
+
+    private final Consumer<String> consumer;
+
+    RedisStreamWaiter(String name, Supplier<StatefulRedisConnection<String, String>> connectionFactory,
+            Supplier<StatefulRedisConnection<String, String>> controlConnectionFactory, Consumer<String> consumer) {
+        super(name, connectionFactory, controlConnectionFactory);
+        this.consumer = consumer;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    protected CompletionStage<Map<String, List<StreamMessage<String, String>>>> block(
+            RedisAsyncCommands<String, String> async, String[] keys, int count) {
+        var offsets = new StreamOffset[keys.length];
+        for (var i = 0; i < keys.length; i++) {
+            offsets[i] = StreamOffset.lastConsumed(keys[i]);
+        }
+        var args = new XReadArgs().count(count).block(Duration.ofSeconds(TIMEOUT_SECONDS));
+        return async.xreadgroup(consumer, args, (StreamOffset<String>[]) offsets)
+                .thenApply(RedisStreamWaiter::groupByStream);
+    }
+
+    @Override
+    protected CompletionStage<?> giveBack(RedisAsyncCommands<String, String> async,
+            Map<String, List<StreamMessage<String, String>>> results) {
+        // not acknowledged, they stay pending and are read again on next startup, or claimed by other consumers
+        return CompletableFuture.completedFuture(null);
+    }
+
+    private static final Map<String, List<StreamMessage<String, String>>> groupByStream(
+            List<StreamMessage<String, String>> messages) {
+        var results = new HashMap<String, List<StreamMessage<String, String>>>();
+        for (var message : messages) {
+            results.computeIfAbsent(message.getStream(), k -> new ArrayList<>()).add(message);
+        }
+        return results;
+    }
+
+}
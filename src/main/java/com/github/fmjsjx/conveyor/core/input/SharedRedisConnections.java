@@ -0,0 +1,117 @@
+package com.github.fmjsjx.conveyor.core.input;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+
+import io.lettuce.core.Consumer;
+import io.lettuce.core.RedisClient;
+import io.lettuce.core.RedisURI;
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.codec.RedisCodec;
+import io.lettuce.core.codec.StringCodec;
+import lombok.extern.slf4j.Slf4j;
+
+// one pipelined connection per URI for non-blocking commands, and one waiter per URI for blocking waits,
+// waiters are reference counted and closed when the last input released them
+@Slf4j
+public class SharedRedisConnections implements AutoCloseable {
+
+    private record ConnectionKey(String uri, RedisCodec<?, ?> codec) {
+    }
+
+    private record StreamWaiterKey(String uri, String group, String consumer) {
+    }
+
+    private static final class SharedWaiter<W extends AbstractRedisWaiter<?, ?>> {
+
+        private final W waiter;
+        private int references;
+
+        private SharedWaiter(W waiter) {
+            this.waiter = waiter;
+        }
+
+    }
+
+    // never expose password in logs
+    private static final String toName(String uri) {
+        var redisUri = RedisURI.create(uri);
+        return redisUri.getHost() + ":" + redisUri.getPort() + "/" + redisUri.getDatabase();
+    }
+
+    private final RedisClient client;
+    private final ConcurrentMap<ConnectionKey, StatefulRedisConnection<String, ?>> connections =
+            new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, SharedWaiter<RedisListWaiter>> listWaiters = new ConcurrentHashMap<>();
+    private final ConcurrentMap<StreamWaiterKey, SharedWaiter<RedisStreamWaiter>> streamWaiters =
+            new ConcurrentHashMap<>();
+
+    public SharedRedisConnections(RedisClient client) {
+        this.client = client;
+    }
+
+    @SuppressWarnings("unchecked")
+    public <V> StatefulRedisConnection<String, V> connection(String uri, RedisCodec<String, V> codec) {
+        return (StatefulRedisConnection<String, V>) connections.computeIfAbsent(new ConnectionKey(uri, codec), k -> {
+            log.info("[input:redis] Create shared REDIS connection to {}", toName(uri));
+            return client.connect(codec, RedisURI.create(uri));
+        });
+    }
+
+    RedisListWaiter listWaiter(String uri) {
+        return acquire(listWaiters, uri, () -> new RedisListWaiter(toName(uri),
+                () -> client.connect(RedisListInput.CODEC, RedisURI.create(uri)),
+                () -> connection(uri, StringCodec.UTF8)));
+    }
+
+    void releaseListWaiter(String uri, RedisListWaiter waiter) {
+        release(listWaiters, uri, waiter);
+    }
+
+    RedisStreamWaiter streamWaiter(String uri, Consumer<String> consumer) {
+        var key = new StreamWaiterKey(uri, consumer.getGroup(), consumer.getName());
+        return acquire(streamWaiters, key, () -> new RedisStreamWaiter(toName(uri) + "#" + consumer.getName(),
+                () -> client.connect(RedisURI.create(uri)), () -> connection(uri, StringCodec.UTF8), consumer));
+    }
+
+    void releaseStreamWaiter(String uri, Consumer<String> consumer, RedisStreamWaiter waiter) {
+        release(streamWaiters, new StreamWaiterKey(uri, consumer.getGroup(), consumer.getName()), waiter);
+    }
+
+    private static final <K, W extends AbstractRedisWaiter<?, ?>> W acquire(ConcurrentMap<K, SharedWaiter<W>> waiters,
+            K key, Supplier<W> factory) {
+        return waiters.compute(key, (k, shared) -> {
+            if (shared == null) {
+                shared = new SharedWaiter<>(factory.get());
+            }
+            shared.references++;
+            return shared;
+        }).waiter;
+    }
+
+    private static final <K, W extends AbstractRedisWaiter<?, ?>> void release(
+            ConcurrentMap<K, SharedWaiter<W>> waiters, K key, W waiter) {
+        var removed = new boolean[1];
+        waiters.computeIfPresent(key, (k, shared) -> {
+            if (shared.waiter != waiter || --shared.references > 0) {
+                return shared;
+            }
+            removed[0] = true;
+            return null;
+        });
+        if (removed[0]) {
+            // closed out of the map lock, a new waiter is created if the key is used again
+            log.info("[input:redis] Close {}, no input uses it any more", waiter);
+            waiter.close();
+        }
+    }
+
+    @Override
+    public void close() {
+        listWaiters.values().forEach(shared -> shared.waiter.close());
+        streamWaiters.values().forEach(shared -> shared.waiter.close());
+        connections.values().forEach(StatefulRedisConnection::close);
+    }
+
+}
@@ -1,9 +1,13 @@
 package com.github.fmjsjx.conveyor.core.output;
 
-import java.util.Arrays;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLDataException;
+import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.time.DateTimeException;
 import java.util.List;
 import java.util.Map;
-import java.util.function.IntFunction;
 import java.util.stream.Collectors;
 
 import javax.sql.DataSource;
@@ -11,11 +15,14 @@ import javax.sql.DataSource;
 import com.github.fmjsjx.conveyor.config.OutputMysqlConfig.FieldConfig;
 import com.github.fmjsjx.conveyor.config.OutputMysqlConfig.FieldType;
 import com.github.fmjsjx.conveyor.config.OutputMysqlConfig.InsertMode;
+import com.github.fmjsjx.conveyor.config.OutputMysqlConfig.RowBinder;
+import com.github.fmjsjx.conveyor.config.OutputMysqlConfig.WriteMode;
 import com.github.fmjsjx.conveyor.util.LoggerUtil;
 import com.github.fmjsjx.libcommon.json.Jackson2Library;
 
-import io.netty.util.collection.IntObjectHashMap;
+import lombok.extern.slf4j.Slf4j;
 
+@Slf4j
 public abstract class AbstractMysqlOutput implements Output {
 
     protected static final String toSqlColumns(List<FieldConfig> fields) {
@@ -28,28 +35,162 @@ public abstract class AbstractMysqlOutput implements Output {
         return "(" + placeholders + ")";
     }
 
-    protected static final IntFunction<String> toBatchSqlFactory(InsertMode mode, String table, String columns,
-            String placeholders) {
-        var sqlPrefix = mode.toSql(table) + " (" + columns + ") VALUES ";
-        var batchSqlMap = new IntObjectHashMap<String>(16);
-        return batch -> {
-            var sql = batchSqlMap.get(batch);
-            if (sql == null) {
-                var values = new String[batch];
-                Arrays.fill(values, placeholders);
-                sql = sqlPrefix + String.join(",", values);
-                batchSqlMap.put(batch, sql);
-            }
-            return sql;
-        };
+    protected static final BatchSqlFactory toBatchSqlFactory(InsertMode mode, String table, List<FieldConfig> fields) {
+        var fieldNames = fields.stream().map(FieldConfig::name).toArray(String[]::new);
+        return new BatchSqlFactory(mode, table, toSqlColumns(fields), toSqlPlaceholders(fields), fieldNames);
+    }
+
+    // thrown if values of a row failed to be parsed when binding, such as bad numbers and DATE strings
+    static final class BadValueException extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        private BadValueException(RuntimeException cause) {
+            super(cause.toString(), cause);
+        }
+
     }
 
+    // ER_TRUNCATED_WRONG_VALUE_FOR_FIELD is reported with SQLSTATE HY000
+    private static final int ER_TRUNCATED_WRONG_VALUE_FOR_FIELD = 1366;
+
+    private static final long DEFAULT_MAX_ALLOWED_PACKET = 4 * 1024 * 1024;
+
     protected final String name;
     protected final DataSource dataSource;
+    protected final WriteMode writeMode;
+    private volatile long maxAllowedPacket;
 
-    protected AbstractMysqlOutput(String name, DataSource dataSource) {
+    protected AbstractMysqlOutput(String name, DataSource dataSource, WriteMode writeMode) {
         this.name = name;
         this.dataSource = dataSource;
+        this.writeMode = writeMode;
+    }
+
+    protected AbstractMysqlOutput(String name, DataSource dataSource) {
+        this(name, dataSource, WriteMode.VALUES);
+    }
+
+    private long maxChunkBytes(Connection conn) {
+        var maxAllowedPacket = this.maxAllowedPacket;
+        if (maxAllowedPacket == 0) {
+            try (var statement = conn.createStatement();
+                    var rs = statement.executeQuery("SELECT @@max_allowed_packet")) {
+                maxAllowedPacket = rs.next() ? rs.getLong(1) : DEFAULT_MAX_ALLOWED_PACKET;
+            } catch (SQLException e) {
+                log.warn("[output:mysql] Query max_allowed_packet failed on {}", this, e);
+                maxAllowedPacket = DEFAULT_MAX_ALLOWED_PACKET;
+            }
+            log.info("[output:mysql] max_allowed_packet of {} is {}", this, maxAllowedPacket);
+            this.maxAllowedPacket = maxAllowedPacket;
+        }
+        // keep some headroom for the protocol
+        return maxAllowedPacket - maxAllowedPacket / 4;
+    }
+
+    // inserts the batch in chunks, all chunks are committed in one transaction
+    protected void insertBatch(Connection conn, BatchSqlFactory batchSqlFactory, RowBinder rowBinder,
+            List<Map<String, String>> batch) throws SQLException {
+        if (writeMode == WriteMode.BATCH) {
+            if (batch.size() == 1) {
+                insertChunk(conn, batchSqlFactory.sql(1), rowBinder, batch);
+            } else {
+                // the driver may split the rewritten statement by max_allowed_packet
+                inTransaction(conn, () -> executeBatch(conn, batchSqlFactory.sql(1), rowBinder, batch));
+            }
+            return;
+        }
+        var maxBytes = maxChunkBytes(conn);
+        var size = batch.size();
+        var firstRows = batchSqlFactory.nextChunkSize(batch, 0, maxBytes);
+        if (firstRows >= size) {
+            insertChunk(conn, batchSqlFactory.sql(firstRows), rowBinder, batch);
+            return;
+        }
+        inTransaction(conn, () -> {
+            for (int from = 0, rows; from < size; from += rows) {
+                rows = batchSqlFactory.nextChunkSize(batch, from, maxBytes);
+                insertChunk(conn, batchSqlFactory.sql(rows), rowBinder, batch.subList(from, from + rows));
+            }
+        });
+    }
+
+    private interface SqlAction {
+
+        void execute() throws SQLException;
+
+    }
+
+    private static final void inTransaction(Connection conn, SqlAction action) throws SQLException {
+        var autoCommit = conn.getAutoCommit();
+        conn.setAutoCommit(false);
+        try {
+            action.execute();
+            conn.commit();
+        } catch (SQLException | RuntimeException e) {
+            conn.rollback();
+            throw e;
+        } finally {
+            conn.setAutoCommit(autoCommit);
+        }
+    }
+
+    private static final void executeBatch(Connection conn, String sql, RowBinder rowBinder,
+            List<Map<String, String>> batch) throws SQLException {
+        log.debug("[output:mysql] {} ==> {}", sql, batch);
+        try (var statement = conn.prepareStatement(sql)) {
+            for (var values : batch) {
+                bind(rowBinder, statement, 1, values);
+                statement.addBatch();
+            }
+            statement.executeBatch();
+        }
+    }
+
+    private static final void insertChunk(Connection conn, String sql, RowBinder rowBinder,
+            List<Map<String, String>> chunk) throws SQLException {
+        log.debug("[output:mysql] {} ==> {}", sql, chunk);
+        try (var statement = conn.prepareStatement(sql)) {
+            var index = 1;
+            for (var values : chunk) {
+                index = bind(rowBinder, statement, index, values);
+            }
+            statement.executeUpdate();
+        }
+    }
+
+    private static final int bind(RowBinder rowBinder, PreparedStatement statement, int index,
+            Map<String, String> values) throws SQLException {
+        try {
+            return rowBinder.bind(statement, index, values);
+        } catch (IllegalArgumentException | DateTimeException e) {
+            // nothing but values are parsed when binding, Date.valueOf throws IllegalArgumentException
+            throw new BadValueException(e);
+        }
+    }
+
+    @Override
+    public boolean isDataError(Throwable cause) {
+        for (var e = cause; e != null; e = e.getCause()) {
+            // other runtime errors, such as unsupported chunk sizes, are bugs or bad configurations
+            if (e instanceof BadValueException) {
+                return true;
+            }
+            if (e instanceof SQLDataException || e instanceof SQLIntegrityConstraintViolationException) {
+                return true;
+            }
+            if (e instanceof SQLException sqlException) {
+                var state = sqlException.getSQLState();
+                // class 22 is data exception and class 23 is integrity constraint violation
+                if (state != null && (state.startsWith("22") || state.startsWith("23"))) {
+                    return true;
+                }
+                if (sqlException.getErrorCode() == ER_TRUNCATED_WRONG_VALUE_FOR_FIELD) {
+                    return true;
+                }
+            }
+        }
+        return false;
     }
 
     @Override
@@ -0,0 +1,103 @@
+package com.github.fmjsjx.conveyor.core.output;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import com.github.fmjsjx.conveyor.config.OutputMysqlConfig.InsertMode;
+
+final class BatchSqlFactory {
+
+    // limit of placeholders for one prepared statement in MySQL
+    private static final int MAX_PLACEHOLDERS = 65535;
+    // for quotes, comma and escaping of each value
+    private static final int VALUE_OVERHEAD = 8;
+
+    // 1, 2, 3, 4, 6, 8, 12, 16, 24 ... up to maxRows
+    private static final int[] toChunkSizes(int maxRows) {
+        var sizes = new int[64];
+        var count = 0;
+        for (var size = 1L; size <= maxRows; size <<= 1) {
+            sizes[count++] = (int) size;
+            var middle = size + (size >> 1);
+            if (size > 1 && middle <= maxRows) {
+                sizes[count++] = (int) middle;
+            }
+        }
+        return Arrays.copyOf(sizes, count);
+    }
+
+    private final String sqlPrefix;
+    private final String placeholders;
+    private final String[] fieldNames;
+    private final int maxRows;
+    private final int[] chunkSizes;
+    private final String[] sqls;
+
+    BatchSqlFactory(InsertMode mode, String table, String columns, String placeholders, String[] fieldNames) {
+        this.sqlPrefix = mode.toSql(table) + " (" + columns + ") VALUES ";
+        this.placeholders = placeholders;
+        this.fieldNames = fieldNames;
+        var placeholderCount = (int) placeholders.chars().filter(c -> c == '?').count();
+        this.maxRows = MAX_PLACEHOLDERS / Math.max(1, placeholderCount);
+        this.chunkSizes = toChunkSizes(maxRows);
+        this.sqls = new String[chunkSizes.length];
+    }
+
+    int maxRows() {
+        return maxRows;
+    }
+
+    // returns the number of rows of the next chunk starting from the specified index
+    int nextChunkSize(List<Map<String, String>> batch, int from, long maxBytes) {
+        var remaining = batch.size() - from;
+        var limit = Math.min(remaining, maxRows);
+        var rows = 0;
+        var bytes = (long) sqlPrefix.length();
+        for (; rows < limit; rows++) {
+            bytes += estimateBytes(batch.get(from + rows));
+            if (bytes > maxBytes) {
+                break;
+            }
+        }
+        // all chunks, the last one included, are of the ladder sizes, so that their statements are reused
+        // always at least one row
+        return floorChunkSize(Math.max(1, rows));
+    }
+
+    // only configured fields are bound, other fields in the record are never sent
+    long estimateBytes(Map<String, String> values) {
+        var bytes = 2L;
+        for (var name : fieldNames) {
+            var value = values.get(name);
+            // 3 bytes at most for each char in BMP with UTF-8
+            bytes += (value == null ? 4 : value.length() * 3L) + VALUE_OVERHEAD;
+        }
+        return bytes;
+    }
+
+    private int floorChunkSize(int rows) {
+        var index = Arrays.binarySearch(chunkSizes, rows);
+        return chunkSizes[index >= 0 ? index : -index - 2];
+    }
+
+    String sql(int rows) {
+        var index = Arrays.binarySearch(chunkSizes, rows);
+        if (index < 0) {
+            throw new IllegalArgumentException("unsupported chunk size " + rows);
+        }
+        var sql = sqls[index];
+        if (sql == null) {
+            sql = toSql(rows);
+            sqls[index] = sql;
+        }
+        return sql;
+    }
+
+    private String toSql(int rows) {
+        var values = new String[rows];
+        Arrays.fill(values, placeholders);
+        return sqlPrefix + String.join(",", values);
+    }
+
+}
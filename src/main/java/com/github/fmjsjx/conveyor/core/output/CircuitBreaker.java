@@ -0,0 +1,100 @@
+package com.github.fmjsjx.conveyor.core.output;
+
+import java.util.concurrent.TimeUnit;
+
+import com.github.fmjsjx.conveyor.config.RetryConfig;
+
+import lombok.extern.slf4j.Slf4j;
+
+// shared by all outputs on the same data source, opened after continuous push failures
+// when the open time elapsed it becomes half-open, and only one probe is permitted until the probe finished
+@Slf4j
+public class CircuitBreaker {
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    public enum Permit {
+        DENIED, ALLOWED, PROBE
+    }
+
+    public static final CircuitBreaker fromConfig(String name, RetryConfig config) {
+        return new CircuitBreaker(name, config.breakerThreshold(), config.breakerOpenTime());
+    }
+
+    private final String name;
+    private final int failureThreshold;
+    private final long openNanos;
+
+    private State state = State.CLOSED;
+    private int failures;
+    private long openUntil;
+    private boolean probing;
+
+    public CircuitBreaker(String name, int failureThreshold, long openMillis) {
+        this.name = name;
+        this.failureThreshold = failureThreshold;
+        this.openNanos = TimeUnit.MILLISECONDS.toNanos(openMillis);
+    }
+
+    public synchronized State state() {
+        return state;
+    }
+
+    public synchronized Permit tryAcquire() {
+        switch (state) {
+        case OPEN:
+            if (System.nanoTime() - openUntil < 0) {
+                return Permit.DENIED;
+            }
+            state = State.HALF_OPEN;
+            log.info("[output:breaker] {} is half-open, probing", this);
+            // fall through
+        case HALF_OPEN:
+            if (probing) {
+                return Permit.DENIED;
+            }
+            probing = true;
+            return Permit.PROBE;
+        default:
+            return Permit.ALLOWED;
+        }
+    }
+
+    // gives the probe back without any push
+    public synchronized void release() {
+        probing = false;
+    }
+
+    public synchronized void onSuccess() {
+        failures = 0;
+        if (state != State.CLOSED) {
+            state = State.CLOSED;
+            probing = false;
+            log.info("[output:breaker] {} is closed", this);
+        }
+    }
+
+    public synchronized void onFailure() {
+        if (state == State.HALF_OPEN || (failureThreshold > 0 && ++failures >= failureThreshold)) {
+            if (state != State.OPEN) {
+                log.warn("[output:breaker] {} is open after {} failures", this, failures);
+            }
+            state = State.OPEN;
+            probing = false;
+            openUntil = System.nanoTime() + openNanos;
+        }
+    }
+
+    // returns the time in milliseconds before half-open, 0 if not open
+    public synchronized long remainingMillis() {
+        return state == State.OPEN ? Math.max(0, TimeUnit.NANOSECONDS.toMillis(openUntil - System.nanoTime())) : 0;
+    }
+
+    @Override
+    public String toString() {
+        return "CircuitBreaker(" + name + ")";
+    }
+
+}
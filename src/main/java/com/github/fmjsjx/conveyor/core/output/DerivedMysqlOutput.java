@@ -5,14 +5,15 @@ import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.function.IntFunction;
-import java.util.stream.Collectors;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.sql.DataSource;
 
 import com.github.fmjsjx.conveyor.config.OutputMysqlConfig;
-import com.github.fmjsjx.conveyor.config.OutputMysqlConfig.FieldConfig;
-import com.github.fmjsjx.conveyor.config.OutputMysqlConfig.ValueSetter;
+import com.github.fmjsjx.conveyor.config.OutputMysqlConfig.RowBinder;
 import com.github.fmjsjx.conveyor.util.LoggerUtil;
 import com.github.fmjsjx.libcommon.json.Jackson2Library;
 
@@ -22,72 +23,102 @@ import lombok.extern.slf4j.Slf4j;
 public class DerivedMysqlOutput extends AbstractMysqlOutput {
 
     final Map<String, String> derivedTables;
-    final IntFunction<String> batchSqlFactory;
-    final List<ValueSetter> valueSetters;
+    final BatchSqlFactory batchSqlFactory;
+    final RowBinder rowBinder;
     final String derivedField;
-    final Map<String, IntFunction<String>> derivedBatchSqlFactories = new HashMap<>();
+    final Map<String, BatchSqlFactory> derivedBatchSqlFactories = new HashMap<>();
+    final int derivedParallelism;
+    final Executor derivedExecutor;
 
     public DerivedMysqlOutput(String name, DataSource dataSource, OutputMysqlConfig config) {
-        super(name, dataSource);
-        var columns = toSqlColumns(config.fields());
-        var placeholders = toSqlPlaceholders(config.fields());
+        // derived tables are written on the caller thread
+        this(name, dataSource, config, Runnable::run);
+    }
+
+    public DerivedMysqlOutput(String name, DataSource dataSource, OutputMysqlConfig config, Executor derivedExecutor) {
+        super(name, dataSource, config.writeMode());
         var mode = config.mode();
-        batchSqlFactory = toBatchSqlFactory(mode, config.fixedTable(), columns, placeholders);
-        valueSetters = config.fields().stream().map(FieldConfig::valueSetter).collect(Collectors.toUnmodifiableList());
+        batchSqlFactory = toBatchSqlFactory(mode, config.fixedTable(), config.fields());
+        rowBinder = config.rowBinder();
         derivedField = config.derivedField();
         derivedTables = config.derivedTables();
         config.derivedTables().forEach((k, v) -> derivedBatchSqlFactories.put(k,
-                toBatchSqlFactory(mode, config.fixedTable(v), columns, placeholders)));
+                toBatchSqlFactory(mode, config.fixedTable(v), config.fields())));
+        derivedParallelism = config.derivedParallelism();
+        this.derivedExecutor = derivedExecutor;
     }
 
     @Override
     public void push(List<Map<String, String>> batch) throws Exception {
+        var derivedMap = new LinkedHashMap<String, List<Map<String, String>>>();
+        var derivedBatchSqlFactories = this.derivedBatchSqlFactories;
+        var derivedField = this.derivedField;
+        for (var values : batch) {
+            var df = values.get(derivedField);
+            if (df != null && derivedBatchSqlFactories.containsKey(df)) {
+                derivedMap.computeIfAbsent(df, k -> new ArrayList<>()).add(values);
+            }
+        }
         try (var conn = dataSource.getConnection()) {
-            var derivedMap = new LinkedHashMap<String, List<Map<String, String>>>();
-            var sql = batchSqlFactory.apply(batch.size());
-            var valueSetters = this.valueSetters;
-            var derivedBatchSqlFactories = this.derivedBatchSqlFactories;
-            try (var statement = conn.prepareStatement(sql)) {
-                var index = 1;
-                var derivedField = this.derivedField;
-                for (var values : batch) {
-                    var df = values.get(derivedField);
-                    if (df != null && derivedBatchSqlFactories.containsKey(df)) {
-                        derivedMap.computeIfAbsent(df, k -> new ArrayList<>()).add(values);
-                    }
-                    for (var setter : valueSetters) {
-                        setter.setValue(statement, index++, values);
-                    }
-                }
-                log.debug("[output:mysql] {} ==> {}", sql, batch);
-                statement.executeUpdate();
+            insertBatch(conn, batchSqlFactory, rowBinder, batch);
+        }
+        if (derivedMap.isEmpty()) {
+            return;
+        }
+        if (derivedParallelism == 1 || derivedMap.size() == 1) {
+            derivedMap.forEach(this::safePushDerived);
+            return;
+        }
+        // workers take derived tables in order, each one on its own pooled connection, the caller thread is one of
+        // them, so that no more than derived-parallelism connections are held by this output at the same time
+        // the primary connection is already released, and all of them are completed before returning, that keeps
+        // the order of batches on each table
+        var entries = List.copyOf(derivedMap.entrySet());
+        var next = new AtomicInteger();
+        Runnable worker = () -> {
+            for (int index; (index = next.getAndIncrement()) < entries.size();) {
+                var entry = entries.get(index);
+                safePushDerived(entry.getKey(), entry.getValue());
             }
-            if (derivedMap.size() > 0) {
-                for (var entry : derivedMap.entrySet()) {
-                    var key = entry.getKey();
-                    var derivedBatch = entry.getValue();
-                    var derivedSql = derivedBatchSqlFactories.get(key).apply(derivedBatch.size());
-                    try (var statement = conn.prepareStatement(derivedSql)) {
-                        var index = 1;
-                        for (var values : derivedBatch) {
-                            for (var setter : valueSetters) {
-                                setter.setValue(statement, index++, values);
-                            }
-                        }
-                        log.debug("[outout:mysql] {} ==> {}", derivedSql, derivedBatch);
-                        statement.executeUpdate();
-                    } catch (Exception e) {
-                        log.error("[outout:mysql] Push derived table failed: {} => {}", key, derivedSql, e);
-                        var failureLogger = LoggerUtil.failureLogger();
-                        var name = this.name;
-                        for (var values : derivedBatch) {
-                            var value = Jackson2Library.getInstance().dumpsToString(values);
-                            failureLogger.info("{} derived {} {}", name, key, value);
-                        }
-                    }
-                }
+        };
+        var workers = Math.min(derivedParallelism, entries.size()) - 1;
+        var futures = new ArrayList<CompletableFuture<Void>>(workers);
+        for (var i = 0; i < workers; i++) {
+            try {
+                futures.add(CompletableFuture.runAsync(worker, derivedExecutor));
+            } catch (RejectedExecutionException e) {
+                // the executor is busy, the rest are written by fewer workers
+                break;
             }
         }
+        worker.run();
+        futures.forEach(CompletableFuture::join);
+    }
+
+    // failures of derived tables never fail the push, rows are sent to the failure log instead
+    private void safePushDerived(String key, List<Map<String, String>> derivedBatch) {
+        try (var conn = dataSource.getConnection()) {
+            insertBatch(conn, derivedBatchSqlFactories.get(key), rowBinder, derivedBatch);
+        } catch (Exception e) {
+            log.error("[output:mysql] Push derived table failed: {} => {} rows", key, derivedBatch.size(), e);
+            var failureLogger = LoggerUtil.failureLogger();
+            var name = this.name;
+            for (var values : derivedBatch) {
+                var value = Jackson2Library.getInstance().dumpsToString(values);
+                failureLogger.info("{} derived {} {}", name, key, value);
+            }
+        }
+    }
+
+    // pushes rows to the derived table only, throws exception if failed
+    public void pushDerived(String key, List<Map<String, String>> batch) throws Exception {
+        var batchSqlFactory = derivedBatchSqlFactories.get(key);
+        if (batchSqlFactory == null) {
+            throw new IllegalArgumentException("no such derived table `" + key + "` on " + this);
+        }
+        try (var conn = dataSource.getConnection()) {
+            insertBatch(conn, batchSqlFactory, rowBinder, batch);
+        }
     }
 
     @Override
@@ -0,0 +1,228 @@
+package com.github.fmjsjx.conveyor.core.output;
+
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+import javax.sql.DataSource;
+
+import com.github.fmjsjx.conveyor.config.OutputMysqlConfig;
+import com.github.fmjsjx.conveyor.config.OutputMysqlConfig.FieldConfig;
+import com.github.fmjsjx.conveyor.config.OutputMysqlConfig.FieldType;
+import com.github.fmjsjx.libcommon.util.DateTimeUtil;
+import com.github.fmjsjx.libcommon.util.StringUtil;
+import com.mysql.cj.jdbc.JdbcStatement;
+
+import lombok.extern.slf4j.Slf4j;
+
+@Slf4j
+public class LoadDataMysqlOutput extends AbstractMysqlOutput {
+
+    private static final DateTimeFormatter DATETIME_FORMATTER = DateTimeFormatter
+            .ofPattern("yyyy-MM-dd HH:mm:ss.SSSSSS");
+
+    private static final Function<Map<String, String>, String> toFormatter(FieldConfig field) {
+        var name = field.name();
+        var def = field.defaultValue();
+        return switch (field.type()) {
+        case DATE -> {
+            if (def.isPresent() && "today".equalsIgnoreCase(def.content())) {
+                yield values -> {
+                    var value = values.get(name);
+                    return value == null ? LocalDate.now().toString() : LocalDate.parse(value).toString();
+                };
+            }
+            var defaultValue = def.isPresent() ? LocalDate.parse(def.content()).toString() : null;
+            yield values -> {
+                var value = values.get(name);
+                return value == null ? defaultValue : LocalDate.parse(value).toString();
+            };
+        }
+        case DATETIME -> {
+            if (def.isPresent() && "now".equalsIgnoreCase(def.content())) {
+                yield values -> {
+                    var value = values.get(name);
+                    return (value == null ? LocalDateTime.now() : LocalDateTime.parse(value))
+                            .format(DATETIME_FORMATTER);
+                };
+            }
+            var defaultValue = def.isPresent() ? LocalDateTime.parse(def.content()).format(DATETIME_FORMATTER)
+                    : null;
+            yield values -> {
+                var value = values.get(name);
+                return value == null ? defaultValue : LocalDateTime.parse(value).format(DATETIME_FORMATTER);
+            };
+        }
+        case INT -> {
+            var defaultValue = def.isPresent() ? String.valueOf(Integer.parseInt(def.content())) : null;
+            yield values -> {
+                var value = values.get(name);
+                return value == null ? defaultValue : String.valueOf(Integer.parseInt(value));
+            };
+        }
+        case LONG -> {
+            var defaultValue = def.isPresent() ? String.valueOf(Long.parseLong(def.content())) : null;
+            yield values -> {
+                var value = values.get(name);
+                return value == null ? defaultValue : String.valueOf(Long.parseLong(value));
+            };
+        }
+        case UNIX_TIME -> {
+            if (def.isPresent() && "now".equalsIgnoreCase(def.content())) {
+                yield values -> {
+                    var value = values.get(name);
+                    return value == null ? String.valueOf(DateTimeUtil.unixTimeWithMs())
+                            : String.valueOf(Double.parseDouble(value));
+                };
+            }
+            var defaultValue = def.isPresent() ? String.valueOf(
+                    LocalDateTime.parse(def.content()).atZone(ZoneId.systemDefault()).toEpochSecond()) : null;
+            yield values -> {
+                var value = values.get(name);
+                return value == null ? defaultValue : String.valueOf(Double.parseDouble(value));
+            };
+        }
+        case JSON_OBJECT -> {
+            var defaultValue = def.isPresent() ? (StringUtil.isBlank(def.content()) ? "{}" : def.content()) : null;
+            yield values -> {
+                var value = values.get(name);
+                return value == null ? defaultValue : value;
+            };
+        }
+        default -> {
+            var defaultValue = def.content();
+            yield values -> {
+                var value = values.get(name);
+                return value == null ? defaultValue : value;
+            };
+        }
+        };
+    }
+
+    // escapes for the default FIELDS ESCAPED BY '\\'
+    static final void appendEscaped(StringBuilder b, String value) {
+        if (value == null) {
+            b.append("\\N");
+            return;
+        }
+        for (var i = 0; i < value.length(); i++) {
+            var c = value.charAt(i);
+            switch (c) {
+            case '\\' -> b.append("\\\\");
+            case '\t' -> b.append("\\t");
+            case '\n' -> b.append("\\n");
+            case '\r' -> b.append("\\r");
+            case '\0' -> b.append("\\0");
+            default -> b.append(c);
+            }
+        }
+    }
+
+    private final String sql;
+    private final List<Function<Map<String, String>, String>> formatters;
+
+    public LoadDataMysqlOutput(String name, DataSource dataSource, OutputMysqlConfig config) {
+        super(name, dataSource, config.writeMode());
+        var columns = new ArrayList<String>();
+        var sets = new ArrayList<String>();
+        var fields = config.fields();
+        for (var i = 0; i < fields.size(); i++) {
+            var field = fields.get(i);
+            if (field.type() == FieldType.UNIX_TIME) {
+                // convert by user variable, same as the placeholder of INSERT
+                var variable = "@v" + i;
+                columns.add(variable);
+                sets.add(field.fixedColumn() + "=" + field.type().placeholder().replace("?", variable));
+            } else {
+                columns.add(field.fixedColumn());
+            }
+        }
+        var b = new StringBuilder("LOAD DATA LOCAL INFILE 'stream' ").append(config.mode().name())
+                .append(" INTO TABLE ").append(config.fixedTable())
+                .append(" CHARACTER SET utf8mb4 FIELDS TERMINATED BY '\\t' ESCAPED BY '\\\\'")
+                .append(" LINES TERMINATED BY '\\n' (").append(String.join(",", columns)).append(")");
+        if (!sets.isEmpty()) {
+            b.append(" SET ").append(String.join(",", sets));
+        }
+        sql = b.toString();
+        formatters = fields.stream().map(LoadDataMysqlOutput::toFormatter).toList();
+    }
+
+    @Override
+    public void push(List<Map<String, String>> batch) throws Exception {
+        try (var conn = dataSource.getConnection()) {
+            log.debug("[output:mysql] {} ==> {}", sql, batch);
+            try (var statement = conn.createStatement()) {
+                statement.unwrap(JdbcStatement.class).setLocalInfileInputStream(new TsvInputStream(batch, formatters));
+                statement.executeUpdate(sql);
+            }
+        }
+    }
+
+    // encodes rows lazily, so that no temporary file or whole copy of the batch is needed
+    static final class TsvInputStream extends InputStream {
+
+        private final Iterator<Map<String, String>> rows;
+        private final List<Function<Map<String, String>, String>> formatters;
+        private final StringBuilder line = new StringBuilder(256);
+        private byte[] buffer = new byte[0];
+        private int position;
+
+        TsvInputStream(List<Map<String, String>> batch, List<Function<Map<String, String>, String>> formatters) {
+            this.rows = batch.iterator();
+            this.formatters = formatters;
+        }
+
+        private boolean fill() {
+            while (position >= buffer.length) {
+                if (!rows.hasNext()) {
+                    return false;
+                }
+                var values = rows.next();
+                var line = this.line;
+                line.setLength(0);
+                var formatters = this.formatters;
+                for (var i = 0; i < formatters.size(); i++) {
+                    if (i > 0) {
+                        line.append('\t');
+                    }
+                    appendEscaped(line, formatters.get(i).apply(values));
+                }
+                line.append('\n');
+                buffer = line.toString().getBytes(StandardCharsets.UTF_8);
+                position = 0;
+            }
+            return true;
+        }
+
+        @Override
+        public int read() {
+            return fill() ? buffer[position++] & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            var read = 0;
+            while (read < len && fill()) {
+                var n = Math.min(len - read, buffer.length - position);
+                System.arraycopy(buffer, position, b, off + read, n);
+                position += n;
+                read += n;
+            }
+            return read == 0 ? -1 : read;
+        }
+
+    }
+
+}
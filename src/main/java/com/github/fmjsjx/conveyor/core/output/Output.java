@@ -9,6 +9,11 @@ public interface Output extends AutoCloseable {
     
     void failed(List<Map<String, String>> batch);
 
+    // data errors are caused by the rows themselves, so they never succeed on retry
+    default boolean isDataError(Throwable cause) {
+        return false;
+    }
+
     @Override
     void close();
 
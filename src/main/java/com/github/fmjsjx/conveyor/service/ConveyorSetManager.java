@@ -4,20 +4,28 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.nio.file.Path;
 import java.time.Duration;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
+import org.HdrHistogram.Histogram;
 import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -25,23 +33,33 @@ import org.springframework.stereotype.Service;
 
 import com.github.fmjsjx.conveyor.AppProperties;
 import com.github.fmjsjx.conveyor.admin.AdminServer;
+import com.github.fmjsjx.conveyor.admin.PrometheusServer;
 import com.github.fmjsjx.conveyor.admin.Resp3Server;
 import com.github.fmjsjx.conveyor.admin.UnixServer;
+import com.github.fmjsjx.conveyor.config.ConveyorConfig;
 import com.github.fmjsjx.conveyor.config.ConveyorSetConfig;
 import com.github.fmjsjx.conveyor.config.ConveyorSetsConfig;
+import com.github.fmjsjx.conveyor.config.ExecutorConfig;
+import com.github.fmjsjx.conveyor.config.ExecutorConfig.Mode;
 import com.github.fmjsjx.conveyor.config.InputRedisConfig;
 import com.github.fmjsjx.conveyor.config.InputRedisConfig.Type;
 import com.github.fmjsjx.conveyor.config.OutputMysqlConfig;
+import com.github.fmjsjx.conveyor.config.OutputMysqlConfig.WriteMode;
+import com.github.fmjsjx.conveyor.config.PrometheusServerConfig;
 import com.github.fmjsjx.conveyor.config.Resp3ServerConfig;
+import com.github.fmjsjx.conveyor.config.RetryConfig;
 import com.github.fmjsjx.conveyor.config.UnixServerConfig;
 import com.github.fmjsjx.conveyor.core.Conveyor;
 import com.github.fmjsjx.conveyor.core.ConveyorSet;
 import com.github.fmjsjx.conveyor.core.DefaultConveyor;
 import com.github.fmjsjx.conveyor.core.DefaultConveyorSet;
+import com.github.fmjsjx.conveyor.core.RetryPolicy;
 import com.github.fmjsjx.conveyor.core.input.Input;
+import com.github.fmjsjx.conveyor.core.input.RecordSchema;
 import com.github.fmjsjx.conveyor.core.input.RedisListInput;
 import com.github.fmjsjx.conveyor.core.input.RedisStreamInput;
 import com.github.fmjsjx.conveyor.core.output.DerivedMysqlOutput;
+import com.github.fmjsjx.conveyor.core.output.LoadDataMysqlOutput;
 import com.github.fmjsjx.conveyor.core.output.Output;
 import com.github.fmjsjx.conveyor.core.output.SimpleMysqlOutput;
 import com.github.fmjsjx.conveyor.util.ConfigUtil;
@@ -56,6 +74,8 @@ import lombok.extern.slf4j.Slf4j;
 @Service
 public class ConveyorSetManager implements InitializingBean, DisposableBean {
 
+    private static final int MAX_DERIVED_THREADS = Math.max(8, Runtime.getRuntime().availableProcessors() * 2);
+
     @Autowired
     private AppProperties appProperties;
     @Autowired
@@ -65,12 +85,21 @@ public class ConveyorSetManager implements InitializingBean, DisposableBean {
 
     private final ConcurrentMap<String, ConveyorSet> conveyorSetMap = new ConcurrentHashMap<>();
 
-    private final ExecutorService executor = Executors.newCachedThreadPool(new DefaultThreadFactory("conveyor"));
+    private ExecutorConfig executorConfig = ExecutorConfig.DEFAULT;
+    private RetryConfig retryConfig = RetryConfig.DEFAULT;
+
+    private ExecutorService executor;
 
     private final ExecutorService adminExecutor = Executors.newSingleThreadExecutor(new DefaultThreadFactory("admin"));
+    // writes derived tables concurrently, each output uses no more than its derived-parallelism threads
+    // rejected when all threads are busy, then the derived tables are written on the conveyor thread
+    private final ExecutorService derivedExecutor = new ThreadPoolExecutor(0, MAX_DERIVED_THREADS, 60,
+            TimeUnit.SECONDS, new SynchronousQueue<>(), new DefaultThreadFactory("derived-mysql", true));
 
     private final List<AdminServer> adminServers = new ArrayList<>();
 
+    private volatile FailureReplayer replayer;
+
     @Override
     public void afterPropertiesSet() throws Exception {
         var mainCfg = loadConfigurations();
@@ -80,6 +109,9 @@ public class ConveyorSetManager implements InitializingBean, DisposableBean {
 
     private ConveyorSetsConfig loadConfigurations() throws Exception {
         var mainCfg = loadMainCfg();
+        executorConfig = mainCfg.executor();
+        retryConfig = mainCfg.retry();
+        executor = createExecutor(executorConfig);
         var conveyorSetCfgs = loadIncludes(mainCfg);
         var conveyorSetMap = this.conveyorSetMap;
         for (var conveyorSetCfg : conveyorSetCfgs) {
@@ -91,6 +123,15 @@ public class ConveyorSetManager implements InitializingBean, DisposableBean {
         return mainCfg;
     }
 
+    private static final ExecutorService createExecutor(ExecutorConfig config) {
+        var threadFactory = new DefaultThreadFactory("conveyor");
+        if (config.mode() == Mode.SHARED) {
+            log.info("[app:init] Create shared conveyor scheduler with {} threads", config.threads());
+            return Executors.newScheduledThreadPool(config.threads(), threadFactory);
+        }
+        return Executors.newCachedThreadPool(threadFactory);
+    }
+
     private ConveyorSetsConfig loadMainCfg() throws FileNotFoundException, IOException {
         log.info("[app:init] Loading configuration conveyor-sets.yml");
         var mainCfg = ConfigUtil.loadConfiguration("conveyor-sets.yml", ConveyorSetsConfig::loadFromYaml);
@@ -123,13 +164,34 @@ public class ConveyorSetManager implements InitializingBean, DisposableBean {
         for (var conveyorCfg : conveyorSetCfg.conveyors()) {
             var inputRedis = conveyorCfg.inputRedis();
             if (inputRedis.type() == Type.STREAM) {
-                // validate stream arguments
+                // validate stream arguments, including the generated consumer names
                 var stream = inputRedis.stream();
-                var consumer = inputRedis.key() + ".groups[\"" + stream.group() + "\"]=" + stream.consumer();
-                if (!consumerSet.add(consumer)) {
+                for (var index = 0; index < conveyorCfg.parallelism(); index++) {
+                    var consumer = inputRedis.key() + ".groups[\"" + stream.group() + "\"]="
+                            + consumerName(stream.consumer(), index);
+                    if (!consumerSet.add(consumer)) {
+                        throw new UnsupportedOperationException(
+                                "duplicated consumer `" + consumer + "` for redis.input.stream");
+                    }
+                }
+            } else if (inputRedis.processingKey().isPresent()) {
+                if (conveyorCfg.parallelism() > 1) {
+                    throw new UnsupportedOperationException(
+                            "`parallelism` with `processing-key` for redis.input.list is unsupported yet");
+                }
+                if (inputRedis.sharedConnection()) {
+                    // BLMOVE can not be collapsed into one command for many keys
                     throw new UnsupportedOperationException(
-                            "duplicated consumer `" + consumer + "` for redis.input.stream");
+                            "`shared-connection` with `processing-key` for redis.input.list is unsupported yet");
                 }
+                if (inputRedis.fanIn()) {
+                    throw new UnsupportedOperationException(
+                            "`fan-in` with `processing-key` for redis.input.list is unsupported yet");
+                }
+            }
+            if (inputRedis.fanIn() && inputRedis.sharedConnection()) {
+                // fan-in already blocks on all keys with one command
+                throw new UnsupportedOperationException("`fan-in` with `shared-connection` is unsupported yet");
             }
         }
     }
@@ -146,6 +208,7 @@ public class ConveyorSetManager implements InitializingBean, DisposableBean {
     private void startupAdminServers(ConveyorSetsConfig mainCfg) {
         mainCfg.unixServer().ifPresent(this::startupUnixServer);
         mainCfg.resp3Server().ifPresent(this::startupResp3Server);
+        mainCfg.prometheusServer().ifPresent(this::startupPrometheusServer);
     }
 
     private void startupUnixServer(UnixServerConfig config) {
@@ -158,6 +221,10 @@ public class ConveyorSetManager implements InitializingBean, DisposableBean {
         adminServers.add(new Resp3Server(appProperties.getVersion(), this, config));
     }
 
+    private void startupPrometheusServer(PrometheusServerConfig config) {
+        adminServers.add(new PrometheusServer(this, dataSourceManager, config));
+    }
+
     @Override
     public void destroy() throws Exception {
         // Shutdown admin executor at first
@@ -169,6 +236,10 @@ public class ConveyorSetManager implements InitializingBean, DisposableBean {
         }
         // Shutdown all admin servers
         adminServers.forEach(AdminServer::shutdown);
+        var replayer = this.replayer;
+        if (replayer != null) {
+            replayer.stop();
+        }
         // Shutdown all ConveyorSets
         var futures = conveyorSetMap.values().stream()
                 .collect(CollectorUtil.toLinkedHashMap(ConveyorSet::name, ConveyorSet::shutdown));
@@ -187,6 +258,8 @@ public class ConveyorSetManager implements InitializingBean, DisposableBean {
         if (!executor.isTerminated()) {
             executor.awaitTermination(60, TimeUnit.SECONDS);
         }
+        log.info("[app:shutdown] Shutdown derived executor");
+        derivedExecutor.shutdown();
         redisClientManager.shutdown();
         dataSourceManager.closeAll();
     }
@@ -196,14 +269,18 @@ public class ConveyorSetManager implements InitializingBean, DisposableBean {
         var conveyors = new ArrayList<Conveyor>();
         for (var productId : config.products()) {
             for (var conveyorCfg : config.conveyors()) {
-                var conveyorName = config.name() + "-" + productId + "." + conveyorCfg.name();
-                var input = initRedisInput(productId, conveyorName, conveyorCfg.inputRedis());
-                var output = initMysqlOutput(conveyorName, conveyorCfg.outputMysql());
-                var conveyor = new DefaultConveyor(conveyorName, input, output);
-                config.maxRetryCount().ifPresent(conveyor::maxRetryCount);
-                conveyorCfg.maxRetryCount().ifPresent(conveyor::maxRetryCount);
-                log.debug("[app:init] {} initialized", conveyor);
-                conveyors.add(conveyor);
+                if (!conveyorCfg.inputRedis().fanIn()) {
+                    for (var index = 0; index < conveyorCfg.parallelism(); index++) {
+                        conveyors.add(initConveyor(config, List.of(productId), conveyorCfg, index));
+                    }
+                }
+            }
+        }
+        for (var conveyorCfg : config.conveyors()) {
+            if (conveyorCfg.inputRedis().fanIn()) {
+                for (var index = 0; index < conveyorCfg.parallelism(); index++) {
+                    conveyors.add(initConveyor(config, config.products(), conveyorCfg, index));
+                }
             }
         }
         var conveyorSet = new DefaultConveyorSet(config, conveyors);
@@ -211,25 +288,143 @@ public class ConveyorSetManager implements InitializingBean, DisposableBean {
         return conveyorSet;
     }
 
+    // all products are in one group when fan-in
+    private static final List<List<String>> productGroups(ConveyorSetConfig config, ConveyorConfig conveyorCfg) {
+        if (conveyorCfg.inputRedis().fanIn()) {
+            return List.of(config.products());
+        }
+        return config.products().stream().map(List::of).toList();
+    }
+
+    private static final String productLabel(List<String> productIds, ConveyorConfig conveyorCfg) {
+        return conveyorCfg.inputRedis().fanIn() ? "*" : productIds.get(0);
+    }
+
+    private static final String conveyorName(ConveyorSetConfig config, List<String> productIds,
+            ConveyorConfig conveyorCfg, int index) {
+        var product = productLabel(productIds, conveyorCfg);
+        var conveyorName = config.name() + "-" + product + "." + conveyorCfg.name();
+        // keep the original name for the first one, so that scaling from 1 is not disruptive
+        return index == 0 ? conveyorName : conveyorName + "#" + index;
+    }
+
+    private static final String consumerName(String consumer, int index) {
+        return index == 0 ? consumer : consumer + "-" + index;
+    }
+
+    private Conveyor initConveyor(ConveyorSetConfig config, List<String> productIds, ConveyorConfig conveyorCfg,
+            int index) {
+        var conveyorName = conveyorName(config, productIds, conveyorCfg, index);
+        var input = initRedisInput(productIds, conveyorName, conveyorCfg.inputRedis(), conveyorCfg.outputMysql(),
+                index);
+        // output tables never vary by product, so one output is enough for fan-in
+        var output = initMysqlOutput(conveyorName, conveyorCfg.outputMysql());
+        var conveyor = new DefaultConveyor(conveyorName, input, output);
+        conveyor.labels(Map.of("product", productLabel(productIds, conveyorCfg), "table",
+                conveyorCfg.outputMysql().table()));
+        config.maxRetryCount().ifPresent(conveyor::maxRetryCount);
+        conveyorCfg.maxRetryCount().ifPresent(conveyor::maxRetryCount);
+        conveyor.pipelineWindow(conveyorCfg.pipelineWindow());
+        conveyor.idleDelay(executorConfig.idleDelay());
+        conveyor.retryPolicy(RetryPolicy.fromConfig(retryConfig));
+        conveyor.circuitBreaker(dataSourceManager.getCircuitBreaker(conveyorCfg.outputMysql(), retryConfig));
+        conveyorCfg.linger().ifPresent(linger -> conveyor.linger(linger.rows(), linger.millis()));
+        // one directory per conveyor, characters like `*` and `#` are not friendly for file names
+        conveyorCfg.spill().ifPresent(spill -> conveyor.spill(
+                Path.of(spill.path(), conveyorName.replaceAll("[^\\w.-]", "_")), spill.segmentSize() << 20));
+        log.debug("[app:init] {} initialized", conveyor);
+        return conveyor;
+    }
+
+    private String rescale(ConveyorSet conveyorSet, ConveyorSetConfig newCfg) {
+        var oldCfg = conveyorSet.config();
+        var added = new ArrayList<Conveyor>();
+        var removed = new ArrayList<Conveyor>();
+        var adoptions = new ArrayList<Runnable>();
+        for (var i = 0; i < newCfg.conveyors().size(); i++) {
+            var oldParallelism = oldCfg.conveyors().get(i).parallelism();
+            var conveyorCfg = newCfg.conveyors().get(i);
+            var parallelism = conveyorCfg.parallelism();
+            for (var productIds : productGroups(newCfg, conveyorCfg)) {
+                for (var index = oldParallelism; index < parallelism; index++) {
+                    added.add(initConveyor(newCfg, productIds, conveyorCfg, index));
+                }
+                for (var index = parallelism; index < oldParallelism; index++) {
+                    var conveyorName = conveyorName(newCfg, productIds, conveyorCfg, index);
+                    conveyorSet.conveyors().stream().filter(c -> c.name().equals(conveyorName)).findFirst()
+                            .ifPresent(removed::add);
+                    var inputRedis = conveyorCfg.inputRedis();
+                    if (inputRedis.type() == Type.STREAM) {
+                        // entries in PEL of the removed consumer would never be read again
+                        var survivorName = conveyorName(newCfg, productIds, conveyorCfg, index % parallelism);
+                        var consumer = consumerName(inputRedis.stream().consumer(), index);
+                        adoptions.add(() -> adoptPendings(conveyorSet, survivorName, consumer));
+                    }
+                }
+            }
+        }
+        conveyorSet.rescale(newCfg, added, removed, executor).awaitUninterruptibly(60, TimeUnit.SECONDS);
+        // after the removed conveyors stopped, or they may still be reading their own entries
+        adoptions.forEach(Runnable::run);
+        return newCfg.name() + ": rescaled (+" + added.size() + ", -" + removed.size() + ")";
+    }
+
+    private static final void adoptPendings(ConveyorSet conveyorSet, String survivorName, String consumer) {
+        for (var conveyor : conveyorSet.conveyors()) {
+            if (conveyor.name().equals(survivorName) && conveyor instanceof DefaultConveyor defaultConveyor
+                    && defaultConveyor.input() instanceof RedisStreamInput input) {
+                input.adopt(consumer);
+                return;
+            }
+        }
+        log.warn("[app:rescale] No conveyor {} to take over pending entries of consumer {}", survivorName, consumer);
+    }
+
     private Output initMysqlOutput(String conveyorName, OutputMysqlConfig outputMysql) {
         var outputName = conveyorName + ".output.mysql";
         var dataSource = dataSourceManager.getDataSource(outputMysql);
         if (outputMysql.derivationEnabled()) {
-            return new DerivedMysqlOutput(outputName, dataSource, outputMysql);
+            return new DerivedMysqlOutput(outputName, dataSource, outputMysql, derivedExecutor);
+        } else if (outputMysql.writeMode() == WriteMode.LOAD_DATA) {
+            return new LoadDataMysqlOutput(outputName, dataSource, outputMysql);
         } else {
             return new SimpleMysqlOutput(outputName, dataSource, outputMysql);
         }
     }
 
-    private Input initRedisInput(String productId, String conveyorName, InputRedisConfig config) {
+    private Input initRedisInput(List<String> productIds, String conveyorName, InputRedisConfig config,
+            OutputMysqlConfig outputConfig, int index) {
         var inputName = conveyorName + ".input.redis";
+        var sharedConnections = config.sharedConnection() ? redisClientManager.sharedConnections() : null;
         return switch (config.type()) {
-        case LIST -> new RedisListInput(inputName, redisClientManager.globalRedisClient(), productId, config);
-        case STREAM -> new RedisStreamInput(inputName, redisClientManager.globalRedisClient(), productId, config);
+        case LIST -> new RedisListInput(inputName, redisClientManager.globalRedisClient(), sharedConnections,
+                productIds, config, config.projection() ? toRecordSchema(outputConfig) : null);
+        case STREAM -> new RedisStreamInput(inputName, redisClientManager.globalRedisClient(), sharedConnections,
+                productIds, config, consumerName(config.stream().consumer(), index));
         default -> throw new UnsupportedOperationException("type " + config.type() + " is unsupported yet");
         };
     }
 
+    private static final RecordSchema toRecordSchema(OutputMysqlConfig config) {
+        // only fields used by output are needed
+        var names = new ArrayList<String>();
+        for (var field : config.fields()) {
+            names.add(field.name());
+        }
+        if (config.derivationEnabled()) {
+            names.add(config.derivedField());
+        }
+        return RecordSchema.of(names);
+    }
+
+    public List<ConveyorSet> conveyorSets() {
+        return conveyorSetMap.values().stream().toList();
+    }
+
+    public Optional<ConveyorSet> conveyorSet(String name) {
+        return Optional.ofNullable(conveyorSetMap.get(name));
+    }
+
     public String adminCommandLine(String line) {
         try {
             return CompletableFuture.supplyAsync(() -> commandLine(line), adminExecutor).get();
@@ -245,6 +440,10 @@ public class ConveyorSetManager implements InitializingBean, DisposableBean {
         switch (cmd) {
         case "status":
             return showStatus(args);
+        case "metrics":
+            return showMetrics(args);
+        case "replay":
+            return replay(args);
         case "reread":
             return reread();
         case "start":
@@ -286,6 +485,84 @@ public class ConveyorSetManager implements InitializingBean, DisposableBean {
         return conveyorSets.stream().map(cs -> StatusUtil.format(nameWidth, cs)).collect(Collectors.joining("\r\n"));
     }
 
+    private String showMetrics(String[] args) {
+        var conveyorSets = conveyorSetMap.values().stream().toList();
+        if (args.length > 1) {
+            var name = args[1];
+            var conveyorSet = conveyorSetMap.get(name);
+            if (conveyorSet == null) {
+                return name + ": ERROR (no such conveyor-set)";
+            }
+            conveyorSets = List.of(conveyorSet);
+        }
+        var lines = new ArrayList<String>();
+        for (var conveyorSet : conveyorSets) {
+            var nameWidth = conveyorSet.conveyors().stream().mapToInt(c -> StatusUtil.toNameWidth(c.name())).max()
+                    .orElse(30);
+            for (var conveyor : conveyorSet.conveyors()) {
+                lines.add(StatusUtil.formatMetrics(nameWidth, conveyor));
+            }
+        }
+        return String.join("\r\n", lines);
+    }
+
+    private String replay(String[] args) {
+        var subArgs = args.length > 1 ? args[1].split("\\s+") : new String[] { "status" };
+        var replayer = this.replayer;
+        switch (subArgs[0]) {
+        case "start":
+            if (replayer != null && !replayer.isDone()) {
+                return "replay: ERROR (already running)";
+            }
+            int parallelism;
+            long rowsPerSecond;
+            try {
+                parallelism = subArgs.length > 1 ? Integer.parseInt(subArgs[1]) : 1;
+                rowsPerSecond = subArgs.length > 2 ? Long.parseLong(subArgs[2]) : 0;
+            } catch (NumberFormatException e) {
+                return "replay: ERROR (usage: replay start [parallelism] [rows-per-second])";
+            }
+            if (parallelism <= 0) {
+                return "replay: ERROR (parallelism must be positive)";
+            }
+            replayer = new FailureReplayer(replayOutputResolver(), parallelism, rowsPerSecond);
+            this.replayer = replayer;
+            new DefaultThreadFactory("replay-main").newThread(replayer::run).start();
+            return "replay: started";
+        case "stop":
+            if (replayer == null || replayer.isDone()) {
+                return "replay: ERROR (not running)";
+            }
+            replayer.stop();
+            return "replay: stopping";
+        case "status":
+            return replayer == null ? "replay: never started" : "replay: " + replayer;
+        default:
+            return "unknown replay command `" + subArgs[0] + "`";
+        }
+    }
+
+    // outputs are created on demand with the current configurations, but never shared with running conveyors
+    private Function<String, Output> replayOutputResolver() {
+        var configs = new HashMap<String, Map.Entry<String, OutputMysqlConfig>>();
+        for (var conveyorSet : conveyorSetMap.values()) {
+            var config = conveyorSet.config();
+            for (var conveyorCfg : config.conveyors()) {
+                for (var productIds : productGroups(config, conveyorCfg)) {
+                    for (var index = 0; index < conveyorCfg.parallelism(); index++) {
+                        var conveyorName = conveyorName(config, productIds, conveyorCfg, index);
+                        configs.put(conveyorName + ".output.mysql",
+                                Map.entry(conveyorName, conveyorCfg.outputMysql()));
+                    }
+                }
+            }
+        }
+        return outputName -> {
+            var entry = configs.get(outputName);
+            return entry == null ? null : initMysqlOutput(entry.getKey(), entry.getValue());
+        };
+    }
+
     private List<ConveyorSetConfig> loadIncludes() throws Exception {
         ConveyorSetsConfig mainCfg;
         try {
@@ -471,7 +748,12 @@ public class ConveyorSetManager implements InitializingBean, DisposableBean {
         for (var config : configs) {
             if (names.remove(config.name())) {
                 var conveyorSet = conveyorSetMap.get(config.name());
-                if (!conveyorSet.config().equals(config)) {
+                if (conveyorSet.config().equals(config)) {
+                    continue;
+                }
+                if (config.equalsIgnoreParallelism(conveyorSet.config())) {
+                    lines.add(rescale(conveyorSet, config));
+                } else {
                     conveyorSetMap.remove(config.name());
                     conveyorSet.shutdown().awaitUninterruptibly(60, TimeUnit.SECONDS);
                     lines.add(config.name() + ": stopped");
@@ -513,6 +795,9 @@ public class ConveyorSetManager implements InitializingBean, DisposableBean {
                 if (newCfg.equals(conveyorSet.config())) {
                     return name + ": no changed";
                 }
+                if (newCfg.equalsIgnoreParallelism(conveyorSet.config())) {
+                    return rescale(conveyorSet, newCfg);
+                }
                 conveyorSetMap.remove(name);
                 var lines = new ArrayList<String>(2);
                 conveyorSet.shutdown().awaitUninterruptibly(60, TimeUnit.SECONDS);
@@ -570,12 +855,46 @@ public class ConveyorSetManager implements InitializingBean, DisposableBean {
             b.append(isLast ? " └─ " : " ├─ ");
             b.append(conveyor.name()).append(" ".repeat(nameWidth + 2 - conveyor.name().length())); // name
             b.append(conveyor.status()); // status
+            conveyor.batchSize().ifPresent(batch -> b.append(" ".repeat(2)).append("batch ").append(batch)); // batch
             conveyor.threadInfo().ifPresent( // thread info
                     ti -> b.append(" ".repeat(2)).append("tid ").append(ti.id()).append(", tname ").append(ti.name()));
             var line = b.toString();
             return line;
         }
 
+        private static final String formatMetrics(int nameWidth, Conveyor conveyor) {
+            var metrics = conveyor.metrics();
+            var b = new StringBuilder();
+            b.append(conveyor.name()).append(" ".repeat(nameWidth + 3 - conveyor.name().length())); // name
+            b.append("rows ").append(metrics.rows()).append(", batches ").append(metrics.batches());
+            b.append(", bytes ").append(metrics.bytes());
+            b.append(", retries ").append(metrics.fetchRetries()).append("/").append(metrics.pushRetries());
+            b.append(", failed ").append(metrics.failedRows());
+            b.append(", rate ").append(String.format("%.1f/s", metrics.rowsPerSecond()));
+            b.append(", backlog ").append(metrics.backlog() < 0 ? "---" : String.valueOf(metrics.backlog()));
+            b.append(", lag ").append(metrics.lag() < 0 ? "---" : metrics.lag() + "ms");
+            if (metrics.lagAlert()) {
+                b.append(" (ALERT)");
+            }
+            if (metrics.spilledRows() > 0) {
+                b.append(", spilled ").append(metrics.spilledRows());
+            }
+            appendLatency(b.append(", fetch "), metrics.fetchLatency());
+            appendLatency(b.append(", push "), metrics.pushLatency());
+            appendLatency(b.append(", e2e "), metrics.endToEndLatency());
+            return b.toString();
+        }
+
+        // p50/p99/max in milliseconds
+        private static final void appendLatency(StringBuilder b, Histogram histogram) {
+            if (histogram.getTotalCount() == 0) {
+                b.append("---");
+                return;
+            }
+            b.append(String.format("%.1f/%.1f/%.1fms", histogram.getValueAtPercentile(50) / 1000.0,
+                    histogram.getValueAtPercentile(99) / 1000.0, histogram.getMaxValue() / 1000.0));
+        }
+
         private static final String formatUpTime(Duration upTime) {
             var b = new StringBuilder();
             var days = upTime.toDaysPart();
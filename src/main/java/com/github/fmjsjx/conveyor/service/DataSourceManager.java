@@ -1,5 +1,7 @@
 package com.github.fmjsjx.conveyor.service;
 
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -9,9 +11,12 @@ import javax.sql.DataSource;
 import org.springframework.stereotype.Component;
 
 import com.github.fmjsjx.conveyor.config.DataSourceConfig;
+import com.github.fmjsjx.conveyor.config.RetryConfig;
+import com.github.fmjsjx.conveyor.core.output.CircuitBreaker;
 import com.github.fmjsjx.libcommon.util.RuntimeUtil;
 import com.zaxxer.hikari.HikariConfig;
 import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
 
 import lombok.extern.slf4j.Slf4j;
 
@@ -21,6 +26,8 @@ public class DataSourceManager {
 
     private final ConcurrentMap<String, DataSource> dataSourceMap = new ConcurrentHashMap<>();
 
+    private final ConcurrentMap<String, CircuitBreaker> circuitBreakerMap = new ConcurrentHashMap<>();
+
     private final AtomicBoolean closed = new AtomicBoolean();
 
     public DataSource getDataSource(DataSourceConfig config) {
@@ -30,6 +37,27 @@ public class DataSourceManager {
         return dataSourceMap.computeIfAbsent(config.poolName(), k -> createDataSource(config));
     }
 
+    // one circuit breaker for each pool, null if disabled
+    // the breaker is created by the first config, and never changed by rereading
+    public CircuitBreaker getCircuitBreaker(DataSourceConfig config, RetryConfig retryConfig) {
+        if (retryConfig.breakerThreshold() <= 0) {
+            return null;
+        }
+        return circuitBreakerMap.computeIfAbsent(config.poolName(),
+                k -> CircuitBreaker.fromConfig(k, retryConfig));
+    }
+
+    // pool name => pool stats, only HikariCP pools
+    public Map<String, HikariPoolMXBean> pools() {
+        var pools = new LinkedHashMap<String, HikariPoolMXBean>();
+        dataSourceMap.forEach((poolName, dataSource) -> {
+            if (dataSource instanceof HikariDataSource hikari && hikari.getHikariPoolMXBean() != null) {
+                pools.put(poolName, hikari.getHikariPoolMXBean());
+            }
+        });
+        return pools;
+    }
+
     private DataSource createDataSource(DataSourceConfig config) {
         // now always use HikariCP
         return createHikariDataSource(config);
@@ -45,6 +73,16 @@ public class DataSourceManager {
         cfg.addDataSourceProperty("useUnicode", "true");
         cfg.addDataSourceProperty("characterEncoding", "UTF-8");
         cfg.addDataSourceProperty("useSSL", config.useSSL() ? "true" : "false");
+        if (config.rewriteBatchedStatements()) {
+            // let the driver rewrite executeBatch() into multi-row INSERTs, and cache the parsed statements
+            cfg.addDataSourceProperty("rewriteBatchedStatements", "true");
+            cfg.addDataSourceProperty("cachePrepStmts", "true");
+            cfg.addDataSourceProperty("prepStmtCacheSize", "250");
+            cfg.addDataSourceProperty("prepStmtCacheSqlLimit", "2048");
+        }
+        if (config.allowLoadLocalInfile()) {
+            cfg.addDataSourceProperty("allowLoadLocalInfile", "true");
+        }
         cfg.setAutoCommit(true);
         cfg.setConnectionTestQuery("SELECT 'x'");
         cfg.setMinimumIdle(Math.max(1, RuntimeUtil.availableProcessors() / 2));
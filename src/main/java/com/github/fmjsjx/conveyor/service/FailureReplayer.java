@@ -0,0 +1,488 @@
+package com.github.fmjsjx.conveyor.service;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+import java.util.zip.GZIPInputStream;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.github.fmjsjx.conveyor.core.output.DerivedMysqlOutput;
+import com.github.fmjsjx.conveyor.core.output.Output;
+
+import io.netty.util.concurrent.DefaultThreadFactory;
+import lombok.extern.slf4j.Slf4j;
+
+// replays rows written by the failure logger back to MySQL through the outputs of conveyors
+@Slf4j
+class FailureReplayer {
+
+    // same as the FailureLogsRollingFile appender in log4j2.xml
+    private static final Path FAILURE_LOG_DIR = Path.of("logs", "biz");
+    private static final String FAILURE_LOG_FILE = "failure.log";
+    private static final Pattern HISTORY_FILE = Pattern.compile("failure-(\\d{4}-\\d{2}-\\d{2})\\.log(\\.gz)?");
+    private static final String CHECKPOINT_FILE = "replay.checkpoint";
+    // lines of bad rows that can never be replayed, same format as failure.log
+    private static final String REJECT_FILE = "replay.rejects";
+
+    private static final String PRIMARY = "primary";
+    private static final String DERIVED = "derived";
+    private static final int CHUNK_LINES = 10_000;
+    private static final int BATCH_ROWS = 1000;
+
+    private static final ObjectReader ROW_READER = new ObjectMapper()
+            .readerFor(new TypeReference<LinkedHashMap<String, String>>() {
+            });
+
+    // kind is `primary`, or the key of the derived table
+    private record Group(String outputName, String kind) {
+    }
+
+    private record Row(String line, Map<String, String> values) {
+    }
+
+    // reads only bytes before the limit
+    private static final class LimitedInputStream extends FilterInputStream {
+
+        private long remaining;
+
+        private LimitedInputStream(InputStream in, long limit) {
+            super(in);
+            this.remaining = limit;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            var b = in.read();
+            if (b >= 0) {
+                remaining--;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            var n = in.read(b, off, (int) Math.min(len, remaining));
+            if (n > 0) {
+                remaining -= n;
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            var skipped = in.skip(Math.min(n, remaining));
+            remaining -= skipped;
+            return skipped;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return (int) Math.min(in.available(), remaining);
+        }
+
+    }
+
+    // failure.log is rotated daily as a whole, so its date and its first line identify the file even after rotated
+    // and gzipped, lines have no timestamp, so many files may start with the same line, such as a poison row
+    static final String fingerprint(Path file) throws IOException {
+        try (var reader = open(file)) {
+            var first = reader.readLine();
+            if (first == null) {
+                return null;
+            }
+            var crc = new CRC32();
+            crc.update(first.getBytes(StandardCharsets.UTF_8));
+            return fileDate(file) + "-" + Long.toHexString(crc.getValue()) + "-" + first.length();
+        }
+    }
+
+    // the date in the name of a history file, or the last modified date of the current file, that is the date in
+    // the name it will be rotated to
+    private static final String fileDate(Path file) throws IOException {
+        var matcher = HISTORY_FILE.matcher(file.getFileName().toString());
+        if (matcher.matches()) {
+            return matcher.group(1);
+        }
+        return LocalDate.ofInstant(Files.getLastModifiedTime(file).toInstant(), ZoneId.systemDefault()).toString();
+    }
+
+    private static final BufferedReader open(Path file) throws IOException {
+        InputStream in;
+        if (file.getFileName().toString().endsWith(".gz")) {
+            in = new GZIPInputStream(Files.newInputStream(file), 65536);
+        } else {
+            // the current file may be still being written, a line is never read before it is terminated
+            var channel = FileChannel.open(file, StandardOpenOption.READ);
+            try {
+                in = new LimitedInputStream(Channels.newInputStream(channel), terminatedLength(channel));
+            } catch (IOException | RuntimeException e) {
+                channel.close();
+                throw e;
+            }
+        }
+        return new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8), 65536);
+    }
+
+    // length of the file to the end of the last line terminated
+    private static final long terminatedLength(FileChannel channel) throws IOException {
+        var buffer = ByteBuffer.allocate(8192);
+        for (var end = channel.size(); end > 0;) {
+            var start = Math.max(0, end - buffer.capacity());
+            buffer.clear().limit((int) (end - start));
+            while (buffer.hasRemaining() && channel.read(buffer, start + buffer.position()) >= 0) {
+                // read the block fully
+            }
+            for (var i = buffer.position() - 1; i >= 0; i--) {
+                if (buffer.get(i) == '\n') {
+                    return start + i + 1;
+                }
+            }
+            end = start;
+        }
+        return 0;
+    }
+
+    // history files ordered by date at first, then the current one
+    private static final List<Path> failureLogFiles(Path logDir) throws IOException {
+        var files = new ArrayList<Path>();
+        var historyDir = logDir.resolve("history");
+        if (Files.isDirectory(historyDir)) {
+            try (var stream = Files.list(historyDir)) {
+                stream.filter(p -> p.getFileName().toString().startsWith("failure-")).sorted().forEach(files::add);
+            }
+        }
+        var current = logDir.resolve(FAILURE_LOG_FILE);
+        if (Files.exists(current)) {
+            files.add(current);
+        }
+        return files;
+    }
+
+    private final Path logDir;
+    private final Path checkpointFile;
+    private final Path rejectFile;
+    private final Function<String, Output> outputResolver;
+    private final int parallelism;
+    private final long rowsPerSecond;
+
+    private final Map<String, Output> outputs = new HashMap<>();
+    private final Properties checkpoint = new Properties();
+    private volatile boolean stopped;
+    private volatile String state = "RUNNING";
+    private volatile Path currentFile;
+    private final AtomicLong replayedRows = new AtomicLong();
+    private final AtomicLong rejectedRows = new AtomicLong();
+    private volatile long skippedLines;
+    // files stopped at records of outputs without conveyor, continued on next replay
+    private volatile int filesPending;
+    private BufferedWriter rejects;
+    private volatile int filesDone;
+    private volatile int filesTotal;
+    private long nextPermitTime;
+
+    FailureReplayer(Function<String, Output> outputResolver, int parallelism, long rowsPerSecond) {
+        this(FAILURE_LOG_DIR, outputResolver, parallelism, rowsPerSecond);
+    }
+
+    FailureReplayer(Path logDir, Function<String, Output> outputResolver, int parallelism, long rowsPerSecond) {
+        this.logDir = logDir;
+        this.checkpointFile = logDir.resolve(CHECKPOINT_FILE);
+        this.rejectFile = logDir.resolve(REJECT_FILE);
+        this.outputResolver = outputResolver;
+        this.parallelism = parallelism;
+        this.rowsPerSecond = rowsPerSecond;
+    }
+
+    void run() {
+        var executor = Executors.newFixedThreadPool(parallelism, new DefaultThreadFactory("replay"));
+        try {
+            loadCheckpoint();
+            var files = failureLogFiles(logDir);
+            filesTotal = files.size();
+            log.info("[admin:replay] Start replaying {} failure log files", files.size());
+            for (var file : files) {
+                if (stopped) {
+                    break;
+                }
+                currentFile = file;
+                replayFile(file, executor);
+                filesDone++;
+            }
+            state = stopped ? "STOPPED" : "FINISHED";
+            log.info("[admin:replay] Replay {}: {}", state.toLowerCase(), this);
+        } catch (Exception e) {
+            state = "FAILED (" + e + ")";
+            log.error("[admin:replay] Replay failed: {}", this, e);
+        } finally {
+            executor.shutdown();
+            awaitTermination(executor);
+            outputs.values().stream().filter(Objects::nonNull).forEach(Output::close);
+            closeRejects();
+        }
+    }
+
+    // pushes submitted before a failure may be still running, outputs must not be closed under them
+    private static final void awaitTermination(ExecutorService executor) {
+        try {
+            if (!executor.awaitTermination(60, TimeUnit.SECONDS)) {
+                log.warn("[admin:replay] Pushes are still running after 60 seconds, close outputs anyway");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    void stop() {
+        stopped = true;
+    }
+
+    boolean isDone() {
+        return !"RUNNING".equals(state);
+    }
+
+    private void replayFile(Path file, ExecutorService executor) throws Exception {
+        var fingerprint = fingerprint(file);
+        if (fingerprint == null) {
+            return;
+        }
+        var done = Long.parseLong(checkpoint.getProperty(fingerprint, "0"));
+        log.info("[admin:replay] Replay {} from line {}", file, done);
+        try (var reader = open(file)) {
+            for (var i = 0L; i < done && reader.readLine() != null; i++) {
+                // skip lines already replayed
+            }
+            var lines = new ArrayList<String>(CHUNK_LINES);
+            for (var line = reader.readLine(); !stopped; line = reader.readLine()) {
+                if (line != null) {
+                    lines.add(line);
+                }
+                if (lines.size() >= CHUNK_LINES || (line == null && !lines.isEmpty())) {
+                    var replayed = replayChunk(lines, executor);
+                    done += replayed;
+                    flushRejects();
+                    saveCheckpoint(fingerprint, done);
+                    if (replayed < lines.size()) {
+                        // the checkpoint stays at its records, they are replayed after its conveyor is configured
+                        filesPending++;
+                        log.warn("[admin:replay] Stop replaying {} at line {}, no conveyor found for {}", file, done,
+                                outputName(lines.get(replayed)));
+                        return;
+                    }
+                    lines.clear();
+                }
+                if (line == null) {
+                    break;
+                }
+            }
+        }
+    }
+
+    private static final String outputName(String line) {
+        var nameEnd = line.indexOf(' ');
+        return nameEnd < 0 ? line : line.substring(0, nameEnd);
+    }
+
+    // all rows before the returned number of lines are pushed or rejected before returning, so that the checkpoint
+    // is always safe, lines of outputs without conveyor stop the chunk
+    private int replayChunk(List<String> lines, ExecutorService executor) throws Exception {
+        var groups = new LinkedHashMap<Group, List<Row>>();
+        var replayed = 0;
+        for (; replayed < lines.size(); replayed++) {
+            var line = lines.get(replayed);
+            var nameEnd = line.indexOf(' ');
+            var kindEnd = nameEnd < 0 ? -1 : line.indexOf(' ', nameEnd + 1);
+            var valueStart = kindEnd < 0 ? -1 : line.indexOf(' ', kindEnd + 1);
+            if (valueStart < 0) {
+                skippedLines++;
+                continue;
+            }
+            var outputName = line.substring(0, nameEnd);
+            var kind = line.substring(nameEnd + 1, kindEnd);
+            if (DERIVED.equals(kind)) {
+                kind = line.substring(kindEnd + 1, valueStart);
+            } else if (!PRIMARY.equals(kind)) {
+                skippedLines++;
+                continue;
+            }
+            var output = output(outputName);
+            if (output == null) {
+                break;
+            }
+            Map<String, String> values;
+            try {
+                values = ROW_READER.readValue(line.substring(valueStart + 1));
+            } catch (IOException e) {
+                log.warn("[admin:replay] Skip broken line: {}", line, e);
+                skippedLines++;
+                continue;
+            }
+            var row = new Row(line, values);
+            if (!PRIMARY.equals(kind) && !(output instanceof DerivedMysqlOutput)) {
+                reject(List.of(row), output + " has no derived table `" + kind + "`");
+                continue;
+            }
+            groups.computeIfAbsent(new Group(outputName, kind), k -> new ArrayList<>()).add(row);
+        }
+        var futures = new ArrayList<Future<?>>();
+        for (var entry : groups.entrySet()) {
+            var group = entry.getKey();
+            var rows = entry.getValue();
+            var output = output(group.outputName());
+            for (var from = 0; from < rows.size(); from += BATCH_ROWS) {
+                var batch = rows.subList(from, Math.min(rows.size(), from + BATCH_ROWS));
+                acquire(batch.size());
+                futures.add(executor.submit(() -> {
+                    push(output, group.kind(), batch);
+                    return null;
+                }));
+            }
+        }
+        for (var future : futures) {
+            future.get();
+        }
+        return replayed;
+    }
+
+    // bad rows are isolated by halves and rejected, other errors fail the replay
+    private void push(Output output, String kind, List<Row> rows) throws Exception {
+        try {
+            pushValues(output, kind, rows.stream().map(Row::values).toList());
+        } catch (Exception e) {
+            if (!output.isDataError(e)) {
+                throw e;
+            }
+            if (rows.size() == 1) {
+                reject(rows, e.toString());
+                return;
+            }
+            var half = rows.size() / 2;
+            push(output, kind, rows.subList(0, half));
+            push(output, kind, rows.subList(half, rows.size()));
+        }
+    }
+
+    private void pushValues(Output output, String kind, List<Map<String, String>> batch) throws Exception {
+        if (PRIMARY.equals(kind)) {
+            output.push(batch);
+        } else {
+            ((DerivedMysqlOutput) output).pushDerived(kind, batch);
+        }
+        replayedRows.addAndGet(batch.size());
+    }
+
+    private synchronized void reject(List<Row> rows, String reason) throws IOException {
+        log.warn("[admin:replay] Reject {} rows to {}: {}", rows.size(), rejectFile, reason);
+        var rejects = this.rejects;
+        if (rejects == null) {
+            this.rejects = rejects = Files.newBufferedWriter(rejectFile, StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        }
+        for (var row : rows) {
+            rejects.write(row.line());
+            rejects.newLine();
+        }
+        rejectedRows.addAndGet(rows.size());
+    }
+
+    // rejected rows must be written before the checkpoint passes them
+    private synchronized void flushRejects() throws IOException {
+        if (rejects != null) {
+            rejects.flush();
+        }
+    }
+
+    private synchronized void closeRejects() {
+        if (rejects != null) {
+            try {
+                rejects.close();
+            } catch (IOException e) {
+                log.warn("[admin:replay] Close {} failed", rejectFile, e);
+            }
+        }
+    }
+
+    // null if no conveyor configured for it
+    private Output output(String outputName) {
+        var output = outputs.get(outputName);
+        if (output == null && !outputs.containsKey(outputName)) {
+            output = outputResolver.apply(outputName);
+            outputs.put(outputName, output);
+        }
+        return output;
+    }
+
+    private void acquire(int rows) throws InterruptedException {
+        if (rowsPerSecond <= 0) {
+            return;
+        }
+        var now = System.nanoTime();
+        var wait = nextPermitTime - now;
+        if (wait > 0) {
+            TimeUnit.NANOSECONDS.sleep(wait);
+        } else {
+            nextPermitTime = now;
+        }
+        nextPermitTime += TimeUnit.SECONDS.toNanos(rows) / rowsPerSecond;
+    }
+
+    private void loadCheckpoint() throws IOException {
+        if (Files.exists(checkpointFile)) {
+            try (var in = Files.newInputStream(checkpointFile)) {
+                checkpoint.load(in);
+            }
+        }
+    }
+
+    private void saveCheckpoint(String fingerprint, long lines) throws IOException {
+        checkpoint.setProperty(fingerprint, String.valueOf(lines));
+        var tmp = checkpointFile.resolveSibling(CHECKPOINT_FILE + ".tmp");
+        try (var out = Files.newOutputStream(tmp)) {
+            checkpoint.store(out, "lines replayed of each failure log file, keyed by its date and first line");
+        }
+        Files.move(tmp, checkpointFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    @Override
+    public String toString() {
+        return state + ", files " + filesDone + "/" + filesTotal + ", current " + currentFile + ", replayed "
+                + replayedRows.get() + " rows, rejected " + rejectedRows.get() + " rows, skipped " + skippedLines
+                + " lines, " + filesPending + " files pending for outputs without conveyor";
+    }
+
+}
@@ -2,6 +2,8 @@ package com.github.fmjsjx.conveyor.service;
 
 import org.springframework.stereotype.Component;
 
+import com.github.fmjsjx.conveyor.core.input.SharedRedisConnections;
+
 import io.lettuce.core.RedisClient;
 import lombok.extern.slf4j.Slf4j;
 
@@ -10,6 +12,7 @@ import lombok.extern.slf4j.Slf4j;
 public class RedisClientManager {
 
     private volatile RedisClient redisClient;
+    private volatile SharedRedisConnections sharedConnections;
 
     public RedisClient globalRedisClient() {
         var redisClient = this.redisClient;
@@ -25,7 +28,25 @@ public class RedisClientManager {
         return redisClient;
     }
 
+    public SharedRedisConnections sharedConnections() {
+        var sharedConnections = this.sharedConnections;
+        if (sharedConnections == null) {
+            synchronized (this) {
+                sharedConnections = this.sharedConnections;
+                if (sharedConnections == null) {
+                    this.sharedConnections = sharedConnections = new SharedRedisConnections(globalRedisClient());
+                }
+            }
+        }
+        return sharedConnections;
+    }
+
     public synchronized void shutdown() {
+        var sharedConnections = this.sharedConnections;
+        if (sharedConnections != null) {
+            log.info("[app:shutdown] Close shared REDIS connections");
+            sharedConnections.close();
+        }
         var redisClient = this.redisClient;
         if (redisClient != null) {
             log.info("[app:shutdown] Shutdown REDIS client");
@@ -0,0 +1,173 @@
+package com.github.fmjsjx.conveyor.util;
+
+import java.lang.reflect.Constructor;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.github.fmjsjx.conveyor.config.OutputMysqlConfig.FieldConfig;
+import com.github.fmjsjx.conveyor.config.OutputMysqlConfig.FieldType;
+import com.github.fmjsjx.conveyor.config.OutputMysqlConfig.RowBinder;
+import com.github.fmjsjx.conveyor.config.OutputMysqlConfig.ValueSetter;
+
+import javassist.ClassPool;
+import javassist.CtField;
+import javassist.CtNewConstructor;
+import javassist.CtNewMethod;
+import javassist.LoaderClassPath;
+import lombok.extern.slf4j.Slf4j;
+
+@Slf4j
+public class RowBinderUtil {
+
+    private static final String VALUE_SETTER = "com.github.fmjsjx.conveyor.config.OutputMysqlConfig$ValueSetter";
+
+    private static final AtomicInteger classIndex = new AtomicInteger();
+
+    // generated classes by the source code of the bind method
+    private static final ConcurrentMap<String, Constructor<?>> constructors = new ConcurrentHashMap<>();
+
+    public static final RowBinder generate(List<FieldConfig> fields) {
+        var setters = fields.stream().map(FieldConfig::valueSetter).toArray(ValueSetter[]::new);
+        try {
+            var body = toBindMethod(fields);
+            var constructor = constructors.computeIfAbsent(body, RowBinderUtil::generateClass);
+            return (RowBinder) constructor.newInstance((Object) setters);
+        } catch (Exception e) {
+            log.warn("[app:init] Generate row binder failed, fall back to value setters: {}", fields, e);
+            return toLoopBinder(setters);
+        }
+    }
+
+    private static final RowBinder toLoopBinder(ValueSetter[] setters) {
+        return (statement, index, values) -> {
+            for (var setter : setters) {
+                setter.setValue(statement, index++, values);
+            }
+            return index;
+        };
+    }
+
+    private static final Constructor<?> generateClass(String bindMethod) {
+        try {
+            var pool = new ClassPool(true);
+            pool.appendClassPath(new LoaderClassPath(RowBinder.class.getClassLoader()));
+            var className = RowBinderUtil.class.getPackageName() + ".GeneratedRowBinder" + classIndex.incrementAndGet();
+            var cc = pool.makeClass(className);
+            cc.addInterface(pool.get(RowBinder.class.getName()));
+            cc.addField(CtField.make("private " + VALUE_SETTER + "[] setters;", cc));
+            cc.addConstructor(CtNewConstructor.make(
+                    "public " + cc.getSimpleName() + "(" + VALUE_SETTER + "[] setters) { this.setters = setters; }", cc));
+            cc.addMethod(CtNewMethod.make(bindMethod, cc));
+            log.debug("[app:init] Generated row binder {}: {}", className, bindMethod);
+            var type = cc.toClass(RowBinderUtil.class);
+            cc.detach();
+            return type.getConstructor(ValueSetter[].class);
+        } catch (Exception e) {
+            throw new IllegalStateException("generate row binder failed", e);
+        }
+    }
+
+    private static final String toBindMethod(List<FieldConfig> fields) {
+        var b = new StringBuilder();
+        b.append("public int bind(java.sql.PreparedStatement s, int i, java.util.Map m) throws java.sql.SQLException {\n");
+        b.append("String v;\n");
+        for (var k = 0; k < fields.size(); k++) {
+            appendField(b, fields.get(k), k);
+        }
+        b.append("return i + ").append(fields.size()).append(";\n}");
+        return b.toString();
+    }
+
+    private static final void appendField(StringBuilder b, FieldConfig field, int k) {
+        var def = field.defaultValue();
+        var index = "i + " + k;
+        var get = "v = (String) m.get(" + toLiteral(field.name()) + ");\n";
+        switch (field.type()) {
+        case INT, LONG -> {
+            var isInt = field.type() == FieldType.INT;
+            b.append(get).append("if (v == null) { ");
+            if (def.isPresent()) {
+                var literal = isInt ? String.valueOf(Integer.parseInt(def.content()))
+                        : Long.parseLong(def.content()) + "L";
+                b.append(isInt ? "s.setInt(" : "s.setLong(").append(index).append(", ").append(literal).append(");");
+            } else {
+                b.append("s.setObject(").append(index).append(", null);");
+            }
+            b.append(" } else { ").append(isInt ? "s.setInt(" : "s.setLong(").append(index).append(", ")
+                    .append(isInt ? "Integer.parseInt(v)" : "Long.parseLong(v)").append("); }\n");
+        }
+        case STRING, JSON_OBJECT -> {
+            b.append(get);
+            if (def.isPresent()) {
+                var defaultValue = def.content();
+                if (field.type() != FieldType.STRING
+                        && defaultValue.isBlank()) {
+                    defaultValue = "{}";
+                }
+                b.append("s.setString(").append(index).append(", v == null ? ").append(toLiteral(defaultValue))
+                        .append(" : v);\n");
+            } else {
+                b.append("s.setString(").append(index).append(", v);\n");
+            }
+        }
+        case UNIX_TIME -> {
+            if (def.isPresent() && !"now".equalsIgnoreCase(def.content())) {
+                appendFallback(b, k);
+                return;
+            }
+            b.append(get).append("if (v == null) { ");
+            if (def.isPresent()) {
+                b.append("s.setDouble(").append(index)
+                        .append(", com.github.fmjsjx.libcommon.util.DateTimeUtil.unixTimeWithMs());");
+            } else {
+                b.append("s.setObject(").append(index).append(", null);");
+            }
+            b.append(" } else { s.setDouble(").append(index).append(", Double.parseDouble(v)); }\n");
+        }
+        case DATE -> {
+            if (def.isPresent()) {
+                appendFallback(b, k);
+                return;
+            }
+            b.append(get).append("if (v == null) { s.setObject(").append(index).append(", null); } else { s.setDate(")
+                    .append(index).append(", java.sql.Date.valueOf(v)); }\n");
+        }
+        case DATETIME -> {
+            if (def.isPresent()) {
+                appendFallback(b, k);
+                return;
+            }
+            b.append(get).append("if (v == null) { s.setObject(").append(index)
+                    .append(", null); } else { s.setObject(").append(index)
+                    .append(", java.time.LocalDateTime.parse(v)); }\n");
+        }
+        default -> appendFallback(b, k);
+        }
+    }
+
+    private static final void appendFallback(StringBuilder b, int k) {
+        // each call site only sees one setter, so it still can be inlined
+        b.append("setters[").append(k).append("].setValue(s, i + ").append(k).append(", m);\n");
+    }
+
+    private static final String toLiteral(String value) {
+        var b = new StringBuilder(value.length() + 2).append('"');
+        for (var i = 0; i < value.length(); i++) {
+            var c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                b.append('\\').append(c);
+            } else if (c < 0x20) {
+                throw new IllegalArgumentException("unsupported control character in literal: " + value);
+            } else {
+                b.append(c);
+            }
+        }
+        return b.append('"').toString();
+    }
+
+    private RowBinderUtil() {
+    }
+
+}
@@ -0,0 +1,113 @@
+package com.github.fmjsjx.conveyor.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.github.fmjsjx.conveyor.config.OutputMysqlConfig;
+import com.github.fmjsjx.conveyor.config.OutputMysqlConfig.FieldConfig;
+import com.github.fmjsjx.conveyor.config.OutputMysqlConfig.WriteMode;
+import com.github.fmjsjx.conveyor.core.output.LoadDataMysqlOutput;
+import com.github.fmjsjx.conveyor.core.output.Output;
+import com.github.fmjsjx.conveyor.core.output.SimpleMysqlOutput;
+import com.github.fmjsjx.conveyor.service.DataSourceManager;
+
+/**
+ * Compares the multi-row INSERT mode, the JDBC batch mode and the LOAD DATA
+ * LOCAL INFILE mode.
+ * <p>
+ * Needs a running MySQL server, configured by system properties
+ * {@code benchmark.jdbc-url}, {@code benchmark.username} and
+ * {@code benchmark.password}.
+ * <p>
+ * No results are recorded here yet, run it against the target server before
+ * choosing a write mode:
+ *
+ * <pre>
+ * mvn -B test-compile dependency:build-classpath -Dmdep.outputFile=target/cp.txt
+ * java -cp target/test-classes:target/classes:$(cat target/cp.txt) \
+ *     -Dbenchmark.jdbc-url=jdbc:mysql://127.0.0.1:3306/test -Dbenchmark.username=root \
+ *     -Dbenchmark.password=*** com.github.fmjsjx.conveyor.benchmark.MysqlWriteModeBenchmark
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+public class MysqlWriteModeBenchmark {
+
+    private static final String TABLE = "tb_benchmark_log";
+
+    @Param({ "values", "batch", "load-data" })
+    private String writeMode;
+
+    @Param({ "200", "1000", "5000" })
+    private int rows;
+
+    private DataSourceManager dataSourceManager;
+    private Output output;
+    private List<Map<String, String>> batch;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        var jdbcUrl = System.getProperty("benchmark.jdbc-url", "jdbc:mysql://127.0.0.1:3306/test");
+        var username = System.getProperty("benchmark.username", "root");
+        var password = System.getProperty("benchmark.password", "");
+        var fields = List.of(new FieldConfig("u", "uid", "long", null),
+                new FieldConfig("pi", "product_id", "int", null), new FieldConfig("c", "channel", "string", null),
+                new FieldConfig("d", "device_id", "string", null), new FieldConfig("_d", "data", "string", null),
+                new FieldConfig("_t", "create_time", "unix_time", null));
+        var config = new OutputMysqlConfig(jdbcUrl, username, password, null, false, null, TABLE, "ignore",
+                writeMode, false, null, null, null, fields);
+        dataSourceManager = new DataSourceManager();
+        var dataSource = dataSourceManager.getDataSource(config);
+        try (var conn = dataSource.getConnection(); var statement = conn.createStatement()) {
+            statement.execute("CREATE TABLE IF NOT EXISTS `" + TABLE + "` (`id` BIGINT NOT NULL AUTO_INCREMENT, "
+                    + "`uid` BIGINT, `product_id` INT, `channel` VARCHAR(32), `device_id` VARCHAR(64), "
+                    + "`data` TEXT, `create_time` DATETIME(3), PRIMARY KEY (`id`))");
+            statement.execute("TRUNCATE TABLE `" + TABLE + "`");
+        }
+        output = config.writeMode() == WriteMode.LOAD_DATA ? new LoadDataMysqlOutput("benchmark", dataSource, config)
+                : new SimpleMysqlOutput("benchmark", dataSource, config);
+        batch = new ArrayList<>(rows);
+        for (var i = 0; i < rows; i++) {
+            batch.add(Map.of("u", String.valueOf(100000 + i), "pi", "1", "c", "official", "d",
+                    "device-" + i, "_d", "{\"item\":" + i + ",\"number\":10}", "_t", "1640995200.123"));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        output.close();
+        dataSourceManager.closeAll();
+    }
+
+    @Benchmark
+    public void push() throws Exception {
+        output.push(batch);
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder().include(MysqlWriteModeBenchmark.class.getSimpleName()).build()).run();
+    }
+
+}
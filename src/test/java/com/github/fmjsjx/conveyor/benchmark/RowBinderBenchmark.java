@@ -0,0 +1,90 @@
+package com.github.fmjsjx.conveyor.benchmark;
+
+import java.lang.reflect.Proxy;
+import java.sql.PreparedStatement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.github.fmjsjx.conveyor.config.OutputMysqlConfig.FieldConfig;
+import com.github.fmjsjx.conveyor.config.OutputMysqlConfig.RowBinder;
+import com.github.fmjsjx.conveyor.config.OutputMysqlConfig.ValueSetter;
+import com.github.fmjsjx.conveyor.util.RowBinderUtil;
+
+/**
+ * Compares binding rows by the list of {@link ValueSetter}s with the generated
+ * {@link RowBinder}.
+ * <p>
+ * The statement is a no-op proxy, both sides pay the same cost for it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 3)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class RowBinderBenchmark {
+
+    private List<ValueSetter> valueSetters;
+    private RowBinder rowBinder;
+    private PreparedStatement statement;
+    private List<Map<String, String>> batch;
+
+    @Setup
+    public void setup() {
+        var fields = List.of(new FieldConfig("u", "uid", "long", null), new FieldConfig("pi", "product_id", "int", null),
+                new FieldConfig("c", "channel", "string", null), new FieldConfig("ci", "channel_id", "int", "0"),
+                new FieldConfig("d", "device_id", "string", ""), new FieldConfig("_e", "event", "string", null),
+                new FieldConfig("_d", "data", "json_object", "{}"),
+                new FieldConfig("_t", "create_time", "unix_time", "now"));
+        valueSetters = fields.stream().map(FieldConfig::valueSetter).toList();
+        rowBinder = RowBinderUtil.generate(fields);
+        statement = (PreparedStatement) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[] { PreparedStatement.class }, (proxy, method, args) -> null);
+        batch = new ArrayList<>(1000);
+        for (var i = 0; i < 1000; i++) {
+            batch.add(Map.of("u", String.valueOf(100000 + i), "pi", "1", "c", "official", "ci", "10", "d",
+                    "device-" + i, "_e", "auth.login", "_d", "{}", "_t", "1640995200.123"));
+        }
+    }
+
+    @Benchmark
+    public void valueSetters(Blackhole bh) throws Exception {
+        var index = 1;
+        for (var values : batch) {
+            for (var setter : valueSetters) {
+                setter.setValue(statement, index++, values);
+            }
+        }
+        bh.consume(index);
+    }
+
+    @Benchmark
+    public void rowBinder(Blackhole bh) throws Exception {
+        var index = 1;
+        for (var values : batch) {
+            index = rowBinder.bind(statement, index, values);
+        }
+        bh.consume(index);
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder().include(RowBinderBenchmark.class.getSimpleName()).build()).run();
+    }
+
+}
@@ -0,0 +1,266 @@
+package com.github.fmjsjx.conveyor.core;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.github.fmjsjx.conveyor.core.input.Input;
+import com.github.fmjsjx.conveyor.core.output.CircuitBreaker;
+import com.github.fmjsjx.conveyor.core.output.CircuitBreaker.Permit;
+import com.github.fmjsjx.conveyor.core.output.Output;
+
+public class DefaultConveyorTest {
+
+    private static final class EmptyInput implements Input {
+
+        @Override
+        public List<Map<String, String>> fetch() {
+            return List.of();
+        }
+
+        @Override
+        public void close() {
+        }
+
+    }
+
+    // returns the queued batches one by one, then empty ones
+    private final class QueueInput implements Input {
+
+        private final ArrayDeque<List<Map<String, String>>> batches = new ArrayDeque<>();
+        private final List<List<Map<String, String>>> acked = new ArrayList<>();
+
+        @SafeVarargs
+        private QueueInput(List<Map<String, String>>... batches) {
+            this.batches.addAll(List.of(batches));
+        }
+
+        @Override
+        public synchronized List<Map<String, String>> fetch() {
+            var batch = batches.poll();
+            return batch == null ? List.of() : batch;
+        }
+
+        @Override
+        public synchronized void ack(List<Map<String, String>> batch) {
+            if (!batch.isEmpty()) {
+                acked.add(batch);
+                events.add("ack " + ids(batch));
+            }
+        }
+
+        @Override
+        public void close() {
+        }
+
+    }
+
+    // blocks in fetch until released
+    private static final class BlockingInput implements Input {
+
+        private final CountDownLatch fetching = new CountDownLatch(1);
+        private final CountDownLatch released = new CountDownLatch(1);
+
+        @Override
+        public List<Map<String, String>> fetch() {
+            fetching.countDown();
+            try {
+                released.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                // skip
+            }
+            return List.of();
+        }
+
+        @Override
+        public void close() {
+        }
+
+    }
+
+    // rows with `bad` are data errors, and the first push containing `r5` fails for a transient error
+    private final class FlakyOutput implements Output {
+
+        private final List<String> pushed = new ArrayList<>();
+        private final List<String> failed = new ArrayList<>();
+        private final CountDownLatch transientFailed = new CountDownLatch(1);
+        private final CountDownLatch drained = new CountDownLatch(1);
+        private final String last;
+        private volatile long drainedTime;
+
+        private FlakyOutput(String last) {
+            this.last = last;
+        }
+
+        @Override
+        public synchronized void push(List<Map<String, String>> batch) throws Exception {
+            var ids = ids(batch);
+            if (batch.stream().anyMatch(row -> row.containsKey("bad"))) {
+                throw new IllegalArgumentException("bad rows in " + ids);
+            }
+            if (ids.contains("r5") && transientFailed.getCount() > 0) {
+                events.add("fail " + ids);
+                transientFailed.countDown();
+                throw new IOException("connection lost");
+            }
+            pushed.addAll(ids);
+            events.add("push " + ids);
+            if (ids.contains(last)) {
+                drainedTime = System.nanoTime();
+                drained.countDown();
+            }
+        }
+
+        @Override
+        public synchronized void failed(List<Map<String, String>> batch) {
+            batch.forEach(row -> failed.add(row.get("id")));
+        }
+
+        @Override
+        public boolean isDataError(Throwable cause) {
+            return cause instanceof IllegalArgumentException;
+        }
+
+        @Override
+        public void close() {
+        }
+
+    }
+
+    @TempDir
+    Path dir;
+
+    // pushes and acknowledgements in order
+    private final List<String> events = Collections.synchronizedList(new ArrayList<>());
+
+    private static List<Map<String, String>> rows(int size) {
+        return IntStream.range(0, size)
+                .mapToObj(i -> i == 1 ? Map.of("id", "r" + i, "bad", "1") : Map.of("id", "r" + i)).toList();
+    }
+
+    // rows from `r{from}` to `r{to - 1}`, without bad ones
+    private static List<Map<String, String>> batch(int from, int to) {
+        return IntStream.range(from, to).mapToObj(i -> Map.of("id", "r" + i)).toList();
+    }
+
+    private static List<String> ids(List<Map<String, String>> batch) {
+        return batch.stream().map(row -> row.get("id")).toList();
+    }
+
+    private static void run(DefaultConveyor conveyor, CountDownLatch until) throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            conveyor.startup(executor);
+            assertTrue(until.await(5, TimeUnit.SECONDS));
+            conveyor.shutdown().get(5, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testDrainSpillWithTransientFailure() throws Exception {
+        try (var spill = SpillStore.open(dir, 4096)) {
+            spill.append(rows(8));
+        }
+        var output = new FlakyOutput("r7");
+        // r1 is isolated, r0, r2 and r3 are pushed, then the half from r4 fails for a transient error
+        run(new DefaultConveyor("test", new EmptyInput(), output).spill(dir, 4096), output.transientFailed);
+        assertEquals(List.of("r0", "r2", "r3"), output.pushed);
+        assertEquals(List.of("r1"), output.failed);
+        try (var spill = SpillStore.open(dir, 4096)) {
+            assertEquals(1, spill.size());
+            assertEquals(4, spill.rows());
+        }
+        // only the rest is pushed after restarted
+        run(new DefaultConveyor("test", new EmptyInput(), output).spill(dir, 4096), output.drained);
+        assertEquals(List.of("r0", "r2", "r3", "r4", "r5", "r6", "r7"), output.pushed);
+        assertEquals(List.of("r1"), output.failed);
+        try (var spill = SpillStore.open(dir, 4096)) {
+            assertTrue(spill.isEmpty());
+        }
+    }
+
+    @Test
+    public void testFetchWithoutProbe() throws Exception {
+        var breaker = new CircuitBreaker("test", 1, 50);
+        breaker.onFailure();
+        Thread.sleep(70);
+        var input = new BlockingInput();
+        var conveyor = new DefaultConveyor("test", input, new FlakyOutput("r0")).circuitBreaker(breaker);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            conveyor.startup(executor);
+            assertTrue(input.fetching.await(5, TimeUnit.SECONDS));
+            // the half-open breaker is not held by the conveyor waiting on input
+            assertEquals(Permit.PROBE, breaker.tryAcquire());
+            breaker.onSuccess();
+            input.released.countDown();
+            conveyor.shutdown().get(5, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testBadRowsNotCountedAsPushed() throws Exception {
+        var output = new FlakyOutput("r7");
+        // no transient failure
+        output.transientFailed.countDown();
+        var conveyor = new DefaultConveyor("test", new QueueInput(rows(8)), output);
+        run(conveyor, output.drained);
+        assertEquals(List.of("r0", "r2", "r3", "r4", "r5", "r6", "r7"), output.pushed);
+        assertEquals(List.of("r1"), output.failed);
+        assertEquals(7, conveyor.metrics().rows());
+        assertEquals(1, conveyor.metrics().failedRows());
+    }
+
+    @Test
+    public void testLingerFlushOnSize() throws Exception {
+        var output = new FlakyOutput("r7");
+        output.transientFailed.countDown();
+        var input = new QueueInput(batch(0, 2), batch(2, 4), batch(4, 6), batch(6, 8));
+        // never flushed on time
+        run(new DefaultConveyor("test", input, output).linger(4, 60_000), output.drained);
+        // only the last batch of each flush is acknowledged, after it is pushed
+        assertEquals(List.of("push [r0, r1, r2, r3]", "ack [r2, r3]", "push [r4, r5, r6, r7]", "ack [r6, r7]"),
+                events);
+    }
+
+    @Test
+    public void testLingerFlushOnTime() throws Exception {
+        var output = new FlakyOutput("r1");
+        output.transientFailed.countDown();
+        var input = new QueueInput(batch(0, 2));
+        var startTime = System.nanoTime();
+        // never flushed on size
+        run(new DefaultConveyor("test", input, output).linger(100, 50), output.drained);
+        assertTrue(output.drainedTime - startTime >= TimeUnit.MILLISECONDS.toNanos(50));
+        assertEquals(List.of("push [r0, r1]", "ack [r0, r1]"), events);
+    }
+
+    @Test
+    public void testLingerAckAfterPush() throws Exception {
+        var output = new FlakyOutput("r7");
+        var input = new QueueInput(batch(4, 6), batch(6, 8));
+        run(new DefaultConveyor("test", input, output).linger(4, 60_000), output.drained);
+        // nothing is acknowledged before the flushed batch is pushed
+        assertEquals(List.of("fail [r4, r5, r6, r7]", "push [r4, r5, r6, r7]", "ack [r6, r7]"), events);
+    }
+
+}
@@ -0,0 +1,66 @@
+package com.github.fmjsjx.conveyor.core;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+import com.github.fmjsjx.conveyor.config.RetryConfig;
+
+public class RetryPolicyTest {
+
+    private static final int SAMPLES = 10_000;
+
+    // returns the max delay of the samples, all samples must be in [0, ceiling]
+    private static long maxDelay(RetryPolicy policy, int retryCount, long ceiling) {
+        var max = 0L;
+        for (var i = 0; i < SAMPLES; i++) {
+            var delay = policy.delay(retryCount);
+            assertTrue(delay >= 0 && delay <= ceiling, retryCount + ": " + delay);
+            max = Math.max(max, delay);
+        }
+        return max;
+    }
+
+    @Test
+    public void testExponentialCeiling() {
+        var policy = new RetryPolicy(100, 1_000);
+        assertTrue(maxDelay(policy, 0, 100) > 50);
+        assertTrue(maxDelay(policy, 1, 200) > 100);
+        assertTrue(maxDelay(policy, 2, 400) > 200);
+        assertTrue(maxDelay(policy, 3, 800) > 400);
+        // limited by the max delay
+        assertTrue(maxDelay(policy, 4, 1_000) > 800);
+        assertTrue(maxDelay(policy, 30, 1_000) > 800);
+    }
+
+    @Test
+    public void testJitter() {
+        var policy = new RetryPolicy(100, 1_000);
+        // full jitter, delays spread over the whole range
+        var low = 0;
+        for (var i = 0; i < SAMPLES; i++) {
+            if (policy.delay(10) < 500) {
+                low++;
+            }
+        }
+        assertTrue(low > SAMPLES / 4 && low < SAMPLES * 3 / 4, String.valueOf(low));
+    }
+
+    @Test
+    public void testLargeRetryCount() {
+        var policy = new RetryPolicy(500, Long.MAX_VALUE);
+        // the shift is bounded, never overflows
+        maxDelay(policy, 63, 500L << 20);
+        maxDelay(policy, Integer.MAX_VALUE, 500L << 20);
+    }
+
+    @Test
+    public void testFromConfig() {
+        assertEquals("RetryPolicy(baseDelay=500, maxDelay=30000)", RetryPolicy.DEFAULT.toString());
+        var policy = RetryPolicy.fromConfig(new RetryConfig(10L, 20L, null, null));
+        assertEquals("RetryPolicy(baseDelay=10, maxDelay=20)", policy.toString());
+        maxDelay(policy, 5, 20);
+    }
+
+}
@@ -0,0 +1,226 @@
+package com.github.fmjsjx.conveyor.core;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class SpillStoreTest {
+
+    private static final int SEGMENT_SIZE = 256;
+
+    @TempDir
+    Path tempDir;
+    Path dir;
+
+    @BeforeEach
+    public void setUp() {
+        dir = tempDir.resolve("spill");
+    }
+
+    private static List<Map<String, String>> batch(int id, int size) {
+        var batch = new ArrayList<Map<String, String>>(size);
+        for (var i = 0; i < size; i++) {
+            var row = new HashMap<String, String>();
+            row.put("id", id + "-" + i);
+            row.put("data", "{\"k\":\"\u8bbe\"}");
+            row.put("empty", null);
+            batch.add(row);
+        }
+        return batch;
+    }
+
+    private static List<Path> segments(Path dir) throws IOException {
+        try (var files = Files.list(dir)) {
+            return files.filter(p -> p.toString().endsWith(".seg")).sorted().toList();
+        }
+    }
+
+    // copies the files as they are on disk, like the process was killed without closing the store
+    private static Path crash(Path dir) throws IOException {
+        var copy = Files.createDirectory(dir.resolveSibling("crash"));
+        try (var files = Files.list(dir)) {
+            for (var file : files.toList()) {
+                Files.copy(file, copy.resolve(file.getFileName()));
+            }
+        }
+        return copy;
+    }
+
+    private static void drain(SpillStore store, List<List<Map<String, String>>> expected) throws IOException {
+        for (var batch : expected) {
+            assertEquals(batch, store.peek());
+            store.remove();
+        }
+        assertTrue(store.isEmpty());
+        assertNull(store.peek());
+    }
+
+    @Test
+    public void testAppendAcrossSegments() throws IOException {
+        var batches = new ArrayList<List<Map<String, String>>>();
+        try (var store = SpillStore.open(dir, SEGMENT_SIZE)) {
+            assertTrue(store.isEmpty());
+            assertNull(store.peek());
+            for (var i = 0; i < 10; i++) {
+                var batch = batch(i, 1 + i % 3);
+                store.append(batch);
+                batches.add(batch);
+            }
+            assertEquals(10, store.size());
+            assertEquals(19, store.rows());
+            assertTrue(segments(dir).size() > 1);
+            var head = store.peek();
+            assertEquals(batches.get(0), head);
+            // peek again without remove returns the same batch
+            assertSame(head, store.peek());
+            store.remove();
+            assertEquals(9, store.size());
+            assertEquals(18, store.rows());
+            assertThrows(IllegalStateException.class, store::remove);
+            drain(store, batches.subList(1, batches.size()));
+            assertEquals(0, store.rows());
+            // segments read through are deleted
+            assertEquals(1, segments(dir).size());
+            // appending after drained
+            store.append(batches.get(3));
+            assertEquals(batches.get(3), store.peek());
+        }
+    }
+
+    @Test
+    public void testRecordLargerThanSegment() throws IOException {
+        try (var store = SpillStore.open(dir, SEGMENT_SIZE)) {
+            var small = batch(0, 1);
+            var large = batch(1, 50);
+            store.append(small);
+            store.append(large);
+            store.append(small);
+            assertEquals(3, store.size());
+            drain(store, List.of(small, large, small));
+        }
+    }
+
+    @Test
+    public void testReopen() throws IOException {
+        var batches = List.of(batch(0, 2), batch(1, 1), batch(2, 3), batch(3, 2), batch(4, 1));
+        try (var store = SpillStore.open(dir, SEGMENT_SIZE)) {
+            assertThrows(IOException.class, () -> SpillStore.open(dir, SEGMENT_SIZE));
+            for (var batch : batches) {
+                store.append(batch);
+            }
+            store.peek();
+            store.remove();
+        }
+        try (var store = SpillStore.open(dir, SEGMENT_SIZE)) {
+            assertEquals(4, store.size());
+            assertEquals(7, store.rows());
+            drain(store, batches.subList(1, batches.size()));
+        }
+    }
+
+    @Test
+    public void testReopenAfterCrash() throws IOException {
+        var batches = List.of(batch(0, 2), batch(1, 1), batch(2, 3), batch(3, 2), batch(4, 1));
+        Path crashed;
+        try (var store = SpillStore.open(dir, SEGMENT_SIZE)) {
+            for (var batch : batches) {
+                store.append(batch);
+            }
+            store.peek();
+            store.remove();
+            store.peek();
+            store.remove();
+            crashed = crash(dir);
+        }
+        try (var store = SpillStore.open(crashed, SEGMENT_SIZE)) {
+            assertEquals(3, store.size());
+            assertEquals(6, store.rows());
+            // new batches follow the recovered ones
+            var batch = batch(5, 1);
+            store.append(batch);
+            drain(store, List.of(batches.get(2), batches.get(3), batches.get(4), batch));
+        }
+    }
+
+    @Test
+    public void testBrokenTailRecord() throws IOException {
+        var batches = List.of(batch(0, 1), batch(1, 1), batch(2, 1));
+        try (var store = SpillStore.open(dir, 4096)) {
+            for (var batch : batches) {
+                store.append(batch);
+            }
+        }
+        var segment = segments(dir).get(0);
+        try (var channel = FileChannel.open(segment, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            var header = ByteBuffer.allocate(4);
+            channel.read(header, 0);
+            var second = 12 + header.getInt(0);
+            channel.read(header.clear(), second);
+            var third = second + 12 + header.getInt(0);
+            // a payload byte of the last record is not the same as its CRC
+            var b = ByteBuffer.allocate(1);
+            channel.read(b, third + 20);
+            b.put(0, (byte) ~b.get(0));
+            channel.write(b.flip(), third + 20);
+        }
+        try (var store = SpillStore.open(dir, 4096)) {
+            assertEquals(2, store.size());
+            assertEquals(2, store.rows());
+            // the broken record is truncated, and overwritten by the next append
+            var batch = batch(3, 2);
+            store.append(batch);
+            assertEquals(3, store.size());
+        }
+        try (var store = SpillStore.open(dir, 4096)) {
+            assertEquals(3, store.size());
+            drain(store, List.of(batches.get(0), batches.get(1), batch(3, 2)));
+        }
+    }
+
+    @Test
+    public void testSkip() throws IOException {
+        var batches = List.of(batch(0, 5), batch(1, 2));
+        try (var store = SpillStore.open(dir, SEGMENT_SIZE)) {
+            assertThrows(IllegalStateException.class, () -> store.skip(1));
+            for (var batch : batches) {
+                store.append(batch);
+            }
+            assertEquals(batches.get(0), store.peek());
+            store.skip(2);
+            assertEquals(2, store.size());
+            assertEquals(5, store.rows());
+            assertEquals(batches.get(0).subList(2, 5), store.peek());
+            store.skip(1);
+            assertEquals(batches.get(0).subList(3, 5), store.peek());
+        }
+        // skipped rows are kept in the checkpoint
+        try (var store = SpillStore.open(dir, SEGMENT_SIZE)) {
+            assertEquals(2, store.size());
+            assertEquals(4, store.rows());
+            assertEquals(batches.get(0).subList(3, 5), store.peek());
+            // skipping all rows removes the batch
+            store.skip(2);
+            assertEquals(1, store.size());
+            assertEquals(2, store.rows());
+            drain(store, batches.subList(1, 2));
+        }
+    }
+
+}
@@ -0,0 +1,105 @@
+package com.github.fmjsjx.conveyor.core.input;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import com.github.fmjsjx.conveyor.config.InputRedisConfig.AdaptiveBatchConfig;
+
+public class BatchSizeControllerTest {
+
+    private static final long MILLIS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private static BatchSizeController adaptive(int initial) {
+        // 10 ~ 1000 rows, target 200ms
+        return new BatchSizeController(initial, new AdaptiveBatchConfig(10, 1000, 200L));
+    }
+
+    @Test
+    public void testFixed() {
+        var controller = new BatchSizeController(100);
+        assertFalse(controller.adaptive());
+        controller.onFetched(100, 100);
+        assertFalse(controller.shouldSampleBacklog());
+        controller.onPushed(100, 10 * MILLIS);
+        assertEquals(100, controller.current());
+        controller.onPushed(100, 1000 * MILLIS);
+        assertEquals(100, controller.current());
+    }
+
+    @Test
+    public void testInitialClamped() {
+        assertEquals(10, adaptive(1).current());
+        assertEquals(1000, adaptive(5000).current());
+        assertEquals(100, adaptive(100).current());
+    }
+
+    @Test
+    public void testGrowWhenFull() {
+        var controller = adaptive(100);
+        controller.onFetched(100, 100);
+        // 0.1ms per row, so 2000 rows fit in the target latency, but grows at most 2 times each step
+        controller.onPushed(100, 10 * MILLIS);
+        assertEquals(200, controller.current());
+        controller.onFetched(200, 200);
+        controller.onPushed(200, 20 * MILLIS);
+        assertEquals(400, controller.current());
+        controller.onFetched(400, 400);
+        controller.onPushed(400, 40 * MILLIS);
+        assertEquals(800, controller.current());
+        controller.onFetched(800, 800);
+        controller.onPushed(800, 80 * MILLIS);
+        assertEquals(1000, controller.current());
+    }
+
+    @Test
+    public void testGrowOnBacklog() {
+        var controller = adaptive(100);
+        controller.onFetched(60, 100);
+        controller.onPushed(60, 6 * MILLIS);
+        // not full and nothing is piling up
+        assertEquals(100, controller.current());
+        controller.onBacklog(500);
+        controller.onPushed(60, 6 * MILLIS);
+        assertEquals(200, controller.current());
+    }
+
+    @Test
+    public void testShrinkWhenSlow() {
+        var controller = adaptive(400);
+        controller.onFetched(400, 400);
+        // 1ms per row, 200 rows fit in the target latency
+        controller.onPushed(400, 400 * MILLIS);
+        assertEquals(200, controller.current());
+        // never shrinks below min
+        for (var i = 0; i < 20; i++) {
+            controller.onPushed(controller.current(), 10_000 * MILLIS);
+        }
+        assertEquals(10, controller.current());
+    }
+
+    @Test
+    public void testSmallBatchesIgnored() {
+        var controller = adaptive(100);
+        controller.onFetched(100, 100);
+        // too small to tell the cost per row
+        controller.onPushed(10, 1000 * MILLIS);
+        assertEquals(100, controller.current());
+    }
+
+    @Test
+    public void testShouldSampleBacklog() {
+        var controller = adaptive(100);
+        controller.onFetched(50, 100);
+        assertFalse(controller.shouldSampleBacklog());
+        controller.onFetched(100, 100);
+        assertTrue(controller.shouldSampleBacklog());
+        // at most once per second
+        assertFalse(controller.shouldSampleBacklog());
+    }
+
+}
@@ -0,0 +1,41 @@
+package com.github.fmjsjx.conveyor.core.input;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import io.lettuce.core.RedisFuture;
+
+// reply of a fake REDIS command, completed by the test
+final class FakeRedisFuture<T> extends CompletableFuture<T> implements RedisFuture<T> {
+
+    static <T> FakeRedisFuture<T> completed(T value) {
+        var future = new FakeRedisFuture<T>();
+        future.complete(value);
+        return future;
+    }
+
+    @Override
+    public String getError() {
+        try {
+            getNow(null);
+            return null;
+        } catch (Exception e) {
+            return e.getCause() == null ? e.getMessage() : e.getCause().getMessage();
+        }
+    }
+
+    @Override
+    public boolean await(long timeout, TimeUnit unit) throws InterruptedException {
+        try {
+            get(timeout, unit);
+        } catch (ExecutionException e) {
+            // completed with error
+        } catch (TimeoutException e) {
+            return false;
+        }
+        return true;
+    }
+
+}
@@ -0,0 +1,97 @@
+package com.github.fmjsjx.conveyor.core.input;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+public class FieldBatchTest {
+
+    private static final RecordSchema SCHEMA = RecordSchema.of(List.of("u", "c", "_d", "_t", "ok"));
+
+    private static FieldBatch parse(String... values) {
+        return FieldBatch.parse(SCHEMA, List.of(values).stream().map(v -> v.getBytes(StandardCharsets.UTF_8))
+                .toList());
+    }
+
+    @Test
+    public void testSchema() {
+        var schema = RecordSchema.of(List.of("a", "b", "a", "c"));
+        assertEquals(3, schema.size());
+        assertEquals("a", schema.name(0));
+        assertEquals("c", schema.name(2));
+        assertEquals(1, schema.indexOf("b"));
+        assertEquals(-1, schema.indexOf("d"));
+        assertEquals(-1, schema.indexOf(null));
+        assertEquals("RecordSchema(a,b,c)", schema.toString());
+    }
+
+    @Test
+    public void testParse() {
+        var batch = parse("{\"u\":123,\"x\":{\"y\":[1,{\"u\":9}]},\"c\":\"official\",\"_d\":{\"item\":1},"
+                + "\"z\":[\"u\"],\"_t\":1640995200.5,\"ok\":true,\"n\":null}");
+        assertSame(SCHEMA, batch.schema());
+        assertEquals(1, batch.size());
+        var row = batch.get(0);
+        assertEquals("123", row.get("u"));
+        assertEquals("official", row.get("c"));
+        // objects and numbers are kept as the raw JSON text
+        assertEquals("{\"item\":1}", row.get("_d"));
+        assertEquals("1640995200.5", row.get("_t"));
+        assertEquals("true", row.get("ok"));
+        // unknown fields are skipped, even nested ones with the same name
+        assertNull(row.get("x"));
+        assertFalse(row.containsKey("z"));
+        assertEquals(Map.of("u", "123", "c", "official", "_d", "{\"item\":1}", "_t", "1640995200.5", "ok", "true"),
+                row);
+    }
+
+    @Test
+    public void testMissingAndNull() {
+        var batch = parse("{\"u\":1,\"c\":null}", "{}", "{\"c\":\"a\\t\\u8bbe\\\"b\"}");
+        assertEquals(3, batch.size());
+        // null values are absent, same as missing fields
+        assertEquals(Map.of("u", "1"), batch.get(0));
+        assertFalse(batch.get(0).containsKey("c"));
+        assertEquals(1, batch.get(0).size());
+        assertEquals(Map.of(), batch.get(1));
+        assertTrue(batch.get(1).isEmpty());
+        assertEquals(Map.of("c", "a\t\u8bbe\"b"), batch.get(2));
+    }
+
+    @Test
+    public void testBrokenRecords() {
+        var batch = parse("{\"u\":1}", "{\"u\":2,\"c\":", "[1,2]", "not json", "{\"u\":3,\"c\":\"x\"}");
+        // broken records are dropped, and leave nothing in the next row
+        assertEquals(2, batch.size());
+        assertEquals(Map.of("u", "1"), batch.get(0));
+        assertEquals(Map.of("u", "3", "c", "x"), batch.get(1));
+        assertThrows(IndexOutOfBoundsException.class, () -> batch.get(2));
+        assertThrows(IndexOutOfBoundsException.class, () -> batch.get(-1));
+    }
+
+    @Test
+    public void testMapView() {
+        var cells = new String[] { "2", null, null, "1", "false", "3", "x", null, null, null };
+        var batch = new FieldBatch(SCHEMA, cells, 2);
+        assertEquals(2, batch.size());
+        assertEquals(Map.of("u", "3", "c", "x"), batch.get(1));
+        var row = batch.get(0);
+        // entries are in schema order
+        assertEquals(List.of("u", "_t", "ok"), List.copyOf(row.keySet()));
+        assertEquals(new HashMap<>(row), row);
+        assertEquals(Map.of("u", "2", "_t", "1", "ok", "false").hashCode(), row.hashCode());
+        assertThrows(UnsupportedOperationException.class, () -> row.put("c", "x"));
+        assertTrue(new FieldBatch(SCHEMA, new String[0], 0).isEmpty());
+    }
+
+}
@@ -0,0 +1,229 @@
+package com.github.fmjsjx.conveyor.core.input;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiFunction;
+
+import org.junit.jupiter.api.Test;
+
+import io.lettuce.core.RedisCommandExecutionException;
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.api.async.RedisAsyncCommands;
+import io.lettuce.core.api.sync.RedisCommands;
+
+public class RedisListInputTest {
+
+    private static final String KEY = "test:list";
+    private static final String PROCESSING_KEY = "test:processing";
+
+    // lists on the async commands, commands are applied and replied at once in the order they are issued
+    private static final class FakeRedis {
+
+        private final Map<String, LinkedList<byte[]>> lists = new HashMap<>();
+        private final Map<String, Integer> calls = new HashMap<>();
+        // the n-th call of a command fails, after it is applied if true, like a reply lost on a broken connection
+        private final Map<String, Boolean> failures = new HashMap<>();
+
+        private void fail(String command, int call, boolean applied) {
+            failures.put(command + "#" + call, applied);
+        }
+
+        private LinkedList<byte[]> list(Object key) {
+            return lists.computeIfAbsent((String) key, k -> new LinkedList<>());
+        }
+
+        // LPUSH by producers, the first one is popped first
+        private void push(String key, String... ids) {
+            for (var id : ids) {
+                list(key).addFirst(("{\"id\":\"" + id + "\"}").getBytes(StandardCharsets.UTF_8));
+            }
+        }
+
+        // ids in the list, the oldest one at the right end first
+        private List<String> ids(String key) {
+            var ids = new ArrayList<String>();
+            list(key).descendingIterator().forEachRemaining(value -> ids.add(id(value)));
+            return ids;
+        }
+
+        private static String id(byte[] value) {
+            var json = new String(value, StandardCharsets.UTF_8);
+            return json.substring("{\"id\":\"".length(), json.length() - 2);
+        }
+
+        private RedisListInput input(int batch) {
+            return new RedisListInput("test", this::connection, KEY, PROCESSING_KEY, Runnable::run,
+                    new BatchSizeController(batch));
+        }
+
+        private StatefulRedisConnection<String, byte[]> connection() {
+            RedisAsyncCommands<String, byte[]> async = proxy(RedisAsyncCommands.class, this::async);
+            RedisCommands<String, byte[]> sync = proxy(RedisCommands.class, (method, args) -> switch (method) {
+            case "info" -> "# Server\r\nredis_version:7.0.0\r\n";
+            case "llen" -> (long) list(args[0]).size();
+            default -> throw new UnsupportedOperationException(method);
+            });
+            return proxy(StatefulRedisConnection.class, (method, args) -> switch (method) {
+            case "async" -> async;
+            case "sync" -> sync;
+            default -> null;
+            });
+        }
+
+        private FakeRedisFuture<Object> async(String method, Object[] args) {
+            var call = calls.merge(method, 1, Integer::sum);
+            var applied = failures.get(method + "#" + call);
+            var future = new FakeRedisFuture<Object>();
+            if (Boolean.FALSE.equals(applied)) {
+                future.completeExceptionally(new RedisCommandExecutionException("ERR " + method + " failed"));
+                return future;
+            }
+            var result = execute(method, args);
+            if (Boolean.TRUE.equals(applied)) {
+                future.completeExceptionally(new RedisCommandExecutionException("ERR " + method + " reply lost"));
+            } else {
+                future.complete(result);
+            }
+            return future;
+        }
+
+        private Object execute(String method, Object[] args) {
+            var list = list(args[0]);
+            switch (method) {
+            case "lmove":
+                // RIGHT LEFT
+                if (list.isEmpty()) {
+                    return null;
+                }
+                var value = list.removeLast();
+                list(args[1]).addFirst(value);
+                return value;
+            case "llen":
+                return (long) list.size();
+            case "ltrim":
+                var kept = new ArrayList<>(range(list, (Long) args[1], (Long) args[2]));
+                list.clear();
+                list.addAll(kept);
+                return "OK";
+            case "lrange":
+                return new ArrayList<>(range(list, (Long) args[1], (Long) args[2]));
+            default:
+                throw new UnsupportedOperationException(method);
+            }
+        }
+
+        private static List<byte[]> range(List<byte[]> list, long start, long stop) {
+            var size = list.size();
+            var from = Math.max(0, start < 0 ? size + start : start);
+            var to = Math.min(size - 1, stop < 0 ? size + stop : stop);
+            return from > to ? List.of() : list.subList((int) from, (int) to + 1);
+        }
+
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<?> type, BiFunction<String, Object[], Object> handler) {
+        return (T) Proxy.newProxyInstance(RedisListInputTest.class.getClassLoader(), new Class<?>[] { type },
+                (proxy, method, args) -> handler.apply(method.getName(), args));
+    }
+
+    private static List<String> ids(List<Map<String, String>> batch) {
+        return batch.stream().map(row -> row.get("id")).toList();
+    }
+
+    @Test
+    public void testFailedMoveInPipeline() {
+        var redis = new FakeRedis();
+        redis.push(KEY, "1", "2", "3", "4", "5", "6", "7", "8", "9", "10");
+        // the second move of the pipeline is applied, but its reply is lost
+        redis.fail("lmove", 2, true);
+        var input = redis.input(4);
+        assertThrows(RedisCommandExecutionException.class, input::poll);
+        // moved by the whole pipeline, but none of them is returned
+        assertEquals(List.of("1", "2", "3", "4"), redis.ids(PROCESSING_KEY));
+        // records were moved after the failure, positions are unknown, so the whole list is replayed in order
+        var replayed = input.poll();
+        assertEquals(List.of("1", "2", "3", "4"), ids(replayed));
+        input.ack(replayed);
+        assertEquals(List.of(), redis.ids(PROCESSING_KEY));
+        var batch = input.poll();
+        assertEquals(List.of("5", "6", "7", "8"), ids(batch));
+        input.ack(batch);
+        assertEquals(List.of(), redis.ids(PROCESSING_KEY));
+        assertEquals(List.of("9", "10"), redis.ids(KEY));
+    }
+
+    @Test
+    public void testFailedLastMove() {
+        var redis = new FakeRedis();
+        redis.push(KEY, "1", "2", "3", "4", "5", "6", "7", "8");
+        redis.fail("lmove", 8, true);
+        var input = redis.input(4);
+        var first = input.poll();
+        assertEquals(List.of("1", "2", "3", "4"), ids(first));
+        assertThrows(RedisCommandExecutionException.class, input::poll);
+        assertEquals(List.of("1", "2", "3", "4", "5", "6", "7", "8"), redis.ids(PROCESSING_KEY));
+        // nothing was moved after the failure, only the newest records are replayed
+        var replayed = input.poll();
+        assertEquals(List.of("5", "6", "7", "8"), ids(replayed));
+        input.ack(replayed);
+        assertEquals(List.of(), redis.ids(PROCESSING_KEY));
+    }
+
+    @Test
+    public void testFailedTrimThenResync() {
+        var redis = new FakeRedis();
+        redis.push(KEY, "1", "2", "3", "4", "5", "6", "7", "8", "9", "10", "11", "12");
+        // the first trim is not applied, the third one is applied but its reply is lost
+        redis.fail("ltrim", 1, false);
+        redis.fail("ltrim", 3, true);
+        var input = redis.input(4);
+        var first = input.poll();
+        assertEquals(List.of("1", "2", "3", "4"), ids(first));
+        input.ack(first);
+        assertEquals(List.of("1", "2", "3", "4"), redis.ids(PROCESSING_KEY));
+        // trimmed again on resync, never replayed
+        var second = input.poll();
+        assertEquals(List.of("5", "6", "7", "8"), ids(second));
+        assertEquals(List.of("5", "6", "7", "8"), redis.ids(PROCESSING_KEY));
+        input.ack(second);
+        assertEquals(List.of(), redis.ids(PROCESSING_KEY));
+        // nothing lost on resync
+        var third = input.poll();
+        assertEquals(List.of("9", "10", "11", "12"), ids(third));
+        input.ack(third);
+        assertEquals(List.of(), redis.ids(PROCESSING_KEY));
+        assertEquals(List.of(), redis.ids(KEY));
+    }
+
+    @Test
+    public void testReplayProcessingList() {
+        var redis = new FakeRedis();
+        // left by the last run
+        redis.push(PROCESSING_KEY, "1", "2", "3");
+        redis.push(KEY, "4", "5", "6");
+        var input = redis.input(2);
+        var first = input.poll();
+        assertEquals(List.of("1", "2"), ids(first));
+        input.ack(first);
+        assertEquals(List.of("3"), redis.ids(PROCESSING_KEY));
+        var second = input.poll();
+        assertEquals(List.of("3"), ids(second));
+        var third = input.poll();
+        assertEquals(List.of("4", "5"), ids(third));
+        assertEquals(List.of("3", "4", "5"), redis.ids(PROCESSING_KEY));
+        // acknowledges the batches fetched before too
+        input.ack(third);
+        assertEquals(List.of(), redis.ids(PROCESSING_KEY));
+        assertEquals(List.of("6"), redis.ids(KEY));
+    }
+
+}
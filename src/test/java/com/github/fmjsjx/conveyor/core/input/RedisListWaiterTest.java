@@ -0,0 +1,144 @@
+package com.github.fmjsjx.conveyor.core.input;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletionException;
+
+import org.junit.jupiter.api.Test;
+
+import io.lettuce.core.KeyValue;
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.api.async.RedisAsyncCommands;
+
+public class RedisListWaiterTest {
+
+    private record Call(String command, Object[] args, FakeRedisFuture<Object> reply) {
+    }
+
+    // records the commands, replies are completed by the test
+    private static final class FakeConnection {
+
+        private final List<Call> calls = new ArrayList<>();
+        private boolean closed;
+
+        @SuppressWarnings("unchecked")
+        private <V> StatefulRedisConnection<String, V> connection() {
+            var async = Proxy.newProxyInstance(getClass().getClassLoader(),
+                    new Class<?>[] { RedisAsyncCommands.class }, (proxy, method, args) -> {
+                        var call = new Call(method.getName(), args, new FakeRedisFuture<>());
+                        calls.add(call);
+                        return call.reply;
+                    });
+            return (StatefulRedisConnection<String, V>) Proxy.newProxyInstance(getClass().getClassLoader(),
+                    new Class<?>[] { StatefulRedisConnection.class }, (proxy, method, args) -> {
+                        switch (method.getName()) {
+                        case "async":
+                            return async;
+                        case "close":
+                            closed = true;
+                            return null;
+                        default:
+                            return null;
+                        }
+                    });
+        }
+
+        private List<String> commands() {
+            return calls.stream().map(Call::command).toList();
+        }
+
+        private Call call(int index) {
+            return calls.get(index);
+        }
+
+        private void reply(int index, Object value) {
+            calls.get(index).reply.complete(value);
+        }
+
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    // keys of the BRPOP
+    private static Set<Object> keys(Call call) {
+        return Set.of((Object[]) call.args[1]);
+    }
+
+    @Test
+    public void testAddKeyBeforeClientIdReplied() {
+        var blocking = new FakeConnection();
+        var control = new FakeConnection();
+        var waiter = new RedisListWaiter("test", blocking::connection, control::connection);
+        var first = waiter.await("k1", 10).toCompletableFuture();
+        assertEquals(List.of("clientId", "brpop"), blocking.commands());
+        assertEquals(Set.of("k1"), keys(blocking.call(1)));
+        // the ID is not replied yet, CLIENT UNBLOCK is sent after it
+        var second = waiter.await("k2", 10).toCompletableFuture();
+        assertEquals(List.of(), control.commands());
+        blocking.reply(0, 42L);
+        assertEquals(List.of("clientUnblock"), control.commands());
+        assertEquals(42L, control.call(0).args[0]);
+        control.reply(0, 1L);
+        // unblocked as timed out, then issued again with both keys on the same connection
+        blocking.reply(1, null);
+        assertEquals(List.of("clientId", "brpop", "brpop"), blocking.commands());
+        assertEquals(Set.of("k1", "k2"), keys(blocking.call(2)));
+        blocking.reply(2, KeyValue.just("k2", bytes("v2")));
+        assertEquals("v2", new String(second.join(), StandardCharsets.UTF_8));
+        assertFalse(first.isDone());
+        assertEquals(Set.of("k1"), keys(blocking.call(3)));
+        // the ID is known now, a new key unblocks at once
+        waiter.await("k3", 10);
+        assertEquals(List.of("clientUnblock", "clientUnblock"), control.commands());
+        assertEquals(42L, control.call(1).args[0]);
+    }
+
+    @Test
+    public void testCloseWhilePopInFlight() {
+        var blocking = new FakeConnection();
+        var control = new FakeConnection();
+        var waiter = new RedisListWaiter("test", blocking::connection, control::connection);
+        var future = waiter.await("k1", 10).toCompletableFuture();
+        blocking.reply(0, 7L);
+        // the last input is closed, the connection is kept until the pop returned
+        waiter.close();
+        assertEquals(List.of("clientUnblock"), control.commands());
+        assertFalse(blocking.closed);
+        // a value was popped before it is unblocked, it is pushed back to where it was
+        blocking.reply(1, KeyValue.just("k1", bytes("v1")));
+        assertTrue(future.isCompletedExceptionally());
+        assertEquals(List.of("clientId", "brpop", "rpush"), blocking.commands());
+        var push = blocking.call(2);
+        assertEquals("k1", push.args[0]);
+        assertEquals("v1", new String(((byte[][]) push.args[1])[0], StandardCharsets.UTF_8));
+        assertFalse(blocking.closed);
+        blocking.reply(2, 1L);
+        assertTrue(blocking.closed);
+        assertThrows(CompletionException.class, () -> waiter.await("k1", 10).toCompletableFuture().join());
+    }
+
+    @Test
+    public void testCloseWhileNothingPopped() {
+        var blocking = new FakeConnection();
+        var control = new FakeConnection();
+        var waiter = new RedisListWaiter("test", blocking::connection, control::connection);
+        waiter.await("k1", 10);
+        blocking.reply(0, 7L);
+        waiter.close();
+        assertFalse(blocking.closed);
+        blocking.reply(1, null);
+        assertEquals(List.of("clientId", "brpop"), blocking.commands());
+        assertTrue(blocking.closed);
+    }
+
+}
@@ -0,0 +1,91 @@
+package com.github.fmjsjx.conveyor.core.output;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import com.github.fmjsjx.conveyor.config.OutputMysqlConfig.InsertMode;
+
+public class BatchSqlFactoryTest {
+
+    private static final String PREFIX = "INSERT IGNORE INTO t (a,b) VALUES ";
+    // 2 + (1 * 3 + 8) + (2 * 3 + 8)
+    private static final long ROW_BYTES = 27;
+
+    private static BatchSqlFactory factory() {
+        return new BatchSqlFactory(InsertMode.IGNORE, "t", "a,b", "(?,?)", new String[] { "a", "b" });
+    }
+
+    private static List<Map<String, String>> batch(int size) {
+        return Collections.nCopies(size, Map.of("a", "x", "b", "yy"));
+    }
+
+    private static List<Integer> chunks(BatchSqlFactory factory, List<Map<String, String>> batch, long maxBytes) {
+        var chunks = new ArrayList<Integer>();
+        for (int from = 0, rows; from < batch.size(); from += rows) {
+            rows = factory.nextChunkSize(batch, from, maxBytes);
+            chunks.add(rows);
+        }
+        return chunks;
+    }
+
+    @Test
+    public void testLadderSizes() {
+        var factory = factory();
+        // the last chunk is of a ladder size as well, so only a fixed set of statements is prepared
+        assertEquals(List.of(192, 8), chunks(factory, batch(200), Long.MAX_VALUE));
+        assertEquals(List.of(4, 1), chunks(factory, batch(5), Long.MAX_VALUE));
+        assertEquals(List.of(1), chunks(factory, batch(1), Long.MAX_VALUE));
+        var sql = factory.sql(192);
+        assertEquals(PREFIX + String.join(",", Collections.nCopies(192, "(?,?)")), sql);
+        assertSame(sql, factory.sql(192));
+        assertEquals(PREFIX + "(?,?),(?,?),(?,?),(?,?),(?,?),(?,?)", factory.sql(6));
+        assertThrows(IllegalArgumentException.class, () -> factory.sql(200));
+        assertThrows(IllegalArgumentException.class, () -> factory.sql(5));
+    }
+
+    @Test
+    public void testByteBudget() {
+        var factory = factory();
+        // 150 rows fit, every chunk is rounded down to a ladder size
+        var maxBytes = PREFIX.length() + ROW_BYTES * 150;
+        assertEquals(List.of(128, 64, 8), chunks(factory, batch(200), maxBytes));
+        assertEquals(List.of(128, 16, 6), chunks(factory, batch(150), maxBytes));
+        // always at least one row, even if it is too big
+        assertEquals(List.of(1, 1), chunks(factory, batch(2), 1));
+    }
+
+    @Test
+    public void testPlaceholderBudget() {
+        var fields = new String[1000];
+        for (var i = 0; i < fields.length; i++) {
+            fields[i] = "f" + i;
+        }
+        var placeholders = "(" + String.join(",", Collections.nCopies(fields.length, "?")) + ")";
+        var factory = new BatchSqlFactory(InsertMode.IGNORE, "t", String.join(",", fields), placeholders, fields);
+        // 65535 / 1000
+        assertEquals(65, factory.maxRows());
+        assertEquals(List.of(64, 32, 4), chunks(factory, batch(100), Long.MAX_VALUE));
+        assertEquals(List.of(64, 1), chunks(factory, batch(65), Long.MAX_VALUE));
+        assertThrows(IllegalArgumentException.class, () -> factory.sql(65));
+        assertThrows(IllegalArgumentException.class, () -> factory.sql(0));
+    }
+
+    @Test
+    public void testEstimateBytes() {
+        var factory = factory();
+        assertEquals(ROW_BYTES, factory.estimateBytes(Map.of("a", "x", "b", "yy")));
+        // fields not configured are never sent
+        assertEquals(ROW_BYTES, factory.estimateBytes(Map.of("a", "x", "b", "yy", "c", "z".repeat(1000))));
+        // missing fields are bound as NULL
+        assertEquals(2 + 11 + 12, factory.estimateBytes(Map.of("a", "x")));
+    }
+
+}
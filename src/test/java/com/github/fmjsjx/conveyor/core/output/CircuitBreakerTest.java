@@ -0,0 +1,93 @@
+package com.github.fmjsjx.conveyor.core.output;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+import com.github.fmjsjx.conveyor.config.RetryConfig;
+import com.github.fmjsjx.conveyor.core.output.CircuitBreaker.Permit;
+import com.github.fmjsjx.conveyor.core.output.CircuitBreaker.State;
+
+public class CircuitBreakerTest {
+
+    private static final long OPEN_MILLIS = 50;
+
+    private static void failures(CircuitBreaker breaker, int count) {
+        for (var i = 0; i < count; i++) {
+            breaker.onFailure();
+        }
+    }
+
+    private static void awaitHalfOpen(CircuitBreaker breaker) throws InterruptedException {
+        Thread.sleep(OPEN_MILLIS + 20);
+        assertEquals(0, breaker.remainingMillis());
+    }
+
+    @Test
+    public void testOpenAfterThreshold() {
+        var breaker = new CircuitBreaker("test", 3, 60_000);
+        failures(breaker, 2);
+        assertEquals(State.CLOSED, breaker.state());
+        assertEquals(Permit.ALLOWED, breaker.tryAcquire());
+        // a success resets the continuous failures
+        breaker.onSuccess();
+        failures(breaker, 2);
+        assertEquals(State.CLOSED, breaker.state());
+        assertEquals(0, breaker.remainingMillis());
+        breaker.onFailure();
+        assertEquals(State.OPEN, breaker.state());
+        assertEquals(Permit.DENIED, breaker.tryAcquire());
+        var remaining = breaker.remainingMillis();
+        assertTrue(remaining > 0 && remaining <= 60_000, String.valueOf(remaining));
+    }
+
+    @Test
+    public void testHalfOpenProbe() throws InterruptedException {
+        var breaker = new CircuitBreaker("test", 2, OPEN_MILLIS);
+        failures(breaker, 2);
+        assertEquals(Permit.DENIED, breaker.tryAcquire());
+        awaitHalfOpen(breaker);
+        // the state is changed by the first acquirer, only one probe is permitted
+        assertEquals(State.OPEN, breaker.state());
+        assertEquals(Permit.PROBE, breaker.tryAcquire());
+        assertEquals(State.HALF_OPEN, breaker.state());
+        assertEquals(Permit.DENIED, breaker.tryAcquire());
+        // the probe given back without any push can be acquired again
+        breaker.release();
+        assertEquals(Permit.PROBE, breaker.tryAcquire());
+        // a failed probe opens the breaker again at once
+        breaker.onFailure();
+        assertEquals(State.OPEN, breaker.state());
+        assertEquals(Permit.DENIED, breaker.tryAcquire());
+        assertTrue(breaker.remainingMillis() > 0);
+        awaitHalfOpen(breaker);
+        assertEquals(Permit.PROBE, breaker.tryAcquire());
+        breaker.onSuccess();
+        assertEquals(State.CLOSED, breaker.state());
+        assertEquals(Permit.ALLOWED, breaker.tryAcquire());
+        assertEquals(Permit.ALLOWED, breaker.tryAcquire());
+        // the failures before the probe are not counted any more
+        breaker.onFailure();
+        assertEquals(State.CLOSED, breaker.state());
+    }
+
+    @Test
+    public void testZeroThreshold() {
+        var breaker = new CircuitBreaker("test", 0, OPEN_MILLIS);
+        failures(breaker, 100);
+        assertEquals(State.CLOSED, breaker.state());
+        assertEquals(Permit.ALLOWED, breaker.tryAcquire());
+        assertEquals(0, breaker.remainingMillis());
+    }
+
+    @Test
+    public void testFromConfig() {
+        var breaker = CircuitBreaker.fromConfig("mysql", new RetryConfig(null, null, 1, 60_000L));
+        assertEquals("CircuitBreaker(mysql)", breaker.toString());
+        breaker.onFailure();
+        assertEquals(State.OPEN, breaker.state());
+        assertTrue(breaker.remainingMillis() > OPEN_MILLIS);
+    }
+
+}
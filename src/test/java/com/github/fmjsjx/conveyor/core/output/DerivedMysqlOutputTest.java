@@ -0,0 +1,205 @@
+package com.github.fmjsjx.conveyor.core.output;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.sql.DataSource;
+
+import org.junit.jupiter.api.Test;
+
+import com.github.fmjsjx.conveyor.config.OutputMysqlConfig;
+import com.github.fmjsjx.conveyor.config.OutputMysqlConfig.FieldConfig;
+
+public class DerivedMysqlOutputTest {
+
+    private static final List<String> TABLES = List.of("a", "b", "c", "d", "e");
+    private static final List<FieldConfig> FIELDS = List.of(new FieldConfig("id", "id", "string", null),
+            new FieldConfig("_e", "e", "string", null), new FieldConfig("n", "n", "int", null));
+
+    // records the ids inserted into each table, and the max number of connections held at the same time
+    private static final class FakeDataSource {
+
+        private final Map<String, List<String>> inserted = new LinkedHashMap<>();
+        private final List<String> tableOrder = new ArrayList<>();
+        private final AtomicInteger connections = new AtomicInteger();
+        private final AtomicInteger maxConnections = new AtomicInteger();
+
+        private DataSource dataSource() {
+            return (DataSource) Proxy.newProxyInstance(getClass().getClassLoader(),
+                    new Class<?>[] { DataSource.class }, (proxy, method, args) -> {
+                        if (method.getName().equals("getConnection")) {
+                            maxConnections.accumulateAndGet(connections.incrementAndGet(), Math::max);
+                            return connection();
+                        }
+                        throw new UnsupportedOperationException(method.getName());
+                    });
+        }
+
+        private Connection connection() {
+            return (Connection) Proxy.newProxyInstance(getClass().getClassLoader(),
+                    new Class<?>[] { Connection.class }, (proxy, method, args) -> {
+                        switch (method.getName()) {
+                        case "close":
+                            connections.decrementAndGet();
+                            return null;
+                        case "createStatement":
+                            return maxAllowedPacketStatement();
+                        case "prepareStatement":
+                            return statement((String) args[0]);
+                        case "getAutoCommit":
+                            return true;
+                        default:
+                            return null;
+                        }
+                    });
+        }
+
+        private static Statement maxAllowedPacketStatement() {
+            var rs = Proxy.newProxyInstance(FakeDataSource.class.getClassLoader(),
+                    new Class<?>[] { ResultSet.class }, (proxy, method, args) -> switch (method.getName()) {
+                    case "next" -> true;
+                    case "getLong" -> 4L * 1024 * 1024;
+                    default -> null;
+                    });
+            return (Statement) Proxy.newProxyInstance(FakeDataSource.class.getClassLoader(),
+                    new Class<?>[] { Statement.class }, (proxy, method, args) -> method.getName()
+                            .equals("executeQuery") ? rs : null);
+        }
+
+        private PreparedStatement statement(String sql) {
+            // INSERT IGNORE INTO `t_x` (...) VALUES ...
+            var table = sql.substring(sql.indexOf("`t_") + 3, sql.indexOf("` ("));
+            var ids = new TreeMap<Integer, String>();
+            return (PreparedStatement) Proxy.newProxyInstance(getClass().getClassLoader(),
+                    new Class<?>[] { PreparedStatement.class }, (proxy, method, args) -> {
+                        switch (method.getName()) {
+                        case "setString":
+                            // only the `id` column, the first one of each row
+                            if ((Integer) args[0] % FIELDS.size() == 1) {
+                                ids.put((Integer) args[0], (String) args[1]);
+                            }
+                            return null;
+                        case "executeUpdate":
+                            // long enough for the other workers to take their connections
+                            Thread.sleep(20);
+                            synchronized (this) {
+                                if (!inserted.containsKey(table)) {
+                                    tableOrder.add(table);
+                                }
+                                inserted.computeIfAbsent(table, k -> new ArrayList<>()).addAll(ids.values());
+                            }
+                            return ids.size();
+                        default:
+                            return null;
+                        }
+                    });
+        }
+
+    }
+
+    private static OutputMysqlConfig config(Integer derivedParallelism) {
+        var derivedTables = new LinkedHashMap<String, String>();
+        TABLES.forEach(table -> derivedTables.put(table, "t_" + table));
+        return new OutputMysqlConfig("jdbc:mysql://127.0.0.1:3306/test", "root", "", null, false, null, "t_main",
+                "ignore", null, true, "_e", derivedTables, derivedParallelism, FIELDS);
+    }
+
+    // rows are derived to the tables from `e` to `a`, one by one
+    private static List<Map<String, String>> batch(int from, int size) {
+        var batch = new ArrayList<Map<String, String>>(size);
+        for (var i = from; i < from + size; i++) {
+            batch.add(Map.of("id", String.valueOf(i), "_e", TABLES.get(TABLES.size() - 1 - i % TABLES.size())));
+        }
+        return batch;
+    }
+
+    private static List<String> ids(List<Map<String, String>> batch, String table) {
+        return batch.stream().filter(row -> table == null || row.get("_e").equals(table)).map(row -> row.get("id"))
+                .toList();
+    }
+
+    @Test
+    public void testOneByOneByDefault() throws Exception {
+        var fake = new FakeDataSource();
+        var executor = Executors.newCachedThreadPool();
+        try {
+            var output = new DerivedMysqlOutput("test", fake.dataSource(), config(null), executor);
+            var batch = batch(0, 12);
+            output.push(batch);
+            assertEquals(1, fake.maxConnections.get());
+            assertEquals(0, fake.connections.get());
+            // the primary table first, then the derived tables in the order of their first rows
+            assertEquals(List.of("main", "e", "d", "c", "b", "a"), fake.tableOrder);
+            assertEquals(ids(batch, null), fake.inserted.get("main"));
+            for (var table : TABLES) {
+                assertEquals(ids(batch, table), fake.inserted.get(table));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testBoundedParallelism() throws Exception {
+        var fake = new FakeDataSource();
+        var executor = Executors.newCachedThreadPool();
+        try {
+            var output = new DerivedMysqlOutput("test", fake.dataSource(), config(2), executor);
+            var first = batch(0, 12);
+            var second = batch(12, 7);
+            output.push(first);
+            output.push(second);
+            assertEquals(2, fake.maxConnections.get());
+            assertEquals(0, fake.connections.get());
+            // batches are kept in order on each table
+            for (var table : TABLES) {
+                var expected = new ArrayList<>(ids(first, table));
+                expected.addAll(ids(second, table));
+                assertEquals(expected, fake.inserted.get(table));
+            }
+            assertEquals("main", fake.tableOrder.get(0));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testDataErrors() throws Exception {
+        var output = new DerivedMysqlOutput("test", new FakeDataSource().dataSource(), config(null));
+        // values failed to be parsed when binding
+        var badInt = assertThrows(RuntimeException.class, () -> output.push(List.of(Map.of("id", "1", "n", "x"))));
+        assertTrue(output.isDataError(badInt), badInt.toString());
+        // the same exceptions thrown out of binding are not
+        assertFalse(output.isDataError(new IllegalArgumentException()));
+        assertFalse(output.isDataError(new NumberFormatException()));
+        // bugs and bad configurations are never data errors
+        var noSuchTable = assertThrows(IllegalArgumentException.class,
+                () -> output.pushDerived("x", List.of(Map.of("id", "1"))));
+        assertFalse(output.isDataError(noSuchTable));
+        assertFalse(output.isDataError(new RuntimeException(new IllegalArgumentException("unsupported chunk size"))));
+        // data exception and integrity constraint violation
+        assertTrue(output.isDataError(new SQLException("Data too long", "22001", 1406)));
+        assertTrue(output.isDataError(new RuntimeException(new SQLException("Duplicate entry", "23000", 1062))));
+        assertTrue(output.isDataError(new SQLException("Incorrect integer value", "HY000", 1366)));
+        assertFalse(output.isDataError(new SQLTransientConnectionException("Connection is not available", "08S01")));
+        assertFalse(output.isDataError(new SQLException("Lock wait timeout exceeded", "HY000", 1205)));
+    }
+
+}
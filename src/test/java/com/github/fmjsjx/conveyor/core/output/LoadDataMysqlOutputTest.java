@@ -0,0 +1,81 @@
+package com.github.fmjsjx.conveyor.core.output;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+import org.junit.jupiter.api.Test;
+
+import com.github.fmjsjx.conveyor.core.output.LoadDataMysqlOutput.TsvInputStream;
+
+public class LoadDataMysqlOutputTest {
+
+    private static final List<Function<Map<String, String>, String>> FORMATTERS = List.of(values -> values.get("a"),
+            values -> values.get("b"));
+
+    private static String escaped(String value) {
+        var b = new StringBuilder();
+        LoadDataMysqlOutput.appendEscaped(b, value);
+        return b.toString();
+    }
+
+    private static byte[] readAll(TsvInputStream in, int bufferSize) {
+        var out = new ByteArrayOutputStream();
+        var buffer = new byte[bufferSize];
+        for (int n; (n = in.read(buffer, 0, buffer.length)) != -1;) {
+            out.write(buffer, 0, n);
+        }
+        return out.toByteArray();
+    }
+
+    @Test
+    public void testAppendEscaped() {
+        assertEquals("\\N", escaped(null));
+        assertEquals("", escaped(""));
+        assertEquals("plain text", escaped("plain text"));
+        assertEquals("a\\\\b", escaped("a\\b"));
+        assertEquals("a\\tb\\nc\\rd\\0e", escaped("a\tb\nc\rd\0e"));
+        // the literal text \N is not a NULL
+        assertEquals("\\\\N", escaped("\\N"));
+        assertEquals("{\"k\":\"v\\\\n\"}", escaped("{\"k\":\"v\\n\"}"));
+    }
+
+    @Test
+    public void testStream() {
+        var batch = List.of(Map.of("a", "1", "b", "x\ty"), Map.of("a", "2"), Map.of("a", "3", "b", "line\nbreak"));
+        var expected = "1\tx\\ty\n2\t\\N\n3\tline\\nbreak\n";
+        assertEquals(expected, new String(readAll(new TsvInputStream(batch, FORMATTERS), 4096),
+                StandardCharsets.UTF_8));
+        var in = new TsvInputStream(batch, FORMATTERS);
+        var out = new ByteArrayOutputStream();
+        for (int b; (b = in.read()) != -1;) {
+            out.write(b);
+        }
+        assertEquals(expected, out.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testStreamMultiBytes() {
+        var batch = List.of(Map.of("a", "\u8bbe\u5907", "b", "\u65e5\u5fd7\t\ud83d\ude00"),
+                Map.of("a", "\u00e9", "b", "\u00fc"));
+        var expected = "\u8bbe\u5907\t\u65e5\u5fd7\\t\ud83d\ude00\n\u00e9\t\u00fc\n".getBytes(StandardCharsets.UTF_8);
+        // small buffers split the multi-byte characters and the lines
+        for (var bufferSize = 1; bufferSize <= 8; bufferSize++) {
+            assertArrayEquals(expected, readAll(new TsvInputStream(batch, FORMATTERS), bufferSize));
+        }
+    }
+
+    @Test
+    public void testEmptyBatch() {
+        var in = new TsvInputStream(List.of(), FORMATTERS);
+        assertEquals(-1, in.read());
+        assertEquals(-1, in.read(new byte[8], 0, 8));
+        assertEquals(0, new TsvInputStream(List.of(Map.of("a", "1")), FORMATTERS).read(new byte[8], 0, 0));
+    }
+
+}
@@ -0,0 +1,202 @@
+package com.github.fmjsjx.conveyor.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.github.fmjsjx.conveyor.config.OutputMysqlConfig;
+import com.github.fmjsjx.conveyor.config.OutputMysqlConfig.FieldConfig;
+import com.github.fmjsjx.conveyor.core.output.DerivedMysqlOutput;
+import com.github.fmjsjx.conveyor.core.output.Output;
+
+public class FailureReplayerTest {
+
+    // records ids of pushed rows, rows with `bad` are data errors
+    private static final class RecordingOutput implements Output {
+
+        private final List<String> pushed = new ArrayList<>();
+
+        @Override
+        public synchronized void push(List<Map<String, String>> batch) throws Exception {
+            if (batch.stream().anyMatch(row -> row.containsKey("bad"))) {
+                throw new IllegalArgumentException("bad row");
+            }
+            batch.forEach(row -> pushed.add(row.get("id")));
+        }
+
+        @Override
+        public void failed(List<Map<String, String>> batch) {
+        }
+
+        @Override
+        public boolean isDataError(Throwable cause) {
+            return cause instanceof IllegalArgumentException;
+        }
+
+        @Override
+        public void close() {
+        }
+
+    }
+
+    private static final class RecordingDerivedOutput extends DerivedMysqlOutput {
+
+        private final RecordingOutput primary = new RecordingOutput();
+        private final Map<String, List<String>> derived = new HashMap<>();
+
+        private RecordingDerivedOutput() {
+            super("o1", null, new OutputMysqlConfig("jdbc:mysql://127.0.0.1:3306/test", "root", "", null, false,
+                    null, "t", null, null, true, "_e", Map.of("login", "t_login"), null,
+                    List.of(new FieldConfig("id", "id", "string", null))));
+        }
+
+        @Override
+        public void push(List<Map<String, String>> batch) throws Exception {
+            primary.push(batch);
+        }
+
+        @Override
+        public synchronized void pushDerived(String key, List<Map<String, String>> batch) throws Exception {
+            batch.forEach(row -> derived.computeIfAbsent(key, k -> new ArrayList<>()).add(row.get("id")));
+        }
+
+        @Override
+        public boolean isDataError(Throwable cause) {
+            return primary.isDataError(cause);
+        }
+
+    }
+
+    @TempDir
+    Path dir;
+
+    private final Map<String, Output> outputs = new HashMap<>();
+
+    private FailureReplayer replay() {
+        var replayer = new FailureReplayer(dir, outputs::get, 2, 0);
+        replayer.run();
+        assertTrue(replayer.isDone());
+        return replayer;
+    }
+
+    private static String primary(String output, String id) {
+        return output + " primary --- {\"id\":\"" + id + "\"}\n";
+    }
+
+    private void write(String file, String... lines) throws IOException {
+        Files.writeString(dir.resolve(file), String.join("", lines), StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    private Path writeHistory(String date, String... lines) throws IOException {
+        var file = Files.createDirectories(dir.resolve("history")).resolve("failure-" + date + ".log.gz");
+        try (var out = new OutputStreamWriter(new GZIPOutputStream(Files.newOutputStream(file)),
+                StandardCharsets.UTF_8)) {
+            out.write(String.join("", lines));
+        }
+        return file;
+    }
+
+    private List<String> rejects() throws IOException {
+        var file = dir.resolve("replay.rejects");
+        return Files.exists(file) ? Files.readAllLines(file) : List.of();
+    }
+
+    @Test
+    public void testReplayChunk() throws Exception {
+        var o1 = new RecordingDerivedOutput();
+        var o2 = new RecordingOutput();
+        outputs.put("o1", o1);
+        outputs.put("o2", o2);
+        var bad = "o1 primary --- {\"id\":\"4\",\"bad\":\"1\"}";
+        var noDerivedTables = "o2 derived login {\"id\":\"5\"}";
+        write("failure.log", primary("o1", "1"), "o1 derived login {\"id\":\"2\"}\n", "garbage\n",
+                "o1 unknown --- {\"id\":\"3\"}\n", "o1 primary --- {broken\n", bad + "\n", noDerivedTables + "\n",
+                primary("o1", "6"), primary("o2", "7"));
+        var replayer = replay();
+        assertEquals(List.of("1", "6"), o1.primary.pushed);
+        assertEquals(Map.of("login", List.of("2")), o1.derived);
+        assertEquals(List.of("7"), o2.pushed);
+        // a derived row of an output without derived tables is rejected when grouped, the bad row when pushed
+        assertEquals(List.of(noDerivedTables, bad), rejects());
+        assertTrue(replayer.toString().startsWith("FINISHED"), replayer.toString());
+        assertTrue(replayer.toString().contains("replayed 4 rows, rejected 2 rows, skipped 3 lines"),
+                replayer.toString());
+    }
+
+    @Test
+    public void testResumeFromCheckpoint() throws Exception {
+        var o1 = new RecordingOutput();
+        outputs.put("o1", o1);
+        write("failure.log", primary("o1", "1"), primary("o1", "2"));
+        replay();
+        assertEquals(List.of("1", "2"), o1.pushed);
+        // only lines after the checkpoint are replayed
+        write("failure.log", primary("o1", "3"));
+        replay();
+        assertEquals(List.of("1", "2", "3"), o1.pushed);
+        replay();
+        assertEquals(List.of("1", "2", "3"), o1.pushed);
+        assertTrue(Files.exists(dir.resolve("replay.checkpoint")));
+    }
+
+    @Test
+    public void testUnknownOutput() throws Exception {
+        var o1 = new RecordingOutput();
+        outputs.put("o1", o1);
+        write("failure.log", primary("o1", "1"), primary("o3", "2"), primary("o1", "3"));
+        var replayer = replay();
+        // stopped at the line of the output without conveyor
+        assertEquals(List.of("1"), o1.pushed);
+        assertTrue(replayer.toString().contains("1 files pending"), replayer.toString());
+        var o3 = new RecordingOutput();
+        outputs.put("o3", o3);
+        replayer = replay();
+        assertEquals(List.of("1", "3"), o1.pushed);
+        assertEquals(List.of("2"), o3.pushed);
+        assertTrue(replayer.toString().contains("0 files pending"), replayer.toString());
+    }
+
+    @Test
+    public void testPartialLine() throws Exception {
+        var o1 = new RecordingOutput();
+        outputs.put("o1", o1);
+        // the last line is still being written
+        write("failure.log", primary("o1", "1"), "o1 primary --- {\"id\":");
+        replay();
+        assertEquals(List.of("1"), o1.pushed);
+        write("failure.log", "\"2\"}\n");
+        replay();
+        assertEquals(List.of("1", "2"), o1.pushed);
+    }
+
+    @Test
+    public void testSameFirstLine() throws Exception {
+        var o1 = new RecordingOutput();
+        outputs.put("o1", o1);
+        // a poison row is sent to the failure log every day
+        var first = writeHistory("2026-10-16", primary("o1", "p"), primary("o1", "1"));
+        var second = writeHistory("2026-10-17", primary("o1", "p"), primary("o1", "2"), primary("o1", "3"));
+        assertNotEquals(FailureReplayer.fingerprint(first), FailureReplayer.fingerprint(second));
+        replay();
+        assertEquals(List.of("p", "1", "p", "2", "3"), o1.pushed);
+        assertFalse(Files.exists(dir.resolve("replay.rejects")));
+    }
+
+}
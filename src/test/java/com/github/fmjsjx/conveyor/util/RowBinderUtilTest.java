@@ -0,0 +1,124 @@
+package com.github.fmjsjx.conveyor.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.reflect.Proxy;
+import java.sql.PreparedStatement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import com.github.fmjsjx.conveyor.config.OutputMysqlConfig.FieldConfig;
+import com.github.fmjsjx.conveyor.config.OutputMysqlConfig.RowBinder;
+
+public class RowBinderUtilTest {
+
+    // every type with and without a default value, time dependent defaults are left out
+    private static final List<FieldConfig> FIELDS = List.of(new FieldConfig("i", "c_i", "int", null),
+            new FieldConfig("id", "c_id", "int", "7"), new FieldConfig("l", "c_l", "long", null),
+            new FieldConfig("ld", "c_ld", "long", "-1"), new FieldConfig("s", "c_s", "string", null),
+            new FieldConfig("sd", "c_sd", "string", "none"), new FieldConfig("j", "c_j", "json_object", null),
+            new FieldConfig("jd", "c_jd", "json_object", ""), new FieldConfig("u", "c_u", "unix_time", null),
+            new FieldConfig("ud", "c_ud", "unix_time", "2022-01-01T00:00:00"),
+            new FieldConfig("d", "c_d", "date", null), new FieldConfig("dd", "c_dd", "date", "2022-01-01"),
+            new FieldConfig("t", "c_t", "datetime", null),
+            new FieldConfig("td", "c_td", "datetime", "2022-01-01T00:00:00"));
+
+    private static final Map<String, String> FULL_ROW = Map.ofEntries(Map.entry("i", "1"), Map.entry("id", "2"),
+            Map.entry("l", "3"), Map.entry("ld", "4"), Map.entry("s", "x"), Map.entry("sd", "y"),
+            Map.entry("j", "{\"a\":1}"), Map.entry("jd", "{\"b\":2}"), Map.entry("u", "1640995200.123"),
+            Map.entry("ud", "1640995201.5"), Map.entry("d", "2022-02-03"), Map.entry("dd", "2022-02-04"),
+            Map.entry("t", "2022-02-03T04:05:06.789"), Map.entry("td", "2022-02-04T05:06:07"));
+
+    private static PreparedStatement recorder(List<String> calls) {
+        return (PreparedStatement) Proxy.newProxyInstance(RowBinderUtilTest.class.getClassLoader(),
+                new Class<?>[] { PreparedStatement.class }, (proxy, method, args) -> {
+                    calls.add(method.getName() + Arrays.deepToString(args));
+                    return null;
+                });
+    }
+
+    private static List<String> bind(RowBinder binder, int index, Map<String, String> values) throws Exception {
+        var calls = new ArrayList<String>();
+        assertEquals(index + FIELDS.size(), binder.bind(recorder(calls), index, values));
+        return calls;
+    }
+
+    private static List<String> bindBySetters(List<FieldConfig> fields, int index, Map<String, String> values)
+            throws Exception {
+        var calls = new ArrayList<String>();
+        var statement = recorder(calls);
+        for (var field : fields) {
+            field.valueSetter().setValue(statement, index++, values);
+        }
+        return calls;
+    }
+
+    @Test
+    public void testGenerated() {
+        var binder = RowBinderUtil.generate(FIELDS);
+        assertTrue(binder.getClass().getSimpleName().startsWith("GeneratedRowBinder"), binder.getClass().getName());
+        // the same field list reuses the generated class
+        assertSame(binder.getClass(), RowBinderUtil.generate(List.copyOf(FIELDS)).getClass());
+        var other = RowBinderUtil.generate(FIELDS.subList(0, 2));
+        assertNotEquals(binder.getClass(), other.getClass());
+    }
+
+    @Test
+    public void testSameAsValueSetters() throws Exception {
+        var binder = RowBinderUtil.generate(FIELDS);
+        assertEquals(bindBySetters(FIELDS, 1, FULL_ROW), bind(binder, 1, FULL_ROW));
+        assertEquals(bindBySetters(FIELDS, 1, Map.of()), bind(binder, 1, Map.of()));
+        // binding from the middle of a multi-row statement
+        assertEquals(bindBySetters(FIELDS, 29, FULL_ROW), bind(binder, 29, FULL_ROW));
+        for (var field : FIELDS) {
+            var values = new HashMap<>(FULL_ROW);
+            values.remove(field.name());
+            assertEquals(bindBySetters(FIELDS, 1, values), bind(binder, 1, values), field.name());
+        }
+    }
+
+    @Test
+    public void testDefaultValues() throws Exception {
+        var calls = bind(RowBinderUtil.generate(FIELDS), 1, Map.of());
+        assertEquals("setObject[1, null]", calls.get(0));
+        assertEquals("setInt[2, 7]", calls.get(1));
+        assertEquals("setLong[4, -1]", calls.get(3));
+        assertEquals("setString[5, null]", calls.get(4));
+        assertEquals("setString[6, none]", calls.get(5));
+        assertEquals("setString[8, {}]", calls.get(7));
+    }
+
+    @Test
+    public void testQuotedNames() throws Exception {
+        var fields = List.of(new FieldConfig("a\"b", "c1", "string", "say \"hi\""),
+                new FieldConfig("c\\d", "c2", "int", null));
+        var binder = RowBinderUtil.generate(fields);
+        assertTrue(binder.getClass().getSimpleName().startsWith("GeneratedRowBinder"), binder.getClass().getName());
+        var values = Map.of("c\\d", "5");
+        var calls = new ArrayList<String>();
+        assertEquals(3, binder.bind(recorder(calls), 1, values));
+        assertEquals(List.of("setString[1, say \"hi\"]", "setInt[2, 5]"), calls);
+        assertEquals(bindBySetters(fields, 1, values), calls);
+    }
+
+    @Test
+    public void testParseErrors() {
+        var binder = RowBinderUtil.generate(FIELDS);
+        var values = new HashMap<>(FULL_ROW);
+        values.put("i", "abc");
+        assertThrows(NumberFormatException.class, () -> bind(binder, 1, values));
+        values.put("i", "1");
+        values.put("t", "2022-02-03 04:05:06");
+        assertThrows(RuntimeException.class, () -> bind(binder, 1, values));
+    }
+
+}